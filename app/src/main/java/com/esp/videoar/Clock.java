@@ -0,0 +1,10 @@
+package com.esp.videoar;
+
+/**
+ * Source of the monotonic time used by the playback logic, so that it can be driven by a fake
+ * clock in the JVM tests. On the device it is backed by SystemClock.uptimeMillis().
+ */
+public interface Clock {
+
+    long uptimeMillis();
+}
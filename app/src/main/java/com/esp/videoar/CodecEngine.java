@@ -0,0 +1,390 @@
+package com.esp.videoar;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import com.esp.videoar.codec.Codec;
+import com.esp.videoar.codec.DecodeLoop;
+import com.esp.videoar.codec.MediaClock;
+import com.esp.videoar.codec.SampleSource;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link VideoEngine} that decodes the video track with MediaExtractor and MediaCodec into
+ * the Surface, for the muted AR overlays: the audio track is never read, seeks land on the
+ * exact frame asked for and at most outputDepth decoded frames wait to be shown.
+ *
+ * The decoder is driven by a {@link DecodeLoop} on a thread of its own, the other calls post
+ * to that thread and return right away.
+ */
+class CodecEngine implements VideoEngine, DecodeLoop.Listener {
+
+    private static final String TAG = "CodecEngine";
+
+    // How long the decode thread waits before trying again when nothing could be done
+    private static final long IDLE_PLAYING_MILLIS = 5;
+    private static final long IDLE_PAUSED_MILLIS = 20;
+
+    // The visible rectangle of the decoder output, inclusive; its width and
+    // height are the buffer size, padded to whole macroblocks (e.g. 1088 for
+    // 1080 lines). Public constants only from API 33.
+    private static final String KEY_CROP_LEFT = "crop-left";
+    private static final String KEY_CROP_RIGHT = "crop-right";
+    private static final String KEY_CROP_TOP = "crop-top";
+    private static final String KEY_CROP_BOTTOM = "crop-bottom";
+
+    private final int mOutputDepth;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private volatile Listener mListener = null;
+
+    private MediaExtractor mExtractor = null;
+    private MediaFormat mFormat = null;
+    private Surface mSurface = null;
+    // Only used on the decode thread
+    private MediaCodec mCodec = null;
+    private DecodeLoop mLoop = null;
+
+    private volatile boolean mReleased = false;
+    private volatile boolean mPlaying = false;
+    private volatile int mPosition = 0;
+    private volatile int mDuration = -1;
+    private volatile int mWidth = 0;
+    private volatile int mHeight = 0;
+
+    private final Runnable mStep = new Runnable() {
+        @Override
+        public void run() {
+            if (mReleased || mLoop == null)
+                return;
+            boolean progress;
+            try {
+                progress = mLoop.step();
+            } catch (IllegalStateException e) {
+                fail("Decoding failed: " + e.toString());
+                return;
+            }
+            mPosition = (int) (mLoop.getPositionUs() / 1000);
+            if (progress)
+                mHandler.post(this);
+            else
+                mHandler.postDelayed(this, mPlaying ? IDLE_PLAYING_MILLIS : IDLE_PAUSED_MILLIS);
+        }
+    };
+
+    CodecEngine(int outputDepth) {
+        mOutputDepth = outputDepth;
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    // Selects the first video track, the others (audio) are never read
+    @Override
+    public void setDataSource(FileDescriptor fd, long offset, long length) throws IOException {
+        mExtractor = new MediaExtractor();
+        mExtractor.setDataSource(fd, offset, length);
+        for (int i = 0; i < mExtractor.getTrackCount(); i++) {
+            MediaFormat format = mExtractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("video/")) {
+                mExtractor.selectTrack(i);
+                mFormat = format;
+                break;
+            }
+        }
+        if (mFormat == null)
+            throw new IOException("No video track");
+
+        mWidth = mFormat.getInteger(MediaFormat.KEY_WIDTH);
+        mHeight = mFormat.getInteger(MediaFormat.KEY_HEIGHT);
+        if (mFormat.containsKey(MediaFormat.KEY_DURATION))
+            mDuration = (int) (mFormat.getLong(MediaFormat.KEY_DURATION) / 1000);
+    }
+
+    @Override
+    public void setSurface(Surface surface) {
+        mSurface = surface;
+    }
+
+    @Override
+    public void prepareAsync() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                prepare();
+            }
+        });
+    }
+
+    // Runs on the decode thread
+    private void prepare() {
+        if (mReleased)
+            return;
+        try {
+            mCodec = MediaCodec.createDecoderByType(mFormat.getString(MediaFormat.KEY_MIME));
+            mCodec.configure(mFormat, mSurface, null, 0);
+            mCodec.start();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            // e.g. a format the device cannot decode, refused by configure()
+            fail("Could not create the decoder: " + e.toString());
+            return;
+        }
+
+        mLoop = new DecodeLoop(new MediaCodecAdapter(mCodec), new ExtractorSource(mExtractor),
+                new MediaClock(new Clock() {
+                    @Override
+                    public long uptimeMillis() {
+                        return SystemClock.uptimeMillis();
+                    }
+                }), mOutputDepth, this);
+
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onPrepared(this);
+        mHandler.post(mStep);
+    }
+
+    @Override
+    public void start() {
+        mPlaying = true;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mLoop != null)
+                    mLoop.start();
+            }
+        });
+    }
+
+    @Override
+    public void pause() {
+        mPlaying = false;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mLoop != null)
+                    mLoop.pause();
+            }
+        });
+    }
+
+    // There is nothing to tear down short of release(), stopping is pausing
+    @Override
+    public void stop() {
+        pause();
+    }
+
+    @Override
+    public void seekTo(final int position, final boolean previousSync) {
+        mPosition = position;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mLoop != null)
+                    mLoop.seekTo(position * 1000L, previousSync);
+            }
+        });
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public int getDuration() {
+        return mDuration;
+    }
+
+    @Override
+    public int getVideoWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getVideoHeight() {
+        return mHeight;
+    }
+
+    // There is no audio track to set the volume of
+    @Override
+    public void setVolume(float volume) {
+    }
+
+    @Override
+    public void release() {
+        mReleased = true;
+        mListener = null;
+        mHandler.removeCallbacksAndMessages(null);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCodec != null) {
+                    try {
+                        mCodec.stop();
+                    } catch (IllegalStateException e) {
+                        Log.e(TAG, "Could not stop the decoder");
+                    }
+                    mCodec.release();
+                    mCodec = null;
+                }
+                if (mExtractor != null) {
+                    mExtractor.release();
+                    mExtractor = null;
+                }
+                mLoop = null;
+            }
+        });
+        mThread.quitSafely();
+    }
+
+    @Override
+    public void onEndOfStream() {
+        mPlaying = false;
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onCompletion(this);
+    }
+
+    private void onOutputSizeChanged(int width, int height) {
+        if (width == mWidth && height == mHeight)
+            return;
+        mWidth = width;
+        mHeight = height;
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onVideoSizeChanged(this, width, height);
+    }
+
+    // The size in the crop rectangle when the decoder reports one, the buffer
+    // size otherwise
+    private static int visibleSize(MediaFormat format, String sizeKey, String startKey,
+                                   String endKey) {
+        if (format.containsKey(startKey) && format.containsKey(endKey))
+            return format.getInteger(endKey) - format.getInteger(startKey) + 1;
+        return format.getInteger(sizeKey);
+    }
+
+    private void fail(String description) {
+        mPlaying = false;
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onError(this, description);
+    }
+
+    private static class ExtractorSource implements SampleSource {
+        private final MediaExtractor mExtractor;
+
+        ExtractorSource(MediaExtractor extractor) {
+            mExtractor = extractor;
+        }
+
+        @Override
+        public long getSampleTime() {
+            return mExtractor.getSampleTime();
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer) {
+            return Math.max(0, mExtractor.readSampleData(buffer, 0));
+        }
+
+        @Override
+        public boolean advance() {
+            return mExtractor.advance();
+        }
+
+        @Override
+        public void seekTo(long timeUs) {
+            mExtractor.seekTo(timeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        }
+    }
+
+    // getInputBuffer(int) needs API 21, the buffer array works from API 16
+    private class MediaCodecAdapter implements Codec {
+        private final MediaCodec mDecoder;
+        private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+        private final ByteBuffer[] mInputBuffers;
+
+        MediaCodecAdapter(MediaCodec codec) {
+            mDecoder = codec;
+            mInputBuffers = codec.getInputBuffers();
+        }
+
+        @Override
+        public int dequeueInputBuffer() {
+            int index = mDecoder.dequeueInputBuffer(0);
+            return index >= 0 ? index : NO_BUFFER;
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            ByteBuffer buffer = mInputBuffers[index];
+            buffer.clear();
+            return buffer;
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int size, long presentationTimeUs) {
+            mDecoder.queueInputBuffer(index, 0, size, presentationTimeUs, 0);
+        }
+
+        @Override
+        public void queueEndOfStream(int index) {
+            mDecoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+        }
+
+        @Override
+        public int dequeueOutputBuffer(OutputInfo info) {
+            while (true) {
+                int index = mDecoder.dequeueOutputBuffer(mInfo, 0);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat format = mDecoder.getOutputFormat();
+                    onOutputSizeChanged(
+                            visibleSize(format, MediaFormat.KEY_WIDTH, KEY_CROP_LEFT, KEY_CROP_RIGHT),
+                            visibleSize(format, MediaFormat.KEY_HEIGHT, KEY_CROP_TOP, KEY_CROP_BOTTOM));
+                    continue;
+                }
+                // The frames go to the Surface, the output buffers are never read
+                if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED)
+                    continue;
+                if (index < 0)
+                    return NO_BUFFER;
+
+                info.presentationTimeUs = mInfo.presentationTimeUs;
+                info.endOfStream = (mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                return index;
+            }
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index, boolean render) {
+            mDecoder.releaseOutputBuffer(index, render);
+        }
+
+        @Override
+        public void flush() {
+            mDecoder.flush();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.esp.videoar;
+
+/**
+ * Keeps the videos of the recently tracked targets loaded, within a decoder and memory budget.
+ *
+ * A target's video is only loaded when the target is first tracked (or explicitly requested).
+ * When loading it would exceed the number of decoders or the estimated memory budget, the
+ * least recently tracked loaded targets are unloaded first. Targets tracked during the current
+ * frame are never evicted, if nothing else can go the load is refused.
+ *
+ * Hardware decoders are scarce, going over what the device provides is what makes the
+ * MediaPlayer fail with MEDIA_ERROR_UNKNOWN. Not thread safe, meant for the GL thread.
+ */
+public class DecoderManager {
+
+    // Used until the size of a video is known, roughly a 720p stream
+    public static final long DEFAULT_FOOTPRINT_BYTES = 1280 * 720 * 3 / 2 * 6;
+
+    public interface Decoders {
+        void load(int target);
+
+        void unload(int target);
+    }
+
+    private final Clock mClock;
+    private final Decoders mDecoders;
+    private final int mMaxDecoders;
+    private final long mMemoryBudget;
+
+    private final boolean[] mLoaded;
+    private final long[] mLastTracked;
+    private final long[] mFootprint;
+    private int mLoadedCount = 0;
+    private long mLoadedFootprint = 0;
+
+    private int mLoads = 0;
+    private int mEvictions = 0;
+    private int mRefusals = 0;
+
+    public DecoderManager(int numTargets, int maxDecoders, long memoryBudget, Clock clock,
+                          Decoders decoders) {
+        mClock = clock;
+        mDecoders = decoders;
+        mMaxDecoders = maxDecoders;
+        mMemoryBudget = memoryBudget;
+
+        mLoaded = new boolean[numTargets];
+        mLastTracked = new long[numTargets];
+        mFootprint = new long[numTargets];
+        for (int i = 0; i < numTargets; i++) {
+            mLastTracked[i] = -1;
+            mFootprint[i] = DEFAULT_FOOTPRINT_BYTES;
+        }
+    }
+
+    // Called for every tracked target each frame, loads its video if needed
+    public boolean onTracked(int target) {
+        mLastTracked[target] = mClock.uptimeMillis();
+        return request(target);
+    }
+
+    // Loads the video of a target if it is not loaded yet, evicting others if needed
+    public boolean request(int target) {
+        if (mLoaded[target])
+            return true;
+
+        long now = mClock.uptimeMillis();
+        while (!fits(mFootprint[target])) {
+            int victim = leastRecentlyTracked(target, now);
+            if (victim < 0) {
+                mRefusals++;
+                return false;
+            }
+            evict(victim);
+        }
+
+        mLoaded[target] = true;
+        mLoadedCount++;
+        mLoadedFootprint += mFootprint[target];
+        mLoads++;
+        mDecoders.load(target);
+        return true;
+    }
+
+    // Loads the video of a target that is expected to be tracked soon, only
+    // into a free decoder. It has never been tracked, so it goes first when a
+    // tracked target needs the decoder.
+    public boolean preload(int target) {
+        if (mLoaded[target])
+            return true;
+        if (!fits(mFootprint[target]))
+            return false;
+
+        mLoaded[target] = true;
+        mLoadedCount++;
+        mLoadedFootprint += mFootprint[target];
+        mLoads++;
+        mDecoders.load(target);
+        return true;
+    }
+
+    public boolean hasFreeDecoder() {
+        return mLoadedCount < mMaxDecoders;
+    }
+
+    // The video of a target was unloaded behind the manager's back (e.g. in
+    // onPause() or after an error), forget about it without unloading again
+    public void invalidate(int target) {
+        if (!mLoaded[target])
+            return;
+        mLoaded[target] = false;
+        mLoadedCount--;
+        mLoadedFootprint -= mFootprint[target];
+    }
+
+    // Replaces the estimate of a target's memory use once its video size is known
+    public void setFootprint(int target, long bytes) {
+        if (mLoaded[target])
+            mLoadedFootprint += bytes - mFootprint[target];
+        mFootprint[target] = bytes;
+    }
+
+    // A decoded YUV 4:2:0 frame, times the frames the decoder keeps around
+    public static long estimateFootprint(int width, int height, int bufferCount) {
+        return (long) width * height * 3 / 2 * bufferCount;
+    }
+
+    public boolean isLoaded(int target) {
+        return mLoaded[target];
+    }
+
+    public int getLoadedCount() {
+        return mLoadedCount;
+    }
+
+    public long getLoadedFootprint() {
+        return mLoadedFootprint;
+    }
+
+    public int getLoadCount() {
+        return mLoads;
+    }
+
+    public int getEvictionCount() {
+        return mEvictions;
+    }
+
+    public int getRefusalCount() {
+        return mRefusals;
+    }
+
+    private boolean fits(long footprint) {
+        if (mLoadedCount >= mMaxDecoders)
+            return false;
+        // A single video over the budget still gets a decoder of its own
+        return mLoadedCount == 0 || mLoadedFootprint + footprint <= mMemoryBudget;
+    }
+
+    private int leastRecentlyTracked(int exclude, long now) {
+        int victim = -1;
+        for (int i = 0; i < mLoaded.length; i++) {
+            if (!mLoaded[i] || i == exclude || mLastTracked[i] >= now)
+                continue;
+            if (victim < 0 || mLastTracked[i] < mLastTracked[victim])
+                victim = i;
+        }
+        return victim;
+    }
+
+    private void evict(int target) {
+        invalidate(target);
+        mEvictions++;
+        mDecoders.unload(target);
+    }
+}
@@ -0,0 +1,193 @@
+package com.esp.videoar;
+
+/**
+ * Guesses which targets are likely to be detected next, so that their videos can be prepared
+ * before they are needed.
+ *
+ * A detection episode starts when a target is tracked after not having been seen for
+ * EPISODE_GAP_MILLIS. For every episode the predictor updates a weight per target that decays
+ * with every later episode (frequency and recency in one number) and counts which targets were
+ * seen within CO_OCCURRENCE_MILLIS of each other, e.g. posters hung next to each other. The
+ * statistics survive between sessions through {@link #save()} and {@link #restore(String)}.
+ *
+ * Not thread safe, meant for the GL thread (save and restore while it is paused).
+ */
+public class DetectionPredictor {
+
+    static final long EPISODE_GAP_MILLIS = 2000;
+    static final long CO_OCCURRENCE_MILLIS = 10000;
+    // How much the weights of all targets fade with every new episode
+    static final float DECAY = 0.9f;
+    // Below this score a target is not worth a decoder. A target has to beat
+    // the uniform prior 1 / numTargets as well: with the weight spread evenly
+    // every target scores that much, which predicts nothing.
+    static final float MIN_SCORE = 0.1f;
+
+    private static final String FORMAT_VERSION = "1";
+
+    private final int mNumTargets;
+    private final Clock mClock;
+
+    private final float[] mWeight;
+    private final int[] mEpisodes;
+    private final int[][] mCoOccurrences;
+    private final long[] mLastSeen;
+    private float mTotalWeight = 0.0f;
+
+    private int mDetections = 0;
+    private int mHits = 0;
+    private long mSavedMillis = 0;
+
+    public DetectionPredictor(int numTargets, Clock clock) {
+        mNumTargets = numTargets;
+        mClock = clock;
+        mWeight = new float[numTargets];
+        mEpisodes = new int[numTargets];
+        mCoOccurrences = new int[numTargets][numTargets];
+        mLastSeen = new long[numTargets];
+        for (int i = 0; i < numTargets; i++) {
+            mLastSeen[i] = -1;
+        }
+    }
+
+    // Called every frame a target is tracked, returns whether a new episode started
+    public boolean onTracked(int target) {
+        long now = mClock.uptimeMillis();
+        boolean newEpisode = mLastSeen[target] < 0 || now - mLastSeen[target] > EPISODE_GAP_MILLIS;
+        mLastSeen[target] = now;
+        if (!newEpisode)
+            return false;
+
+        mTotalWeight = 0.0f;
+        for (int i = 0; i < mNumTargets; i++) {
+            mWeight[i] *= DECAY;
+            if (i == target)
+                mWeight[i] += 1.0f;
+            mTotalWeight += mWeight[i];
+
+            if (i != target && isRecent(i, now)) {
+                mCoOccurrences[i][target]++;
+                mCoOccurrences[target][i]++;
+            }
+        }
+        mEpisodes[target]++;
+        return true;
+    }
+
+    // Records whether the video of a newly detected target had been preloaded
+    // and how much of its preparation time that saved
+    public void recordDetection(boolean preloaded, long savedMillis) {
+        mDetections++;
+        if (preloaded) {
+            mHits++;
+            mSavedMillis += savedMillis;
+        }
+    }
+
+    // How likely the target is to show up next, given what was seen recently
+    public float score(int target) {
+        if (mTotalWeight <= 0.0f)
+            return 0.0f;
+
+        long now = mClock.uptimeMillis();
+        float score = mWeight[target] / mTotalWeight;
+        for (int i = 0; i < mNumTargets; i++) {
+            // The chance that the target shows up with a recently seen one
+            if (i != target && isRecent(i, now) && mEpisodes[i] > 0)
+                score += (float) mCoOccurrences[i][target] / mEpisodes[i];
+        }
+        return score;
+    }
+
+    // The best candidate that has been detected before, is not excluded (e.g.
+    // already loaded) and is not being tracked right now, -1 if none is
+    // likely enough
+    public int predictNext(boolean[] excluded) {
+        long now = mClock.uptimeMillis();
+        int best = -1;
+        float bestScore = Math.max(MIN_SCORE, 1.0f / mNumTargets);
+        for (int i = 0; i < mNumTargets; i++) {
+            if (excluded[i] || mLastSeen[i] == now || mEpisodes[i] == 0)
+                continue;
+            float score = score(i);
+            if (score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    public float getHitRate() {
+        return mDetections == 0 ? 0.0f : (float) mHits / mDetections;
+    }
+
+    // Average preparation time saved per detection, hits and misses alike
+    public long getAverageSavedMillis() {
+        return mDetections == 0 ? 0 : mSavedMillis / mDetections;
+    }
+
+    public int getDetectionCount() {
+        return mDetections;
+    }
+
+    private boolean isRecent(int target, long now) {
+        return mLastSeen[target] >= 0 && now - mLastSeen[target] <= CO_OCCURRENCE_MILLIS;
+    }
+
+    // The long term statistics as a string, the times of the session are not kept
+    public String save() {
+        StringBuilder sb = new StringBuilder(FORMAT_VERSION).append(';').append(mNumTargets);
+        for (int i = 0; i < mNumTargets; i++) {
+            sb.append(';').append(mWeight[i]).append(';').append(mEpisodes[i]);
+            for (int j = 0; j < mNumTargets; j++) {
+                sb.append(';').append(mCoOccurrences[i][j]);
+            }
+        }
+        sb.append(';').append(mDetections).append(';').append(mHits).append(';').append(mSavedMillis);
+        return sb.toString();
+    }
+
+    // Restores what save() returned, returns false (and keeps the current
+    // statistics) if the string is missing or was saved for other targets
+    public boolean restore(String saved) {
+        if (saved == null)
+            return false;
+        String[] fields = saved.split(";");
+        int expected = 2 + mNumTargets * (2 + mNumTargets) + 3;
+        if (fields.length != expected || !FORMAT_VERSION.equals(fields[0])
+                || !String.valueOf(mNumTargets).equals(fields[1]))
+            return false;
+
+        try {
+            float[] weight = new float[mNumTargets];
+            int[] episodes = new int[mNumTargets];
+            int[][] coOccurrences = new int[mNumTargets][mNumTargets];
+            int f = 2;
+            for (int i = 0; i < mNumTargets; i++) {
+                weight[i] = Float.parseFloat(fields[f++]);
+                episodes[i] = Integer.parseInt(fields[f++]);
+                for (int j = 0; j < mNumTargets; j++) {
+                    coOccurrences[i][j] = Integer.parseInt(fields[f++]);
+                }
+            }
+            int detections = Integer.parseInt(fields[f++]);
+            int hits = Integer.parseInt(fields[f++]);
+            long savedMillis = Long.parseLong(fields[f]);
+
+            mTotalWeight = 0.0f;
+            for (int i = 0; i < mNumTargets; i++) {
+                mWeight[i] = weight[i];
+                mEpisodes[i] = episodes[i];
+                System.arraycopy(coOccurrences[i], 0, mCoOccurrences[i], 0, mNumTargets);
+                mTotalWeight += weight[i];
+            }
+            mDetections = detections;
+            mHits = hits;
+            mSavedMillis = savedMillis;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
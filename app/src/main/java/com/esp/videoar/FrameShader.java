@@ -9,12 +9,14 @@ public class FrameShader {
             + "varying vec2 texCoord; \n"
             + "varying vec4 normal; \n"
             + "uniform mat4 modelViewProjectionMatrix; \n"
+            + "// The region of the texture to draw: offset, then size \n"
+            + "uniform vec4 texCoordRegion; \n"
             + "\n"
             + "void main() \n"
             + "{ \n"
             + "   gl_Position = modelViewProjectionMatrix * vertexPosition; \n"
             + "   normal = vertexNormal; \n"
-            + "   texCoord = vertexTexCoord; \n"
+            + "   texCoord = texCoordRegion.xy + vertexTexCoord * texCoordRegion.zw; \n"
             + "} \n";
 
     public static final String FRAME_FRAGMENT_SHADER = " \n"
@@ -28,5 +30,19 @@ public class FrameShader {
             + "   gl_FragColor = texture2D(texSampler2D, texCoord); \n"
             + "} \n";
 
+    // For compressed textures that keep their alpha in a second texture
+    public static final String FRAME_SPLIT_ALPHA_FRAGMENT_SHADER = " \n"
+            + "\n"
+            + "precision mediump float; \n"
+            + "varying vec2 texCoord; \n"
+            + "uniform sampler2D texSampler2D; \n"
+            + "uniform sampler2D alphaSampler2D; \n"
+            + " \n"
+            + "void main() \n"
+            + "{ \n"
+            + "   gl_FragColor = vec4(texture2D(texSampler2D, texCoord).rgb, \n"
+            + "           texture2D(alphaSampler2D, texCoord).r); \n"
+            + "} \n";
+
 
 }
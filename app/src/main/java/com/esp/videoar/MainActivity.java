@@ -1,10 +1,13 @@
 package com.esp.videoar;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.Configuration;
 import android.graphics.Color;
 import android.support.v7.app.AppCompatActivity;
@@ -24,6 +27,9 @@ import com.esp.videoar.SampleApplication.SampleApplicationSession;
 import com.esp.videoar.SampleApplication.utils.LoadingDialogHandler;
 import com.esp.videoar.SampleApplication.utils.SampleApplicationGLView;
 import com.esp.videoar.SampleApplication.utils.Texture;
+import com.esp.videoar.SampleApplication.utils.TextureAtlas;
+import com.esp.videoar.SampleApplication.utils.TextureCache;
+import com.esp.videoar.SampleApplication.utils.TextureLoader;
 import com.vuforia.CameraDevice;
 import com.vuforia.DataSet;
 import com.vuforia.HINT;
@@ -32,8 +38,13 @@ import com.vuforia.STORAGE_TYPE;
 import com.vuforia.State;
 import com.vuforia.Tracker;
 import com.vuforia.TrackerManager;
+import com.esp.videoar.mp4.Mp4Info;
+import com.esp.videoar.mp4.Mp4Parser;
 import com.vuforia.Vuforia;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.Vector;
 
 public class MainActivity extends AppCompatActivity implements SampleApplicationControl {
@@ -45,6 +56,39 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
     private Activity mActivity;
 
     public static final int NUM_TARGETS = 8;
+    // How many targets Vuforia tracks at the same time
+    public static final int MAX_SIMULTANEOUS_TARGETS = 2;
+
+    // Create the pooled MediaPlayers in onCreate() instead of on first use,
+    // their callbacks are then delivered on the UI thread
+    private static final boolean WARM_UP_PLAYER_POOL = false;
+
+    // Decoded keyframes and icons kept in memory, the ones in use are kept
+    // even beyond it
+    private static final long TEXTURE_CACHE_BYTES = 8 * 1024 * 1024;
+
+    // The preview and the status icons share one texture, so drawing them
+    // binds it once. The atlas holds RGBA pixels, so it is only built when
+    // none of them has a compressed variant (see the compressTextures Gradle
+    // task); otherwise they are loaded one by one through mTextureCache,
+    // compressed where there is a variant.
+    private static final boolean USE_TEXTURE_ATLAS = true;
+    private static final int ATLAS_PADDING = 2;
+    // The smallest maximum texture size of OpenGL ES 2.0 devices
+    private static final int ATLAS_MAX_SIZE = 2048;
+    // Threads decoding the textures while Vuforia initializes
+    private static final int TEXTURE_LOADER_THREADS = 2;
+    private static final String PREVIEW_TEXTURE = "VideoPlayback/preview_alpha.png";
+    private static final String[] ICON_TEXTURES = {"VideoPlayback/play.png",
+            "VideoPlayback/busy.png", "VideoPlayback/error.png"};
+
+    // Disk space for the poster frames of the videos, a few tens of kB each
+    private static final long POSTER_CACHE_BYTES = 4 * 1024 * 1024;
+
+    // Where the detection statistics used for preloading are kept between sessions
+    private static final String PREFS_NAME = "VideoAR";
+    private static final String PREF_PREDICTIONS = "detectionPredictions";
+
     // todo
     public static final int KFC = 0;
     public static final int THTRUEMILK = 1;
@@ -58,6 +102,7 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
     public static final int DEFAULT = 8;
 
     private MediaPlayerHelper mVideoPlayerHelper[] = null;
+    private MediaPlayerPool mPlayerPool = null;
     private int mSeekPosition[] = null;
     private boolean mWasPlaying[] = null;
     private String mMovieName[] = null;
@@ -69,6 +114,9 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
     private VideoRenderer mRenderer;
 
     private Vector<Texture> mTextures;
+    private TextureCache mTextureCache = null;
+    private TextureLoader mTextureLoader = null;
+    private PosterFrameLoader mPosterFrameLoader = null;
 
     DataSet dataSet = null;
 
@@ -115,10 +163,16 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
         mWasPlaying = new boolean[NUM_TARGETS];
         mMovieName = new String[NUM_TARGETS];
 
+        // Unloaded players are reset and kept for the next load, e.g. after onResume()
+        mPlayerPool = new MediaPlayerPool(VideoRenderer.MAX_PREPARED_DECODERS);
+        if (WARM_UP_PLAYER_POOL)
+            mPlayerPool.warmUp(MAX_SIMULTANEOUS_TARGETS);
+
         for (int i = 0; i < NUM_TARGETS; i++) {
             mVideoPlayerHelper[i] = new MediaPlayerHelper();
             mVideoPlayerHelper[i].init();
             mVideoPlayerHelper[i].setActivity(this);
+            mVideoPlayerHelper[i].setPlayerPool(mPlayerPool);
         }
 
         mMovieName[KFC] = "VideoPlayback/kfc.mp4";
@@ -131,6 +185,8 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
         mMovieName[COCACOLA] = "VideoPlayback/cocacola.mp4";
         // todo
 
+        loadPosterFrames();
+
         mGestureDetector.setOnDoubleTapListener(new GestureDetector.OnDoubleTapListener() {
             public boolean onDoubleTap(MotionEvent e) {
                 // We do not react to this event
@@ -202,9 +258,113 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
         mVideoPlayerHelper[i].play(mPlayFullscreenVideo, position);
     }
 
+    // The keyframe of every target, replaced by a poster frame of its video
+    // once there is one, then the status icons (see VideoRenderer.PLAY_ICON).
+    // They are decoded in the background, the renderer draws placeholders
+    // until they arrive, see VideoRenderer.setLoadedTexture().
     private void loadTextures() {
+        mTextureCache = new TextureCache(TEXTURE_CACHE_BYTES, new TextureCache.Loader() {
+            @Override
+            public Texture load(String path) {
+                return Texture.loadBestTextureFromApk(path, getAssets(), supportsEtc2());
+            }
+        });
+        mTextureLoader = new TextureLoader(TEXTURE_LOADER_THREADS);
+
+        Texture placeholder = Texture.createPlaceholder();
+        for (int i = 0; i < NUM_TARGETS + ICON_TEXTURES.length; i++) {
+            mTextures.add(placeholder);
+        }
+
+        if (USE_TEXTURE_ATLAS) {
+            mTextureLoader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!loadTextureAtlas())
+                        loadTexturesSeparately();
+                }
+            });
+        } else {
+            loadTexturesSeparately();
+        }
+    }
+
+    private void loadTexturesSeparately() {
+        // All targets share one decoded preview
+        for (int i = 0; i < NUM_TARGETS; i++) {
+            loadTexture(i, PREVIEW_TEXTURE);
+        }
+        for (int i = 0; i < ICON_TEXTURES.length; i++) {
+            loadTexture(NUM_TARGETS + i, ICON_TEXTURES[i]);
+        }
+    }
+
+    private void loadTexture(int slot, final String path) {
+        mTextureLoader.load(slot, new TextureLoader.Decoder() {
+            @Override
+            public Texture decode() {
+                return mTextureCache.acquire(path);
+            }
+        });
+    }
+
+    // Runs on a loader thread. Returns false if the atlas could not be
+    // built or some image is better loaded compressed, nothing is delivered
+    // then.
+    private boolean loadTextureAtlas() {
+        String[] paths = new String[ICON_TEXTURES.length + 1];
+        paths[0] = PREVIEW_TEXTURE;
+        System.arraycopy(ICON_TEXTURES, 0, paths, 1, ICON_TEXTURES.length);
+        for (String path : paths) {
+            if (Texture.hasCompressedVariant(path, getAssets())) {
+                Log.d(TAG, "No texture atlas, " + path + " is compressed");
+                return false;
+            }
+        }
+        TextureAtlas atlas = TextureAtlas.loadFromApk(paths, getAssets(), ATLAS_PADDING,
+                ATLAS_MAX_SIZE);
+        if (atlas == null)
+            return false;
+
+        for (int i = 0; i < NUM_TARGETS; i++) {
+            mTextureLoader.deliver(i, atlas.getRegion(PREVIEW_TEXTURE));
+        }
+        for (int i = 0; i < ICON_TEXTURES.length; i++) {
+            mTextureLoader.deliver(NUM_TARGETS + i, atlas.getRegion(ICON_TEXTURES[i]));
+        }
+        Texture texture = atlas.getTexture();
+        Log.d(TAG, "Texture atlas of " + paths.length + " images: " + texture.mWidth + "x"
+                + texture.mHeight + ", " + texture.getByteSize() / 1024 + " kB");
+        return true;
+    }
+
+    // ETC2 is part of OpenGL ES 3.0, ETC1 textures work everywhere
+    private boolean supportsEtc2() {
+        ActivityManager am = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        return am.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000;
+    }
+
+    private void loadPosterFrames() {
+        PosterFrameCache cache = new PosterFrameCache(new File(getCacheDir(), "posters"),
+                POSTER_CACHE_BYTES);
+        mPosterFrameLoader = new PosterFrameLoader(getAssets(), cache,
+                new PosterFrameLoader.Listener() {
+                    @Override
+                    public void onPosterFrame(final int target, final Texture texture) {
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                // The renderer owns the textures once it exists
+                                if (mRenderer != null)
+                                    mRenderer.setPosterFrame(target, texture);
+                                else if (mTextures != null)
+                                    mTextureCache.release(mTextures.set(target, texture));
+                            }
+                        });
+                    }
+                });
         for (int i = 0; i < NUM_TARGETS; i++) {
-            mTextures.add(Texture.loadTextureFromApk("VideoPlayback/preview_alpha.png", getAssets()));
+            mPosterFrameLoader.load(i, mMovieName[i]);
         }
     }
 
@@ -222,26 +382,22 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
             Log.e(TAG, e.getString());
         }
 
-        // Resume the GL view:
-        if (mGlView != null) {
-            mGlView.setVisibility(View.VISIBLE);
-            mGlView.onResume();
-        }
-
-        // Reload all the movies
+        // Hand all the movies back to the renderer before the GL thread
+        // resumes, it loads them again as their targets are detected, from
+        // the positions it recorded when they were unloaded
         if (mRenderer != null) {
             for (int i = 0; i < NUM_TARGETS; i++) {
-                if (!mReturningFromFullScreen) {
-                    mRenderer.requestLoad(i, mMovieName[i], mSeekPosition[i],
-                            false);
-                } else {
-                    mRenderer.requestLoad(i, mMovieName[i], mSeekPosition[i],
-                            mWasPlaying[i]);
-                }
+                mRenderer.requestReload(i, mReturningFromFullScreen && mWasPlaying[i]);
             }
         }
 
         mReturningFromFullScreen = false;
+
+        // Resume the GL view:
+        if (mGlView != null) {
+            mGlView.setVisibility(View.VISIBLE);
+            mGlView.onResume();
+        }
     }
 
     @Override
@@ -263,6 +419,9 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
                         mSeekPosition[i] = data.getIntExtra(
                                 "currentSeekPosition", 0);
                         mWasPlaying[i] = false;
+                        // The GL thread is still paused
+                        if (mRenderer != null)
+                            mRenderer.requestLoad(i, mMovieName[i], mSeekPosition[i], false);
                     }
                 }
             }
@@ -283,19 +442,27 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
             mGlView.onPause();
         }
 
-        // Store the playback state of the movies and unload them:
+        // The GL thread is paused, the renderer can be read safely
+        if (mRenderer != null) {
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                    .putString(PREF_PREDICTIONS, mRenderer.savePredictions())
+                    .apply();
+        }
+
+        // Store which movies were playing and unload them. The players are
+        // released on their command threads, not on the UI thread, and the
+        // renderer records the positions to resume from.
         for (int i = 0; i < NUM_TARGETS; i++) {
-            // If the activity is paused we need to store the position in which
-            // this was currently playing:
-            if (mVideoPlayerHelper[i].isPlayableOnTexture()) {
-                mSeekPosition[i] = mVideoPlayerHelper[i].getCurrentPosition();
-                mWasPlaying[i] = mVideoPlayerHelper[i].getStatus() == MediaState.PLAYING;
+            mWasPlaying[i] = mVideoPlayerHelper[i] != null
+                    && mVideoPlayerHelper[i].getStatus() == MediaState.PLAYING;
+        }
+        if (mRenderer != null) {
+            mRenderer.unloadAll();
+        } else {
+            for (int i = 0; i < NUM_TARGETS; i++) {
+                if (mVideoPlayerHelper[i] != null)
+                    mVideoPlayerHelper[i].requestUnload();
             }
-
-            // We also need to release the resources used by the helper, though
-            // we don't need to destroy it:
-            if (mVideoPlayerHelper[i] != null)
-                mVideoPlayerHelper[i].unload();
         }
 
         mReturningFromFullScreen = false;
@@ -316,6 +483,9 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
                 mVideoPlayerHelper[i].unInit();
             mVideoPlayerHelper[i] = null;
         }
+        mPlayerPool.clear();
+        mPosterFrameLoader.release();
+        mTextureLoader.shutdown();
 
         try {
             mAppSession.stopAR();
@@ -384,7 +554,12 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
         mGlView.init(translucent, depthSize, stencilSize);
 
         mRenderer = new VideoRenderer(this, mAppSession);
+        mRenderer.setTextureCache(mTextureCache);
         mRenderer.setTextures(mTextures);
+        mRenderer.setTextureLoader(mTextureLoader);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        if (!mRenderer.restorePredictions(prefs.getString(PREF_PREDICTIONS, null)))
+            Log.d(TAG, "No detection statistics to preload from yet");
 
         // The renderer comes has the OpenGL context, thus, loading to texture
         // must happen when the surface has been created. This means that we
@@ -393,6 +568,9 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
         for (int i = 0; i < NUM_TARGETS; i++) {
             mRenderer.setVideoPlayerHelper(i, mVideoPlayerHelper[i]);
             mRenderer.requestLoad(i, mMovieName[i], 0, false);
+            Mp4Info info = readVideoInfo(mMovieName[i]);
+            if (info != null)
+                mRenderer.setVideoInfo(i, info);
         }
 
         mGlView.setRenderer(mRenderer);
@@ -404,7 +582,31 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
         }
 
     }
-    
+
+    // Reads the size and keyframes of a bundled video without preparing it,
+    // null if it cannot be read
+    private Mp4Info readVideoInfo(String movieName) {
+        try {
+            AssetFileDescriptor afd = getAssets().openFd(movieName);
+            // Closing the stream closes the descriptor too
+            FileInputStream in = afd.createInputStream();
+            try {
+                Mp4Info info = Mp4Parser.parse(in.getChannel(), afd.getStartOffset(),
+                        afd.getLength());
+                // Assets cannot be rewritten here, see Faststart
+                if (info.getMdatOffset() >= 0 && info.getMoovOffset() > info.getMdatOffset())
+                    Log.w(TAG, movieName + " has its moov box at the end,"
+                            + " run gradlew faststartAssets");
+                return info;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Could not read " + movieName + ": " + e.toString());
+            return null;
+        }
+    }
+
     @Override
     public boolean doInitTrackers() {
         boolean result = true;
@@ -465,7 +667,7 @@ public class MainActivity extends AppCompatActivity implements SampleApplication
                 ObjectTracker.getClassType());
         if (objectTracker != null) {
             objectTracker.start();
-            Vuforia.setHint(HINT.HINT_MAX_SIMULTANEOUS_IMAGE_TARGETS, 2);
+            Vuforia.setHint(HINT.HINT_MAX_SIMULTANEOUS_IMAGE_TARGETS, MAX_SIMULTANEOUS_TARGETS);
         } else
             result = false;
 
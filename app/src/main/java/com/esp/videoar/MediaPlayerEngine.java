@@ -0,0 +1,169 @@
+package com.esp.videoar;
+
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.view.Surface;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * A {@link VideoEngine} backed by a MediaPlayer, taken from and given back to the
+ * {@link MediaPlayerPool} when there is one. Plays the audio track too.
+ */
+class MediaPlayerEngine implements VideoEngine, MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnBufferingUpdateListener, MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnErrorListener, MediaPlayer.OnVideoSizeChangedListener {
+
+    private final MediaPlayerPool mPlayerPool;
+    private final MediaPlayer mMediaPlayer;
+    private volatile Listener mListener = null;
+
+    MediaPlayerEngine(MediaPlayerPool pool) {
+        mPlayerPool = pool;
+        mMediaPlayer = pool != null ? pool.acquire() : new MediaPlayer();
+        mMediaPlayer.setOnPreparedListener(this);
+        mMediaPlayer.setOnBufferingUpdateListener(this);
+        mMediaPlayer.setOnCompletionListener(this);
+        mMediaPlayer.setOnErrorListener(this);
+        mMediaPlayer.setOnVideoSizeChangedListener(this);
+        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd, long offset, long length) throws IOException {
+        mMediaPlayer.setDataSource(fd, offset, length);
+    }
+
+    @Override
+    public void setSurface(Surface surface) {
+        mMediaPlayer.setSurface(surface);
+    }
+
+    @Override
+    public void prepareAsync() {
+        mMediaPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mMediaPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mMediaPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mMediaPlayer.stop();
+    }
+
+    // Before Android O the seek mode is up to the player, most of them go to
+    // the previous sync sample anyway
+    @Override
+    public void seekTo(int position, boolean previousSync) {
+        if (previousSync && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+            mMediaPlayer.seekTo(position, MediaPlayer.SEEK_PREVIOUS_SYNC);
+        else
+            mMediaPlayer.seekTo(position);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mMediaPlayer.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mMediaPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return mMediaPlayer.getDuration();
+    }
+
+    @Override
+    public int getVideoWidth() {
+        return mMediaPlayer.getVideoWidth();
+    }
+
+    @Override
+    public int getVideoHeight() {
+        return mMediaPlayer.getVideoHeight();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        mMediaPlayer.setVolume(volume, volume);
+    }
+
+    @Override
+    public void release() {
+        mListener = null;
+        if (mPlayerPool != null)
+            mPlayerPool.recycle(mMediaPlayer);
+        else
+            mMediaPlayer.release();
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer mediaPlayer) {
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onPrepared(this);
+    }
+
+    @Override
+    public void onVideoSizeChanged(MediaPlayer mediaPlayer, int width, int height) {
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onVideoSizeChanged(this, width, height);
+    }
+
+    @Override
+    public void onBufferingUpdate(MediaPlayer mediaPlayer, int percent) {
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onBufferingUpdate(this, percent);
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mediaPlayer) {
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onCompletion(this);
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+        Listener listener = mListener;
+        if (listener == null)
+            return false;
+
+        String errorDescription;
+        switch (what) {
+            case MediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK:
+                errorDescription = "The video is streamed and its container is not valid for progressive playback";
+                break;
+            case MediaPlayer.MEDIA_ERROR_SERVER_DIED:
+                errorDescription = "Media server died";
+                break;
+            case MediaPlayer.MEDIA_ERROR_UNKNOWN:
+                errorDescription = "Unspecified media player error";
+                break;
+            default:
+                errorDescription = "Unknown error " + what;
+        }
+        listener.onError(this, errorDescription + ", " + extra);
+        return true;
+    }
+}
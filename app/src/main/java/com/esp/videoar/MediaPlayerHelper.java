@@ -6,52 +6,220 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.SurfaceTexture;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.media.MediaPlayer.OnBufferingUpdateListener;
-import android.media.MediaPlayer.OnCompletionListener;
-import android.media.MediaPlayer.OnErrorListener;
-import android.media.MediaPlayer.OnPreparedListener;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 
-public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateListener,
-        OnCompletionListener, OnErrorListener {
+public class MediaPlayerHelper implements VideoEngine.Listener,
+        SurfaceTexture.OnFrameAvailableListener {
 
     private static final String TAG = "MediaPlayerHelper";
 
     public static final int CURRENT_POSITION = -1;
-    private MediaPlayer mMediaPlayer = null;
-    private MediaType mMediaType = MediaType.UNKNOWN;
+
+    // Told about every state transition and video size change as it is
+    // published, on whichever thread published it (usually the command thread)
+    public interface OnMediaStateChangedListener {
+        void onMediaStateChanged(MediaPlayerHelper helper, MediaState state);
+
+        void onVideoSizeChanged(MediaPlayerHelper helper, int width, int height);
+    }
+
+    // Decoded frames the MediaCodec engine keeps ahead of the one shown
+    static final int CODEC_OUTPUT_BUFFERS = 3;
+
+    private volatile VideoEngine mEngine = null;
     private SurfaceTexture mSurfaceTexture = null;
-    private int mCurrentBufferingPercentage = 0;
+    // Created once per SurfaceTexture and handed to every player loaded on it
+    private Surface mSurface = null;
+    private MediaPlayerPool mPlayerPool = null;
+    // When the current load started and how long until its first frame was
+    // latched, -1 when unknown
+    private volatile long mLoadStartedAt = -1;
+    private volatile long mFirstFrameLatency = -1;
+    // Same for the last play() on texture, up to the first frame latched after it
+    private volatile long mResumeStartedAt = -1;
+    private volatile long mResumeLatency = -1;
+    // All the resumes measured so far, only written on the GL thread
+    private volatile int mResumes = 0;
+    private volatile long mResumeLatencyTotal = 0;
+    // Seeks may stop at the keyframe before the position, see VideoEngine
+    private volatile boolean mSeekToPreviousSync = false;
+    private volatile int mCurrentBufferingPercentage = 0;
     private String mMovieName = "";
     private byte mTextureID = 0;
     private Activity mParentActivity = null;
-    private MediaState mCurrentState = MediaState.NOT_READY;
+    // State, type, dimensions, duration and position, published by the
+    // command thread and the engine callbacks and read without locking
+    private final AtomicReference<MediaSnapshot> mSnapshot =
+            new AtomicReference<>(MediaSnapshot.INITIAL);
+    private volatile OnMediaStateChangedListener mStateListener = null;
     private boolean mShouldPlayImmediately = false;
     private int mSeekPosition = CURRENT_POSITION;
+    // Where the last unload stopped the video, recorded by releasePlayer()
+    // so that the GL thread never asks the player for it
+    private final AtomicInteger mUnloadPosition = new AtomicInteger(CURRENT_POSITION);
     private ReentrantLock mMediaPlayerLock = null;
     private ReentrantLock mSurfaceTextureLock = null;
     Intent mPlayerHelperActivityIntent = null;
 
+    // MediaPlayer calls go through binder to the media server and may block
+    // for a long time, the request*() methods queue them on this thread so
+    // that the GL thread never waits on them
+    private static final int MSG_LOAD = 1;
+    private static final int MSG_UNLOAD = 2;
+    private static final int MSG_PLAY = 3;
+    private static final int MSG_PAUSE = 4;
+    private static final int MSG_SEEK = 5;
+    // The engine callbacks, handled on the same thread, see onPrepared()
+    private static final int MSG_PREPARED = 6;
+    private static final int MSG_VIDEO_SIZE = 7;
+    private static final int MSG_COMPLETION = 8;
+    private static final int MSG_ERROR = 9;
+    private HandlerThread mCommandThread = null;
+    private Handler mCommandHandler = null;
+
+    // Set by onFrameAvailable() when the decoder queued a new frame, cleared
+    // by updateVideoData() once the frame is latched into the texture
+    private final AtomicBoolean mFrameAvailable = new AtomicBoolean(false);
+    // Only written on the GL thread by updateVideoData()
+    private volatile long mLatchedFrames = 0;
+    private volatile long mSkippedUpdates = 0;
+    // The SurfaceTexture transform of the latest latched frame, GL thread only
+    private final float[] mTransformMatrix = {1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f,
+            0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f};
+
     public boolean init() {
         mMediaPlayerLock = new ReentrantLock();
         mSurfaceTextureLock = new ReentrantLock();
+
+        mCommandThread = new HandlerThread(TAG);
+        mCommandThread.start();
+        mCommandHandler = new Handler(mCommandThread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                return handleCommand(msg);
+            }
+        });
         return true;
     }
 
     public void unInit() {
         unload();
+        mCommandThread.quitSafely();
         mSurfaceTextureLock.lock();
+        if (mSurface != null)
+            mSurface.release();
+        mSurface = null;
         mSurfaceTexture = null;
         mSurfaceTextureLock.unlock();
     }
 
+    private static class LoadRequest {
+        final String fileName;
+        final MediaType requestedType;
+        final boolean playOnTextureImmediately;
+        final int seekPosition;
+
+        LoadRequest(String fileName, MediaType requestedType, boolean playOnTextureImmediately,
+                    int seekPosition) {
+            this.fileName = fileName;
+            this.requestedType = requestedType;
+            this.playOnTextureImmediately = playOnTextureImmediately;
+            this.seekPosition = seekPosition;
+        }
+    }
+
+    // Queues a load(), a pending load that did not run yet is replaced
+    public void requestLoad(String fileName, MediaType requestedType,
+                            boolean playOnTextureImmediately, int seekPosition) {
+        mCommandHandler.removeMessages(MSG_LOAD);
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_LOAD,
+                new LoadRequest(fileName, requestedType, playOnTextureImmediately, seekPosition)));
+    }
+
+    // Queues an unload(), the pending load and playback commands become meaningless
+    public void requestUnload() {
+        mCommandHandler.removeMessages(MSG_LOAD);
+        removePlaybackCommands();
+        mCommandHandler.sendEmptyMessage(MSG_UNLOAD);
+    }
+
+    // Queues a play(false, seekPosition), a pending pause is dropped and a
+    // pending play is kept as is, together with its seek position
+    public void requestPlay(int seekPosition) {
+        if (mCommandHandler.hasMessages(MSG_PLAY))
+            return;
+        mCommandHandler.removeMessages(MSG_PAUSE);
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_PLAY, seekPosition, 0));
+    }
+
+    // Queues a pause(), only the latest play or pause is kept
+    public void requestPause() {
+        mCommandHandler.removeMessages(MSG_PLAY);
+        mCommandHandler.removeMessages(MSG_PAUSE);
+        mCommandHandler.sendEmptyMessage(MSG_PAUSE);
+    }
+
+    // Queues a seekTo(), only the latest position is kept
+    public void requestSeekTo(int position) {
+        mCommandHandler.removeMessages(MSG_SEEK);
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_SEEK, position, 0));
+    }
+
+    private void removePlaybackCommands() {
+        mCommandHandler.removeMessages(MSG_PLAY);
+        mCommandHandler.removeMessages(MSG_PAUSE);
+        mCommandHandler.removeMessages(MSG_SEEK);
+    }
+
+    // Runs on the command thread
+    private boolean handleCommand(Message msg) {
+        switch (msg.what) {
+            case MSG_LOAD:
+                LoadRequest request = (LoadRequest) msg.obj;
+                load(request.fileName, request.requestedType,
+                        request.playOnTextureImmediately, request.seekPosition);
+                return true;
+            case MSG_UNLOAD:
+                releasePlayer();
+                return true;
+            case MSG_PLAY:
+                play(false, msg.arg1);
+                return true;
+            case MSG_PAUSE:
+                pause();
+                return true;
+            case MSG_SEEK:
+                seekTo(msg.arg1);
+                return true;
+            case MSG_PREPARED:
+                handlePrepared((VideoEngine) msg.obj);
+                return true;
+            case MSG_VIDEO_SIZE:
+                handleVideoSizeChanged((VideoEngine) msg.obj, msg.arg1, msg.arg2);
+                return true;
+            case MSG_COMPLETION:
+                handleCompletion((VideoEngine) msg.obj);
+                return true;
+            case MSG_ERROR:
+                handleError((VideoEngine) msg.obj);
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public boolean load(String fileName, MediaType requestedType, boolean playOnTextureImmediately, int seekPosition) {
         boolean canBeOnTexture = false;
         boolean canBeFullscreen = false;
@@ -59,113 +227,242 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
         boolean result = false;
         mMediaPlayerLock.lock();
         mSurfaceTextureLock.lock();
-
-        // Nếu video đã sẵn sàng hoặc đã được load từ trước đó thì bỏ qua
-        if ((mCurrentState == MediaState.READY) || (mMediaPlayer != null)) {
-            Log.d(TAG, "Already loaded");
-        } else {
-            boolean textureOnly = requestedType == MediaType.ON_TEXTURE;
-            boolean isOnTextureWithFullscreen = requestedType == MediaType.ON_TEXTURE_FULLSCREEN;
-            if (textureOnly || isOnTextureWithFullscreen) {
-                if (mSurfaceTexture == null) {
-                    Log.d(TAG, "Can't load file to ON_TEXTURE because the Surface Texture is not ready");
+        try {
+            // Nếu video đã sẵn sàng hoặc đã được load từ trước đó thì bỏ qua
+            if ((getStatus() == MediaState.READY) || (mEngine != null)) {
+                Log.d(TAG, "Already loaded");
+            } else {
+                boolean textureOnly = requestedType == MediaType.ON_TEXTURE;
+                // Muted videos are decoded on texture by the MediaCodec engine,
+                // without their audio track and with exact seeks. The others keep
+                // the MediaPlayer, which plays the sound. Fullscreen has a player
+                // of its own either way.
+                boolean muted = requestedType == MediaType.ON_TEXTURE_MUTED;
+                boolean isOnTextureWithFullscreen = requestedType == MediaType.ON_TEXTURE_FULLSCREEN
+                        || muted;
+                if (textureOnly || isOnTextureWithFullscreen) {
+                    if (mSurfaceTexture == null) {
+                        Log.d(TAG, "Can't load file to ON_TEXTURE because the Surface Texture is not ready");
+                    } else {
+                        try {
+                            mLoadStartedAt = SystemClock.uptimeMillis();
+                            if (muted)
+                                mEngine = new CodecEngine(CODEC_OUTPUT_BUFFERS);
+                            else
+                                mEngine = new MediaPlayerEngine(mPlayerPool);
+                            mEngine.setListener(this);
+                            AssetFileDescriptor afd = mParentActivity.getAssets().openFd(fileName);
+                            mEngine.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(),
+                                    afd.getLength());
+                            afd.close();
+
+                            mEngine.setSurface(mSurface);
+                            canBeOnTexture = true;
+                            mShouldPlayImmediately = playOnTextureImmediately;
+                            mEngine.prepareAsync();
+                        } catch (IOException | RuntimeException e) {
+                            // e.g. an IllegalArgumentException from the extractor
+                            // for a file it cannot read
+                            Log.d(TAG, "Error while creating the player: " + e.toString());
+                            if (mEngine != null)
+                                recyclePlayer();
+                            publishState(MediaState.ERROR);
+                            return false;
+                        }
+                    }
                 } else {
                     try {
-                        mMediaPlayer = new MediaPlayer();
                         AssetFileDescriptor afd = mParentActivity.getAssets().openFd(fileName);
-                        mMediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(),
-                                afd.getLength());
                         afd.close();
-
-                        mMediaPlayer.setOnPreparedListener(this);
-                        mMediaPlayer.setOnBufferingUpdateListener(this);
-                        mMediaPlayer.setOnCompletionListener(this);
-                        mMediaPlayer.setOnErrorListener(this);
-                        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-                        mMediaPlayer.setSurface(new Surface(mSurfaceTexture));
-                        canBeOnTexture = true;
-                        mShouldPlayImmediately = playOnTextureImmediately;
-                        mMediaPlayer.prepareAsync();
                     } catch (IOException e) {
-                        Log.d(TAG, "Error while creating the MediaPlayer: " + e.toString());
-                        mCurrentState = MediaState.ERROR;
-                        mMediaPlayerLock.unlock();
-                        mSurfaceTextureLock.unlock();
-                        return false;
+                        e.printStackTrace();
                     }
                 }
-            } else {
-                try {
-                    AssetFileDescriptor afd = mParentActivity.getAssets().openFd(fileName);
-                    afd.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                if (requestedType == MediaType.FULLSCREEN || isOnTextureWithFullscreen) {
+                    mPlayerHelperActivityIntent = new Intent(mParentActivity, FullScreenActivity.class);
+                    mPlayerHelperActivityIntent
+                            .setAction(android.content.Intent.ACTION_VIEW);
+                    canBeFullscreen = true;
                 }
-            }
-            if (requestedType == MediaType.FULLSCREEN || requestedType == MediaType.ON_TEXTURE_FULLSCREEN) {
-                mPlayerHelperActivityIntent = new Intent(mParentActivity, FullScreenActivity.class);
-                mPlayerHelperActivityIntent
-                        .setAction(android.content.Intent.ACTION_VIEW);
-                canBeFullscreen = true;
-            }
 
-            // Lưu các tham số
-            mMovieName = fileName;
-            mSeekPosition = seekPosition;
-
-            if (canBeFullscreen && canBeOnTexture)
-                mMediaType = MediaType.ON_TEXTURE_FULLSCREEN;
-            else if (canBeFullscreen) {
-                mMediaType = MediaType.FULLSCREEN;
-                mCurrentState = MediaState.READY;
-            } // If it is pure fullscreen then we're ready otherwise we let the
-            // MediaPlayer load first
-            else if (canBeOnTexture)
-                mMediaType = mMediaType.ON_TEXTURE;
-            else
-                mMediaType = MediaType.UNKNOWN;
+                // Lưu các tham số
+                mMovieName = fileName;
+                mSeekPosition = seekPosition;
+
+                if (canBeFullscreen && canBeOnTexture)
+                    publishType(MediaType.ON_TEXTURE_FULLSCREEN);
+                else if (canBeFullscreen) {
+                    publishType(MediaType.FULLSCREEN);
+                    publishState(MediaState.READY);
+                } // If it is pure fullscreen then we're ready otherwise we let the
+                // MediaPlayer load first
+                else if (canBeOnTexture)
+                    publishType(MediaType.ON_TEXTURE);
+                else
+                    publishType(MediaType.UNKNOWN);
 
-            result = true;
+                result = true;
+            }
+        } finally {
+            mSurfaceTextureLock.unlock();
+            mMediaPlayerLock.unlock();
         }
 
-        mSurfaceTextureLock.unlock();
-        mMediaPlayerLock.unlock();
-
         return result;
     }
 
 
     public boolean unload() {
+        // A synchronous unload wins over the commands queued before it
+        if (mCommandHandler != null)
+            mCommandHandler.removeCallbacksAndMessages(null);
+        return releasePlayer();
+    }
+
+    private boolean releasePlayer() {
         mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
+        if (mEngine != null) {
+            MediaSnapshot snapshot = mSnapshot.get();
+            if (snapshot.isPlayableOnTexture() && snapshot.isReady()) {
+                int position = snapshot.position;
+                try {
+                    if (snapshot.state == MediaState.PLAYING)
+                        position = mEngine.getCurrentPosition();
+                } catch (Exception e) {
+                    Log.e(TAG, "Could not get the position to resume from");
+                }
+                if (position >= 0)
+                    mUnloadPosition.set(position);
+            }
             try {
-                mMediaPlayer.stop();
+                mEngine.stop();
             } catch (Exception e) {
-                mMediaPlayerLock.unlock();
                 Log.e(TAG, "Could not start playback");
             }
 
-            mMediaPlayer.release();
-            mMediaPlayer = null;
+            recyclePlayer();
         }
         mMediaPlayerLock.unlock();
 
-        mCurrentState = MediaState.NOT_READY;
-        mMediaType = MediaType.UNKNOWN;
+        if (mSnapshot.getAndSet(MediaSnapshot.INITIAL).state != MediaSnapshot.INITIAL.state)
+            notifyStateChanged(MediaSnapshot.INITIAL.state);
         return true;
     }
 
+    // Releases the engine, its MediaPlayer goes back to the pool if it has
+    // one, with the player lock held
+    private void recyclePlayer() {
+        mEngine.release();
+        mEngine = null;
+        mLoadStartedAt = -1;
+    }
+
+    // Shares the given pool of idle players with the other helpers, must be
+    // set before the first load
+    public void setPlayerPool(MediaPlayerPool pool) {
+        mPlayerPool = pool;
+    }
+
+    // Milliseconds from the start of the last load to its first latched frame
+    public long getFirstFrameLatencyMillis() {
+        return mFirstFrameLatency;
+    }
+
+    // Milliseconds from the last play() on texture to the first frame latched
+    // after it, -1 if none was latched yet
+    public long getResumeLatencyMillis() {
+        return mResumeLatency;
+    }
+
+    // Number of resumes getAverageResumeLatencyMillis() is taken over
+    public int getResumeCount() {
+        return mResumes;
+    }
+
+    public long getAverageResumeLatencyMillis() {
+        int resumes = mResumes;
+        return resumes > 0 ? mResumeLatencyTotal / resumes : -1;
+    }
+
+    public boolean isSeekingToPreviousSync() {
+        return mSeekToPreviousSync;
+    }
+
+    // Lets seeks land on the keyframe before the requested position, which
+    // starts the picture sooner when the exact frame does not matter
+    public void setSeekToPreviousSync(boolean previousSync) {
+        mSeekToPreviousSync = previousSync;
+    }
+
     // Indicates whether the movie can be played on a texture
     boolean isPlayableOnTexture() {
-        return mMediaType == MediaType.ON_TEXTURE || mMediaType == MediaType.ON_TEXTURE_FULLSCREEN;
+        return mSnapshot.get().isPlayableOnTexture();
     }
 
     MediaState getStatus() {
-        return mCurrentState;
+        return mSnapshot.get().state;
+    }
+
+    // The whole published state, consistent across its fields
+    MediaSnapshot getSnapshot() {
+        return mSnapshot.get();
     }
 
+    // The publish*() methods retry until their change lands on top of the
+    // latest snapshot, a writer never overwrites another one's field
+    private void publishState(MediaState state) {
+        MediaSnapshot current;
+        do {
+            current = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(current, current.withState(state)));
+        if (current.state != state)
+            notifyStateChanged(state);
+    }
+
+    private void publishType(MediaType type) {
+        MediaSnapshot current;
+        do {
+            current = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(current, current.withType(type)));
+    }
+
+    private void publishSize(int width, int height) {
+        MediaSnapshot current;
+        do {
+            current = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(current, current.withSize(width, height)));
+        OnMediaStateChangedListener listener = mStateListener;
+        if (listener != null && (current.width != width || current.height != height))
+            listener.onVideoSizeChanged(this, width, height);
+    }
+
+    private void notifyStateChanged(MediaState state) {
+        OnMediaStateChangedListener listener = mStateListener;
+        if (listener != null)
+            listener.onMediaStateChanged(this, state);
+    }
+
+    public void setOnMediaStateChangedListener(OnMediaStateChangedListener listener) {
+        mStateListener = listener;
+    }
 
-    // Returns the width of the video frame
+    private void publishDuration(int duration) {
+        MediaSnapshot current;
+        do {
+            current = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(current, current.withDuration(duration)));
+    }
+
+    private void publishPosition(int position) {
+        MediaSnapshot current;
+        do {
+            current = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(current, current.withPosition(position)));
+    }
+
+
+    // Returns the width of the video frame, as captured in onPrepared() or
+    // onVideoSizeChanged(), without calling into the MediaPlayer
     public int getVideoWidth() {
         if (!isPlayableOnTexture()) {
             // Log.d( LOGTAG,
@@ -173,19 +470,13 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return -1;
         }
 
-        if ((mCurrentState == MediaState.NOT_READY)
-                || (mCurrentState == MediaState.ERROR)) {
+        MediaSnapshot snapshot = mSnapshot.get();
+        if (!snapshot.isReady()) {
             // Log.d( LOGTAG, "Cannot get the video width if it is not ready");
             return -1;
         }
 
-        int result = -1;
-        mMediaPlayerLock.lock();
-        if (mMediaPlayer != null)
-            result = mMediaPlayer.getVideoWidth();
-        mMediaPlayerLock.unlock();
-
-        return result;
+        return snapshot.width;
     }
 
 
@@ -194,17 +485,11 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return -1;
         }
 
-        if ((mCurrentState == MediaState.NOT_READY) || (mCurrentState == MediaState.ERROR)) {
+        MediaSnapshot snapshot = mSnapshot.get();
+        if (!snapshot.isReady()) {
             return -1;
         }
-        int result = -1;
-        mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
-            result = mMediaPlayer.getVideoHeight();
-        }
-        mMediaPlayerLock.unlock();
-
-        return result;
+        return snapshot.height;
     }
 
     public float getVideoLength() {
@@ -212,21 +497,16 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return -1;
         }
 
-        if (mCurrentState == MediaState.NOT_READY || mCurrentState == MediaState.ERROR) {
+        // Captured in onPrepared(), the duration does not change afterwards
+        MediaSnapshot snapshot = mSnapshot.get();
+        if (!snapshot.isReady()) {
             return -1;
         }
-        int result = -1;
-        mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
-            result = mMediaPlayer.getDuration() / 1000;
-        }
-        mMediaPlayerLock.unlock();
-
-        return result;
+        return snapshot.duration / 1000;
     }
 
     public boolean isPlayableFullscreen() {
-        return mMediaType == MediaType.FULLSCREEN || mMediaType == MediaType.ON_TEXTURE_FULLSCREEN;
+        return mSnapshot.get().isPlayableFullscreen();
     }
 
     public boolean play(boolean fullScreen, int seekPosition) {
@@ -237,7 +517,7 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             if (isPlayableOnTexture()) {
                 mMediaPlayerLock.lock();
 
-                if (mMediaPlayer == null) {
+                if (mEngine == null) {
                     mMediaPlayerLock.unlock();
                     return false;
                 }
@@ -245,15 +525,14 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
 
                 mPlayerHelperActivityIntent.putExtra("shouldPlayImmediately", true);
                 try {
-                    mMediaPlayer.pause();
+                    mEngine.pause();
                 } catch (Exception e) {
-                    mMediaPlayerLock.unlock();
                     Log.e(TAG, "Could not pause playback");
                 }
                 if (seekPosition != CURRENT_POSITION) {
                     mPlayerHelperActivityIntent.putExtra("currentSeekPosition", seekPosition);
                 } else {
-                    mPlayerHelperActivityIntent.putExtra("currentSeekPosition", mMediaPlayer.getCurrentPosition());
+                    mPlayerHelperActivityIntent.putExtra("currentSeekPosition", mEngine.getCurrentPosition());
                 }
 
                 mMediaPlayerLock.unlock();
@@ -278,37 +557,41 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
                 return false;
             }
 
-            if (mCurrentState == MediaState.NOT_READY || mCurrentState == MediaState.ERROR) {
+            if (!mSnapshot.get().isReady()) {
                 Log.d(TAG, "Cannot play this video if it is not ready");
                 return false;
             }
 
             mMediaPlayerLock.lock();
 
+            // Unloaded while this call was waiting for the lock
+            if (mEngine == null) {
+                mMediaPlayerLock.unlock();
+                return false;
+            }
+
+            mResumeStartedAt = SystemClock.uptimeMillis();
             if (seekPosition != CURRENT_POSITION) {
                 try {
-                    mMediaPlayer.seekTo(seekPosition);
+                    mEngine.seekTo(seekPosition, mSeekToPreviousSync);
                 } catch (Exception e) {
-                    mMediaPlayerLock.unlock();
                     Log.e(TAG, "Could not seek to position");
                 }
             } else {
-                if (mCurrentState == MediaState.REACHED_END) {
+                if (getStatus() == MediaState.REACHED_END) {
                     try {
-                        mMediaPlayer.seekTo(0);
+                        mEngine.seekTo(0, false);
                     } catch (Exception e) {
-                        mMediaPlayerLock.unlock();
                         Log.e(TAG, "Could not seek to position");
                     }
                 }
             }
             try {
-                mMediaPlayer.start();
+                mEngine.start();
             } catch (Exception e) {
-                mMediaPlayerLock.unlock();
                 Log.e(TAG, "Could not start playback");
             }
-            mCurrentState = MediaState.PLAYING;
+            publishState(MediaState.PLAYING);
 
             mMediaPlayerLock.unlock();
 
@@ -321,21 +604,21 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return false;
         }
 
-        if (mCurrentState == MediaState.NOT_READY || mCurrentState == MediaState.ERROR) {
+        if (!mSnapshot.get().isReady()) {
             return false;
         }
         boolean result = false;
 
         mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
-            if (mMediaPlayer.isPlaying()) {
+        if (mEngine != null) {
+            if (mEngine.isPlaying()) {
                 try {
-                    mMediaPlayer.pause();
+                    mEngine.pause();
                 } catch (Exception e) {
-                    mMediaPlayerLock.unlock();
                     Log.e(TAG, "Could not pause playback");
                 }
-                mCurrentState = MediaState.PAUSED;
+                publishPosition(mEngine.getCurrentPosition());
+                publishState(MediaState.PAUSED);
                 result = true;
             }
         }
@@ -352,8 +635,7 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return false;
         }
 
-        if ((mCurrentState == MediaState.NOT_READY)
-                || (mCurrentState == MediaState.ERROR)) {
+        if (!mSnapshot.get().isReady()) {
             // Log.d( TAG, "Cannot stop this video if it is not ready");
             return false;
         }
@@ -361,14 +643,14 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
         boolean result = false;
 
         mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
-            mCurrentState = MediaState.STOPPED;
+        if (mEngine != null) {
+            publishState(MediaState.STOPPED);
             try {
-                mMediaPlayer.stop();
+                mEngine.stop();
             } catch (Exception e) {
-                mMediaPlayerLock.unlock();
                 Log.e(TAG, "Could not stop playback");
             }
+            publishPosition(0);
 
             result = true;
         }
@@ -385,13 +667,39 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return -1;
         }
 
+        // Nothing new was decoded since the last call, the texture still
+        // holds the latest frame so there is no need to latch (nor lock)
+        if (!mFrameAvailable.getAndSet(false)) {
+            mSkippedUpdates++;
+            return mTextureID;
+        }
+
         byte result = -1;
 
         mSurfaceTextureLock.lock();
         if (mSurfaceTexture != null) {
-            // Only request an update if currently playing
-            if (mCurrentState == MediaState.PLAYING)
-                mSurfaceTexture.updateTexImage();
+            mSurfaceTexture.updateTexImage();
+            mSurfaceTexture.getTransformMatrix(mTransformMatrix);
+            mLatchedFrames++;
+
+            long loadStartedAt = mLoadStartedAt;
+            if (loadStartedAt >= 0) {
+                mFirstFrameLatency = SystemClock.uptimeMillis() - loadStartedAt;
+                mLoadStartedAt = -1;
+                Log.d(TAG, "First frame of " + mMovieName + " after " + mFirstFrameLatency + " ms"
+                        + (mPlayerPool != null ? " (pool hits " + mPlayerPool.getHitCount()
+                        + ", misses " + mPlayerPool.getMissCount() + ")" : ""));
+            }
+
+            long resumeStartedAt = mResumeStartedAt;
+            if (resumeStartedAt >= 0) {
+                mResumeLatency = SystemClock.uptimeMillis() - resumeStartedAt;
+                mResumeStartedAt = -1;
+                mResumeLatencyTotal += mResumeLatency;
+                mResumes++;
+                Log.d(TAG, "Resumed " + mMovieName + " after " + mResumeLatency + " ms"
+                        + (mSeekToPreviousSync ? " (previous sync)" : ""));
+            }
 
             result = mTextureID;
         }
@@ -400,6 +708,16 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
         return result;
     }
 
+    // Number of updateVideoData() calls that latched a new frame
+    public long getLatchedFrameCount() {
+        return mLatchedFrames;
+    }
+
+    // Number of updateVideoData() calls that had no new frame to latch
+    public long getSkippedUpdateCount() {
+        return mSkippedUpdates;
+    }
+
     // Moves the movie to the requested seek position
     public boolean seekTo(int position) {
         if (!isPlayableOnTexture()) {
@@ -408,8 +726,7 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return false;
         }
 
-        if ((mCurrentState == MediaState.NOT_READY)
-                || (mCurrentState == MediaState.ERROR)) {
+        if (!mSnapshot.get().isReady()) {
             // Log.d( TAG,
             // "Cannot seek-to on this video if it is not ready");
             return false;
@@ -417,13 +734,13 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
 
         boolean result = false;
         mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
+        if (mEngine != null) {
             try {
-                mMediaPlayer.seekTo(position);
+                mEngine.seekTo(position, mSeekToPreviousSync);
             } catch (Exception e) {
-                mMediaPlayerLock.unlock();
                 Log.e(TAG, "Could not seek to position");
             }
+            publishPosition(position);
             result = true;
         }
         mMediaPlayerLock.unlock();
@@ -432,6 +749,13 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
     }
 
 
+    // The position the last unload stopped the video at, CURRENT_POSITION
+    // if none was recorded since the last call
+    public int takeUnloadPosition() {
+        return mUnloadPosition.getAndSet(CURRENT_POSITION);
+    }
+
+
     // Gets the current seek position
     public int getCurrentPosition() {
         if (!isPlayableOnTexture()) {
@@ -440,17 +764,21 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return -1;
         }
 
-        if ((mCurrentState == MediaState.NOT_READY)
-                || (mCurrentState == MediaState.ERROR)) {
+        MediaSnapshot snapshot = mSnapshot.get();
+        if (!snapshot.isReady()) {
             // Log.d( TAG,
             // "Cannot get the current playback position of this video if it is not ready");
             return -1;
         }
 
+        // The position only moves while playing, otherwise the published one is current
+        if (snapshot.state != MediaState.PLAYING && snapshot.position >= 0)
+            return snapshot.position;
+
         int result = -1;
         mMediaPlayerLock.lock();
-        if (mMediaPlayer != null)
-            result = mMediaPlayer.getCurrentPosition();
+        if (mEngine != null)
+            result = mEngine.getCurrentPosition();
         mMediaPlayerLock.unlock();
 
         return result;
@@ -465,8 +793,7 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
             return false;
         }
 
-        if ((mCurrentState == MediaState.NOT_READY)
-                || (mCurrentState == MediaState.ERROR)) {
+        if (!mSnapshot.get().isReady()) {
             // Log.d( TAG,
             // "Cannot set the volume of this video if it is not ready");
             return false;
@@ -474,8 +801,8 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
 
         boolean result = false;
         mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
-            mMediaPlayer.setVolume(value, value);
+        if (mEngine != null) {
+            mEngine.setVolume(value);
             result = true;
         }
         mMediaPlayerLock.unlock();
@@ -495,13 +822,9 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
 
 
     @Override
-    public void onBufferingUpdate(MediaPlayer mediaPlayer, int i) {
-        mMediaPlayerLock.lock();
-        if (mMediaPlayer != null) {
-            if (mediaPlayer == mMediaPlayer)
-                mCurrentBufferingPercentage = i;
-        }
-        mMediaPlayerLock.unlock();
+    public void onBufferingUpdate(VideoEngine engine, int percent) {
+        if (engine == mEngine)
+            mCurrentBufferingPercentage = percent;
     }
 
     // With this we can set the parent activity
@@ -515,23 +838,70 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
         // We have to give it a texture id of an already created
         // OpenGL texture
         mSurfaceTextureLock.lock();
+        if (mSurface != null)
+            mSurface.release();
         mSurfaceTexture = new SurfaceTexture(TextureID);
+        mSurfaceTexture.setOnFrameAvailableListener(this);
+        mSurface = new Surface(mSurfaceTexture);
         mTextureID = (byte) TextureID;
+        mFrameAvailable.set(false);
         mSurfaceTextureLock.unlock();
         return true;
     }
 
+    // Copies the transform read when updateVideoData() latched the current
+    // frame, so this has to be called on the GL thread as well
     public void getSurfaceTextureTransformMatrix(float[] mtx) {
-        mSurfaceTextureLock.lock();
-        if (mSurfaceTexture != null) {
-            mSurfaceTexture.getTransformMatrix(mtx);
-        }
-        mSurfaceTextureLock.unlock();
+        System.arraycopy(mTransformMatrix, 0, mtx, 0, mTransformMatrix.length);
+    }
+
+    // Called from an arbitrary thread whenever the decoder queued a new frame
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        mFrameAvailable.set(true);
+    }
+
+    // The engines report on threads of their own: the codec thread, or the
+    // looper of whichever thread created the MediaPlayer, which for a pooled
+    // one may be another helper's command thread or the UI thread. The
+    // callbacks are handed over to this helper's command thread, so that
+    // they run in order with the commands that share their fields.
+    @Override
+    public void onPrepared(VideoEngine engine) {
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_PREPARED, engine));
+    }
+
+    // The size may only be known (or change) after onPrepared(), e.g. for
+    // streams, it is then reported here
+    @Override
+    public void onVideoSizeChanged(VideoEngine engine, int width, int height) {
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_VIDEO_SIZE,
+                width, height, engine));
+    }
+
+    @Override
+    public void onCompletion(VideoEngine engine) {
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_COMPLETION, engine));
     }
 
     @Override
-    public void onPrepared(MediaPlayer mediaPlayer) {
-        mCurrentState = MediaState.READY;
+    public void onError(VideoEngine engine, String description) {
+        Log.e(TAG, "Error while opening the file. Unloading the media player ("
+                + description + ")");
+        mCommandHandler.sendMessage(mCommandHandler.obtainMessage(MSG_ERROR, engine));
+    }
+
+    // Runs on the command thread like the handle*() methods below
+    private void handlePrepared(VideoEngine engine) {
+        // The engine may have been unloaded or replaced since it reported
+        if (engine != mEngine)
+            return;
+
+        // Published before the state so that a ready snapshot always has them
+        publishSize(engine.getVideoWidth(), engine.getVideoHeight());
+        publishDuration(engine.getDuration());
+        publishPosition(0);
+        publishState(MediaState.READY);
 
         // If requested an immediate play
         if (mShouldPlayImmediately)
@@ -542,45 +912,28 @@ public class MediaPlayerHelper implements OnPreparedListener, OnBufferingUpdateL
 
 
 
-    @Override
-    public void onCompletion(MediaPlayer mediaPlayer) {
-        mCurrentState = MediaState.REACHED_END;
+    private void handleVideoSizeChanged(VideoEngine engine, int width, int height) {
+        if (engine != mEngine || width == 0 || height == 0)
+            return;
+        publishSize(width, height);
     }
 
-    @Override
-    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
-        if (mediaPlayer == mMediaPlayer) {
-            String errorDescription;
-
-            switch (what) {
-                case MediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK:
-                    errorDescription = "The video is streamed and its container is not valid for progressive playback";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_SERVER_DIED:
-                    errorDescription = "Media server died";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_UNKNOWN:
-                    errorDescription = "Unspecified media player error";
-                    break;
-                default:
-                    errorDescription = "Unknown error " + what;
-            }
-
-            String error = "Error while opening the file. Unloading the media player ("
-                    + errorDescription + ", " + extra + ")";
-            Log.e(TAG, error);
-
-            unload();
+    private void handleCompletion(VideoEngine engine) {
+        if (engine != mEngine)
+            return;
+        publishState(MediaState.REACHED_END);
+    }
 
-            mCurrentState = MediaState.ERROR;
+    private void handleError(VideoEngine engine) {
+        if (engine != mEngine)
+            return;
 
-            return true;
-        }
+        unload();
 
-        return false;
+        publishState(MediaState.ERROR);
     }
 
     public boolean isPlaying() {
-        return mMediaPlayer.isPlaying();
+        return mSnapshot.get().state == MediaState.PLAYING;
     }
 }
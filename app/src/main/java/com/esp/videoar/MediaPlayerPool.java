@@ -0,0 +1,86 @@
+package com.esp.videoar;
+
+import android.media.MediaPlayer;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Idle MediaPlayer instances shared by the MediaPlayerHelpers.
+ *
+ * Unloading a video reset()s its MediaPlayer and keeps it here instead of releasing it, so that
+ * reloading it (e.g. when coming back from onPause()) does not pay for a new native player.
+ * The player comes back in the Idle state, the caller sets the data source, listeners and
+ * Surface again. A MediaPlayer delivers its callbacks on the looper of the thread that created
+ * it, not on the command thread of the helper that uses it now, so the helpers hand them over
+ * to their own command thread (see MediaPlayerHelper.onPrepared()).
+ */
+public class MediaPlayerPool {
+
+    private static final String TAG = "MediaPlayerPool";
+
+    private final int mCapacity;
+    private final ArrayDeque<MediaPlayer> mIdle;
+
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    public MediaPlayerPool(int capacity) {
+        mCapacity = capacity;
+        mIdle = new ArrayDeque<>(capacity);
+    }
+
+    // Creates players up front so that even the first loads are hits
+    public synchronized void warmUp(int count) {
+        while (mIdle.size() < Math.min(count, mCapacity)) {
+            mIdle.push(new MediaPlayer());
+        }
+    }
+
+    // Returns an idle player, creating one when the pool is empty
+    public synchronized MediaPlayer acquire() {
+        MediaPlayer player = mIdle.poll();
+        if (player != null) {
+            mHits++;
+            return player;
+        }
+        mMisses++;
+        return new MediaPlayer();
+    }
+
+    // Takes back a player that is no longer used, releases it if the pool is full
+    public synchronized void recycle(MediaPlayer player) {
+        try {
+            player.reset();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not reset the player, releasing it instead");
+            player.release();
+            return;
+        }
+
+        if (mIdle.size() < mCapacity)
+            mIdle.push(player);
+        else
+            player.release();
+    }
+
+    // Releases all the idle players, e.g. when the activity is destroyed
+    public synchronized void clear() {
+        for (MediaPlayer player : mIdle) {
+            player.release();
+        }
+        mIdle.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdle.size();
+    }
+}
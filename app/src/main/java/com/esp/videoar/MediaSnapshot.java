@@ -0,0 +1,75 @@
+package com.esp.videoar;
+
+/**
+ * Immutable view of the state of a {@link MediaPlayerHelper}.
+ *
+ * The helper publishes a new snapshot through an AtomicReference whenever something changes, so
+ * the GL thread can read the state of every target each frame without taking a lock. Dimensions,
+ * duration and position are -1 while unknown.
+ */
+final class MediaSnapshot {
+
+    static final MediaSnapshot INITIAL = new MediaSnapshot(MediaState.NOT_READY,
+            MediaType.UNKNOWN, -1, -1, -1, -1);
+
+    final MediaState state;
+    final MediaType type;
+    final int width;
+    final int height;
+    // In milliseconds
+    final int duration;
+    final int position;
+
+    MediaSnapshot(MediaState state, MediaType type, int width, int height, int duration,
+                  int position) {
+        this.state = state;
+        this.type = type;
+        this.width = width;
+        this.height = height;
+        this.duration = duration;
+        this.position = position;
+    }
+
+    MediaSnapshot withState(MediaState newState) {
+        if (newState == state)
+            return this;
+        return new MediaSnapshot(newState, type, width, height, duration, position);
+    }
+
+    MediaSnapshot withType(MediaType newType) {
+        if (newType == type)
+            return this;
+        return new MediaSnapshot(state, newType, width, height, duration, position);
+    }
+
+    MediaSnapshot withSize(int newWidth, int newHeight) {
+        if (newWidth == width && newHeight == height)
+            return this;
+        return new MediaSnapshot(state, type, newWidth, newHeight, duration, position);
+    }
+
+    MediaSnapshot withDuration(int newDuration) {
+        if (newDuration == duration)
+            return this;
+        return new MediaSnapshot(state, type, width, height, newDuration, position);
+    }
+
+    MediaSnapshot withPosition(int newPosition) {
+        if (newPosition == position)
+            return this;
+        return new MediaSnapshot(state, type, width, height, duration, newPosition);
+    }
+
+    boolean isPlayableOnTexture() {
+        return type == MediaType.ON_TEXTURE || type == MediaType.ON_TEXTURE_FULLSCREEN;
+    }
+
+    boolean isPlayableFullscreen() {
+        return type == MediaType.FULLSCREEN || type == MediaType.ON_TEXTURE_FULLSCREEN;
+    }
+
+    // The MediaPlayer only answers queries once it is prepared
+    boolean isReady() {
+        return state != MediaState.NOT_READY && state != MediaState.ERROR;
+    }
+}
@@ -6,7 +6,11 @@ public enum MediaType {
     ON_TEXTURE(0),
     FULLSCREEN(1),
     ON_TEXTURE_FULLSCREEN(2),
-    UNKNOWN(3);
+    UNKNOWN(3),
+    // Requested only: like ON_TEXTURE_FULLSCREEN, but decoded on texture by
+    // the MediaCodec engine without the sound, fullscreen still plays it.
+    // Published as ON_TEXTURE_FULLSCREEN once loaded.
+    ON_TEXTURE_MUTED(4);
 
     private int type;
 
@@ -0,0 +1,139 @@
+package com.esp.videoar;
+
+/**
+ * Decides when the video of a target starts and stops following its tracking state.
+ *
+ * A target has to be tracked for the debounce period before its video starts, and lost for the
+ * grace period before it is paused, so that jittery tracking does not turn into a stream of
+ * start/pause/seek calls. Each command is issued once per transition: the policy waits for the
+ * player to reach the requested state and only re-issues a command that has not taken effect
+ * after the retry period. The playback position is captured only when a pause is issued.
+ *
+ * Not thread safe, update() is meant to be called on the GL thread once per target and frame.
+ */
+public class PlaybackPolicy {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+    public static final long DEFAULT_GRACE_MILLIS = 500;
+    public static final long DEFAULT_RETRY_MILLIS = 1000;
+
+    // What the policy does to the players, implemented by the renderer
+    public interface Commands {
+        void play(int target, int seekPosition);
+
+        void pause(int target);
+
+        int currentPosition(int target);
+    }
+
+    private static final int NONE = 0;
+    private static final int PLAY = 1;
+    private static final int PAUSE = 2;
+
+    private final Clock mClock;
+    private final Commands mCommands;
+    private final long mDebounceMillis;
+    private final long mGraceMillis;
+    private final long mRetryMillis;
+
+    private final long[] mTrackedSince;
+    private final long[] mLostSince;
+    private final boolean[] mActive;
+    private final int[] mPendingCommand;
+    private final long[] mPendingSince;
+    private final int[] mResumePosition;
+
+    public PlaybackPolicy(int numTargets, Clock clock, Commands commands) {
+        this(numTargets, clock, commands, DEFAULT_DEBOUNCE_MILLIS, DEFAULT_GRACE_MILLIS,
+                DEFAULT_RETRY_MILLIS);
+    }
+
+    public PlaybackPolicy(int numTargets, Clock clock, Commands commands, long debounceMillis,
+                          long graceMillis, long retryMillis) {
+        mClock = clock;
+        mCommands = commands;
+        mDebounceMillis = debounceMillis;
+        mGraceMillis = graceMillis;
+        mRetryMillis = retryMillis;
+
+        mTrackedSince = new long[numTargets];
+        mLostSince = new long[numTargets];
+        mActive = new boolean[numTargets];
+        mPendingCommand = new int[numTargets];
+        mPendingSince = new long[numTargets];
+        mResumePosition = new int[numTargets];
+        for (int i = 0; i < numTargets; i++) {
+            reset(i, MediaPlayerHelper.CURRENT_POSITION);
+        }
+    }
+
+    // Forgets the tracking history of a target, e.g. when its video is (re)loaded,
+    // the next play starts at the given position
+    public void reset(int target, int resumePosition) {
+        mTrackedSince[target] = -1;
+        mLostSince[target] = -1;
+        mActive[target] = false;
+        mPendingCommand[target] = NONE;
+        mResumePosition[target] = resumePosition;
+    }
+
+    public boolean isActive(int target) {
+        return mActive[target];
+    }
+
+    public int getResumePosition(int target) {
+        return mResumePosition[target];
+    }
+
+    public void update(int target, boolean tracking, MediaState state) {
+        long now = mClock.uptimeMillis();
+
+        if (tracking) {
+            mLostSince[target] = -1;
+            if (mTrackedSince[target] < 0)
+                mTrackedSince[target] = now;
+            if (!mActive[target] && now - mTrackedSince[target] >= mDebounceMillis)
+                mActive[target] = true;
+        } else {
+            mTrackedSince[target] = -1;
+            if (mLostSince[target] < 0)
+                mLostSince[target] = now;
+            if (mActive[target] && now - mLostSince[target] >= mGraceMillis)
+                mActive[target] = false;
+        }
+
+        // Once the player got where the last command asked it to, a new
+        // transition (e.g. the end of the video) may issue a new command
+        if ((mPendingCommand[target] == PLAY && state == MediaState.PLAYING)
+                || (mPendingCommand[target] == PAUSE && state != MediaState.PLAYING))
+            mPendingCommand[target] = NONE;
+
+        if (mActive[target]) {
+            if (canStartPlaying(state) && shouldIssue(target, PLAY, now)) {
+                mCommands.play(target, mResumePosition[target]);
+                // The player keeps its position from now on
+                mResumePosition[target] = MediaPlayerHelper.CURRENT_POSITION;
+                issued(target, PLAY, now);
+            }
+        } else if (state == MediaState.PLAYING && shouldIssue(target, PAUSE, now)) {
+            mCommands.pause(target);
+            mResumePosition[target] = mCommands.currentPosition(target);
+            issued(target, PAUSE, now);
+        }
+    }
+
+    static boolean canStartPlaying(MediaState state) {
+        return state == MediaState.READY || state == MediaState.PAUSED
+                || state == MediaState.STOPPED || state == MediaState.REACHED_END;
+    }
+
+    private boolean shouldIssue(int target, int command, long now) {
+        return mPendingCommand[target] != command
+                || now - mPendingSince[target] >= mRetryMillis;
+    }
+
+    private void issued(int target, int command, long now) {
+        mPendingCommand[target] = command;
+        mPendingSince[target] = now;
+    }
+}
@@ -0,0 +1,192 @@
+package com.esp.videoar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compressed poster frames on disk, one file per video, keyed by a hash of the video content so
+ * that a changed video never shows a stale frame.
+ *
+ * The total size is kept under maxBytes by deleting the least recently used files first. The
+ * use order survives restarts through the file modification times. Thread safe.
+ */
+public class PosterFrameCache {
+
+    private static final String SUFFIX = ".jpg";
+    // Bytes hashed from each end of a video, enough to tell encodes apart
+    // without reading all of it
+    static final int HASHED_BYTES = 64 * 1024;
+
+    private final File mDir;
+    private final long mMaxBytes;
+    // File sizes by key, least recently used first
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSizeBytes = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    public PosterFrameCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+            return;
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                // Left behind by an interrupted put()
+                file.delete();
+                continue;
+            }
+            mEntries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+            mSizeBytes += file.length();
+        }
+        trim();
+    }
+
+    // The stored frame, null if there is none
+    public synchronized byte[] get(String key) {
+        Long size = mEntries.get(key);
+        if (size == null) {
+            mMisses++;
+            return null;
+        }
+
+        File file = fileFor(key);
+        byte[] data = new byte[size.intValue()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0)
+                    throw new IOException("Truncated " + file);
+                read += count;
+            }
+        } catch (IOException e) {
+            remove(key);
+            mMisses++;
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        mHits++;
+        return data;
+    }
+
+    public synchronized void put(String key, byte[] data) throws IOException {
+        if (data.length > mMaxBytes)
+            return;
+        remove(key);
+
+        // Written aside first so that a crash never leaves half a frame
+        File temp = new File(mDir, key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        if (!temp.renameTo(fileFor(key))) {
+            temp.delete();
+            throw new IOException("Could not store " + key);
+        }
+        mEntries.put(key, (long) data.length);
+        mSizeBytes += data.length;
+        trim();
+    }
+
+    public synchronized boolean contains(String key) {
+        return mEntries.containsKey(key);
+    }
+
+    public synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    // A hash of the length bytes of the channel from start on: the length and
+    // the first and last HASHED_BYTES of them
+    public static String contentKey(FileChannel channel, long start, long length)
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update(ByteBuffer.allocate(8).putLong(0, length));
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(HASHED_BYTES, length));
+        readFully(channel, buffer, start);
+        digest.update(buffer);
+        if (length > HASHED_BYTES) {
+            buffer.clear();
+            buffer.limit((int) Math.min(HASHED_BYTES, length - HASHED_BYTES));
+            readFully(channel, buffer, start + length - buffer.limit());
+            digest.update(buffer);
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit(b >> 4 & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private File fileFor(String key) {
+        return new File(mDir, key + SUFFIX);
+    }
+
+    private void remove(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSizeBytes -= size;
+            fileFor(key).delete();
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mSizeBytes > mMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            mSizeBytes -= eldest.getValue();
+            fileFor(eldest.getKey()).delete();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.esp.videoar;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.esp.videoar.SampleApplication.utils.Texture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Finds the poster frame of every target's video: from the {@link PosterFrameCache} when it was
+ * extracted before, otherwise with a MediaMetadataRetriever, which decodes the first keyframe
+ * without a player, and stores it in the cache as a JPEG.
+ *
+ * Works on its own thread, the listener is called there with the texture ready to upload. The
+ * textures reload their pixels on the calling thread.
+ */
+class PosterFrameLoader {
+
+    private static final String TAG = "PosterFrameLoader";
+
+    // Wider frames are scaled down, a poster is only seen until the video starts
+    static final int MAX_WIDTH = 512;
+    private static final int JPEG_QUALITY = 85;
+
+    interface Listener {
+        void onPosterFrame(int target, Texture texture);
+    }
+
+    private final AssetManager mAssets;
+    private final PosterFrameCache mCache;
+    private final Listener mListener;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    PosterFrameLoader(AssetManager assets, PosterFrameCache cache, Listener listener) {
+        mAssets = assets;
+        mCache = cache;
+        mListener = listener;
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    void load(final int target, final String movieName) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                loadNow(target, movieName);
+            }
+        });
+    }
+
+    // The frames still queued are not loaded
+    void release() {
+        mThread.quit();
+    }
+
+    private void loadNow(int target, String movieName) {
+        Texture texture = decode(movieName);
+        if (texture != null)
+            mListener.onPosterFrame(target, texture);
+    }
+
+    // The poster frame of the video, null if there is none. The texture can
+    // load its pixels again, from the cache or by extracting them once more.
+    private Texture decode(final String movieName) {
+        long startedAt = SystemClock.uptimeMillis();
+        byte[] jpeg;
+        boolean cached;
+        try {
+            AssetFileDescriptor afd = mAssets.openFd(movieName);
+            // Closing the stream closes the descriptor too
+            FileInputStream in = afd.createInputStream();
+            try {
+                String key = PosterFrameCache.contentKey(in.getChannel(), afd.getStartOffset(),
+                        afd.getLength());
+                jpeg = mCache.get(key);
+                cached = jpeg != null;
+                if (jpeg == null) {
+                    jpeg = extract(afd);
+                    if (jpeg == null) {
+                        Log.d(TAG, "Could not extract a frame of " + movieName);
+                        return null;
+                    }
+                    mCache.put(key, jpeg);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "No poster frame for " + movieName + ": " + e.toString());
+            return null;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        if (bitmap == null)
+            return null;
+        Texture texture = Texture.loadTextureFromBitmap(bitmap);
+        bitmap.recycle();
+        texture.mName = movieName + " poster";
+        texture.mSource = new Texture.Source() {
+            @Override
+            public Texture load() {
+                return decode(movieName);
+            }
+        };
+
+        Log.d(TAG, "Poster frame of " + movieName + (cached ? " from the cache" : " extracted")
+                + " in " + (SystemClock.uptimeMillis() - startedAt) + " ms, cache "
+                + mCache.getSizeBytes() / 1024 + " kB");
+        return texture;
+    }
+
+    // The first keyframe as a JPEG, null if it cannot be decoded
+    private static byte[] extract(AssetFileDescriptor afd) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(),
+                    afd.getLength());
+            Bitmap frame = retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (frame == null)
+                return null;
+            if (frame.getWidth() > MAX_WIDTH) {
+                Bitmap scaled = Bitmap.createScaledBitmap(frame, MAX_WIDTH,
+                        frame.getHeight() * MAX_WIDTH / frame.getWidth(), true);
+                frame.recycle();
+                frame = scaled;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            frame.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            frame.recycle();
+            return out.toByteArray();
+        } catch (RuntimeException e) {
+            // Thrown by setDataSource() for files it cannot read
+            return null;
+        } finally {
+            retriever.release();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.esp.videoar;
+
+/**
+ * Runs at most a fixed number of video prepares at the same time, the most urgent first.
+ *
+ * Every prepare reads its asset and starts a demuxer and a codec, started all at once they
+ * compete for I/O and the tracked target waits behind the others. Queued targets are started
+ * by priority: tracked right now, then tracked within RECENT_MILLIS, then the rest, in the
+ * order they were submitted. A prepare ends when {@link #onPrepared(int)} is called (ready or
+ * failed) or, if the player never reports back, after PREPARE_TIMEOUT_MILLIS.
+ *
+ * Not thread safe, meant for the GL thread.
+ */
+public class PrepareScheduler {
+
+    static final int PRIORITY_TRACKED = 0;
+    static final int PRIORITY_RECENT = 1;
+    static final int PRIORITY_OTHER = 2;
+
+    // Tracked within this time counts as tracked right now, frames are not millisecond exact
+    static final long TRACKED_MILLIS = 100;
+    static final long RECENT_MILLIS = 10000;
+    static final long PREPARE_TIMEOUT_MILLIS = 10000;
+
+    public interface Preparer {
+        // Starts loading the video of a target, its player calls back once prepared
+        void prepare(int target);
+    }
+
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int PREPARING = 2;
+
+    private final int mMaxConcurrent;
+    private final Clock mClock;
+    private final Preparer mPreparer;
+
+    private final int[] mState;
+    private final long[] mLastTracked;
+    // Submit time of a queued target, start time of a preparing one
+    private final long[] mSince;
+    private final long[] mSequence;
+    private long mNextSequence = 0;
+    private int mPreparingCount = 0;
+
+    private int mPrepares = 0;
+    private int mTimeouts = 0;
+    private long mTotalWaitMillis = 0;
+    private long mMaxWaitMillis = 0;
+    private int mCompleted = 0;
+    private long mTotalPrepareMillis = 0;
+    private long mMaxPrepareMillis = 0;
+
+    public PrepareScheduler(int numTargets, int maxConcurrent, Clock clock, Preparer preparer) {
+        mMaxConcurrent = maxConcurrent;
+        mClock = clock;
+        mPreparer = preparer;
+
+        mState = new int[numTargets];
+        mLastTracked = new long[numTargets];
+        mSince = new long[numTargets];
+        mSequence = new long[numTargets];
+        for (int i = 0; i < numTargets; i++) {
+            mLastTracked[i] = -1;
+        }
+    }
+
+    // Called for every tracked target each frame, before submitting it
+    public void onTracked(int target) {
+        mLastTracked[target] = mClock.uptimeMillis();
+    }
+
+    // Queues the prepare of a target, it starts right away if a slot is free
+    public void submit(int target) {
+        if (mState[target] != IDLE)
+            return;
+        mState[target] = QUEUED;
+        mSince[target] = mClock.uptimeMillis();
+        mSequence[target] = mNextSequence++;
+        dispatch();
+    }
+
+    // The player of a target is prepared, or failed to
+    public void onPrepared(int target) {
+        if (mState[target] != PREPARING)
+            return;
+        long duration = mClock.uptimeMillis() - mSince[target];
+        mCompleted++;
+        mTotalPrepareMillis += duration;
+        if (duration > mMaxPrepareMillis)
+            mMaxPrepareMillis = duration;
+        finish(target);
+        dispatch();
+    }
+
+    // The video of a target was unloaded, drops it from the queue or frees its slot
+    public void cancel(int target) {
+        if (mState[target] == IDLE)
+            return;
+        finish(target);
+        dispatch();
+    }
+
+    // Called each frame, frees the slots of prepares that never reported back
+    public void update() {
+        long now = mClock.uptimeMillis();
+        for (int i = 0; i < mState.length; i++) {
+            if (mState[i] == PREPARING && now - mSince[i] > PREPARE_TIMEOUT_MILLIS) {
+                mTimeouts++;
+                finish(i);
+            }
+        }
+        dispatch();
+    }
+
+    public boolean isQueued(int target) {
+        return mState[target] == QUEUED;
+    }
+
+    public boolean isPreparing(int target) {
+        return mState[target] == PREPARING;
+    }
+
+    public int getPreparingCount() {
+        return mPreparingCount;
+    }
+
+    public int getPrepareCount() {
+        return mPrepares;
+    }
+
+    public int getTimeoutCount() {
+        return mTimeouts;
+    }
+
+    public long getAverageWaitMillis() {
+        return mPrepares == 0 ? 0 : mTotalWaitMillis / mPrepares;
+    }
+
+    public long getMaxWaitMillis() {
+        return mMaxWaitMillis;
+    }
+
+    public long getAveragePrepareMillis() {
+        return mCompleted == 0 ? 0 : mTotalPrepareMillis / mCompleted;
+    }
+
+    public long getMaxPrepareMillis() {
+        return mMaxPrepareMillis;
+    }
+
+    int priority(int target, long now) {
+        if (mLastTracked[target] < 0)
+            return PRIORITY_OTHER;
+        long since = now - mLastTracked[target];
+        if (since <= TRACKED_MILLIS)
+            return PRIORITY_TRACKED;
+        return since <= RECENT_MILLIS ? PRIORITY_RECENT : PRIORITY_OTHER;
+    }
+
+    private void finish(int target) {
+        if (mState[target] == PREPARING)
+            mPreparingCount--;
+        mState[target] = IDLE;
+    }
+
+    private void dispatch() {
+        long now = mClock.uptimeMillis();
+        while (mPreparingCount < mMaxConcurrent) {
+            int next = mostUrgent(now);
+            if (next < 0)
+                return;
+
+            long wait = now - mSince[next];
+            mPrepares++;
+            mTotalWaitMillis += wait;
+            if (wait > mMaxWaitMillis)
+                mMaxWaitMillis = wait;
+
+            mState[next] = PREPARING;
+            mSince[next] = now;
+            mPreparingCount++;
+            mPreparer.prepare(next);
+        }
+    }
+
+    private int mostUrgent(long now) {
+        int best = -1;
+        int bestPriority = 0;
+        for (int i = 0; i < mState.length; i++) {
+            if (mState[i] != QUEUED)
+                continue;
+            int priority = priority(i, now);
+            if (best < 0 || priority < bestPriority
+                    || (priority == bestPriority && mSequence[i] < mSequence[best])) {
+                best = i;
+                bestPriority = priority;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,111 @@
+package com.esp.videoar;
+
+import android.opengl.GLES20;
+
+import com.esp.videoar.SampleApplication.utils.GLBackend;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The unit quad shared by the keyframe, video and icon draws of {@link VideoRenderer}.
+ *
+ * The static geometry is uploaded once into a vertex and an index buffer object and the draws
+ * only reference offsets into them. The video draws use the same texture coordinates, the
+ * SurfaceTexture transform is applied in the vertex shader. Buffer objects do not survive the
+ * loss of the EGL context, so {@link #upload(GLBackend)} has to run again from onSurfaceCreated().
+ */
+class QuadGeometry {
+
+    static final int NUM_QUAD_VERTEX = 4;
+    static final int NUM_QUAD_INDEX = 6;
+
+    private static final float[] VERTICES = {-1.0f, -1.0f, 0.0f, 1.0f, -1.0f, 0.0f,
+            1.0f, 1.0f, 0.0f, -1.0f, 1.0f, 0.0f};
+
+    private static final float[] NORMALS = {0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1};
+
+    private static final float[] TEX_COORDS = {0.0f, 0.0f, 1.0f, 0.0f, 1.0f, 1.0f,
+            0.0f, 1.0f};
+
+    private static final short[] INDICES = {0, 1, 2, 2, 3, 0};
+
+    // Byte offsets of the attributes inside the vertex buffer object
+    private static final int VERTICES_OFFSET = 0;
+    private static final int NORMALS_OFFSET = VERTICES_OFFSET + 4 * VERTICES.length;
+    private static final int TEX_COORDS_OFFSET = NORMALS_OFFSET + 4 * NORMALS.length;
+    private static final int VERTEX_BUFFER_SIZE = TEX_COORDS_OFFSET + 4 * TEX_COORDS.length;
+
+    private final int[] mVertexBuffer = new int[1];
+    private final int[] mIndexBuffer = new int[1];
+
+    // Creates the buffer objects in the current context, must be called on the GL thread
+    void upload(GLBackend gl) {
+        ByteBuffer vertexData = newBuffer(VERTEX_BUFFER_SIZE);
+        for (float f : VERTICES)
+            vertexData.putFloat(f);
+        for (float f : NORMALS)
+            vertexData.putFloat(f);
+        for (float f : TEX_COORDS)
+            vertexData.putFloat(f);
+        vertexData.rewind();
+
+        ByteBuffer indexData = newBuffer(2 * INDICES.length);
+        for (short s : INDICES)
+            indexData.putShort(s);
+        indexData.rewind();
+
+        gl.glGenBuffers(1, mVertexBuffer, 0);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBuffer[0]);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, VERTEX_BUFFER_SIZE, vertexData,
+                GLES20.GL_STATIC_DRAW);
+
+        gl.glGenBuffers(1, mIndexBuffer, 0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer[0]);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexData.capacity(), indexData,
+                GLES20.GL_STATIC_DRAW);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    // Points the attributes at the quad
+    void bind(GLBackend gl, int vertexHandle, int normalHandle, int texCoordHandle) {
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBuffer[0]);
+        attribute(gl, vertexHandle, 3, VERTICES_OFFSET);
+        attribute(gl, normalHandle, 3, NORMALS_OFFSET);
+        attribute(gl, texCoordHandle, 2, TEX_COORDS_OFFSET);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer[0]);
+    }
+
+    void draw(GLBackend gl) {
+        gl.glDrawElements(GLES20.GL_TRIANGLES, NUM_QUAD_INDEX, GLES20.GL_UNSIGNED_SHORT, 0);
+    }
+
+    // Disables the attributes and unbinds the buffers so that client side
+    // arrays (e.g. the video background mesh) keep working afterwards
+    void unbind(GLBackend gl, int vertexHandle, int normalHandle, int texCoordHandle) {
+        disable(gl, vertexHandle);
+        disable(gl, normalHandle);
+        disable(gl, texCoordHandle);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    // Shaders may optimize unused attributes away, their location is then -1
+    private static void attribute(GLBackend gl, int handle, int size, int offset) {
+        if (handle < 0)
+            return;
+        gl.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false, 0, offset);
+        gl.glEnableVertexAttribArray(handle);
+    }
+
+    private static void disable(GLBackend gl, int handle) {
+        if (handle >= 0)
+            gl.glDisableVertexAttribArray(handle);
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,42 @@
+package com.esp.videoar;
+
+import android.opengl.GLES20;
+
+import com.esp.videoar.SampleApplication.utils.SampleUtils;
+
+/**
+ * A shader program of the quads drawn by {@link TargetDrawer} with the locations of its
+ * attributes and uniforms. A location the program does not use is -1, GL ignores uniforms set
+ * there.
+ */
+class QuadProgram {
+
+    int program = 0;
+    int vertexHandle = -1;
+    int normalHandle = -1;
+    int texCoordHandle = -1;
+    int mvpMatrixHandle = -1;
+    // The texture of the keyframes and icons, or the external video texture
+    int samplerHandle = -1;
+    // Keyframes and icons only: the part of the texture to draw, see Texture.mRegion
+    int texCoordRegionHandle = -1;
+    // Split alpha only: the texture holding the alpha
+    int alphaSamplerHandle = -1;
+    // Video only: the SurfaceTexture transform
+    int texCoordMatrixHandle = -1;
+
+    // Compiles the program in the current context, must be called on the GL thread
+    static QuadProgram create(String vertexShader, String fragmentShader, String samplerName) {
+        QuadProgram p = new QuadProgram();
+        p.program = SampleUtils.createProgramFromShaderSrc(vertexShader, fragmentShader);
+        p.vertexHandle = GLES20.glGetAttribLocation(p.program, "vertexPosition");
+        p.normalHandle = GLES20.glGetAttribLocation(p.program, "vertexNormal");
+        p.texCoordHandle = GLES20.glGetAttribLocation(p.program, "vertexTexCoord");
+        p.mvpMatrixHandle = GLES20.glGetUniformLocation(p.program, "modelViewProjectionMatrix");
+        p.samplerHandle = GLES20.glGetUniformLocation(p.program, samplerName);
+        p.texCoordRegionHandle = GLES20.glGetUniformLocation(p.program, "texCoordRegion");
+        p.alphaSamplerHandle = GLES20.glGetUniformLocation(p.program, "alphaSampler2D");
+        p.texCoordMatrixHandle = GLES20.glGetUniformLocation(p.program, "texCoordMatrix");
+        return p;
+    }
+}
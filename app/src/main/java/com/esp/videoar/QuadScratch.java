@@ -0,0 +1,115 @@
+package com.esp.videoar;
+
+/**
+ * Scratch state for the per-target quad draws in {@link VideoRenderer#renderFrame()}.
+ *
+ * Every matrix is allocated once, up front, so that a steady
+ * state frame does not allocate on the Java heap. The matrix helpers
+ * follow the column-major layout and semantics of android.opengl.Matrix.
+ */
+class QuadScratch {
+
+    private static final int MATRIX_SIZE = 16;
+
+    // The offset of the icon from the target plane, relative to the target height
+    private static final float BUTTON_DEPTH_OFFSET = 10.98f;
+
+    private final float[] mProjection = new float[MATRIX_SIZE];
+    private final float[] mModelView = new float[MATRIX_SIZE];
+    private final float[][] mPose;
+    private final float[][] mKeyframeMVP;
+    private final float[][] mVideoMVP;
+    private final float[][] mButtonMVP;
+
+    QuadScratch(int numTargets) {
+        mPose = new float[numTargets][MATRIX_SIZE];
+        mKeyframeMVP = new float[numTargets][MATRIX_SIZE];
+        mVideoMVP = new float[numTargets][MATRIX_SIZE];
+        mButtonMVP = new float[numTargets][MATRIX_SIZE];
+    }
+
+    // Copies the projection matrix used by all the draws of this frame
+    void setProjection(float[] projection) {
+        System.arraycopy(projection, 0, mProjection, 0, MATRIX_SIZE);
+    }
+
+    // Copies the (already converted) GL model view matrix of a trackable
+    void setPose(int target, float[] modelView) {
+        System.arraycopy(modelView, 0, mPose[target], 0, MATRIX_SIZE);
+    }
+
+    // Converts the 3x4 row-major pose of a trackable (Matrix34F.getData()) into
+    // its GL model view matrix, as Tool.convertPose2GLMatrix() does, but without
+    // allocating a Matrix44F
+    void setPose34(int target, float[] pose) {
+        float[] modelView = mPose[target];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 4; col++) {
+                modelView[col * 4 + row] = pose[row * 4 + col];
+            }
+        }
+        modelView[3] = 0.0f;
+        modelView[7] = 0.0f;
+        modelView[11] = 0.0f;
+        modelView[15] = 1.0f;
+    }
+
+    float[] getPose(int target) {
+        return mPose[target];
+    }
+
+    // The keyframe quad is scaled to the target width and the keyframe aspect ratio
+    float[] keyframeMVP(int target, float halfWidth, float aspectRatio) {
+        return scaledMVP(mKeyframeMVP[target], target, halfWidth, aspectRatio);
+    }
+
+    // The video quad is scaled to the target width and the video aspect ratio
+    float[] videoMVP(int target, float halfWidth, float aspectRatio) {
+        return scaledMVP(mVideoMVP[target], target, halfWidth, aspectRatio);
+    }
+
+    // The icon is lifted slightly off the target and scaled to half its height
+    float[] buttonMVP(int target, float halfHeight) {
+        System.arraycopy(mPose[target], 0, mModelView, 0, MATRIX_SIZE);
+        translate(mModelView, 0.0f, 0.0f, halfHeight / BUTTON_DEPTH_OFFSET);
+        float scale = halfHeight / 2.0f;
+        scale(mModelView, scale, scale, scale);
+        multiply(mButtonMVP[target], mProjection, mModelView);
+        return mButtonMVP[target];
+    }
+
+    private float[] scaledMVP(float[] result, int target, float halfWidth, float aspectRatio) {
+        System.arraycopy(mPose[target], 0, mModelView, 0, MATRIX_SIZE);
+        scale(mModelView, halfWidth, halfWidth * aspectRatio, halfWidth);
+        multiply(result, mProjection, mModelView);
+        return result;
+    }
+
+    // m = m * S(x, y, z)
+    static void scale(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[i] *= x;
+            m[4 + i] *= y;
+            m[8 + i] *= z;
+        }
+    }
+
+    // m = m * T(x, y, z)
+    static void translate(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+        }
+    }
+
+    // result = lhs * rhs, result must not alias any of the operands
+    static void multiply(float[] result, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                result[col * 4 + row] = lhs[row] * rhs[col * 4]
+                        + lhs[4 + row] * rhs[col * 4 + 1]
+                        + lhs[8 + row] * rhs[col * 4 + 2]
+                        + lhs[12 + row] * rhs[col * 4 + 3];
+            }
+        }
+    }
+}
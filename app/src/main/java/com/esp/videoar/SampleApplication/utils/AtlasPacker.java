@@ -0,0 +1,191 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+
+// Packs rectangles into one as small as possible, for texture atlases.
+// Skyline bottom-left packing with the tallest rectangles first, tried for
+// every atlas width from the widest rectangle up; the smallest area wins,
+// then the squarest. Pure Java, no GL.
+public final class AtlasPacker
+{
+    public static final class Result
+    {
+        public final int mWidth;
+        public final int mHeight;
+        // The bottom left corner of every rectangle, inside its padding
+        public final int[] mX;
+        public final int[] mY;
+        private final long mUsedArea;
+
+
+        Result(int width, int height, int[] x, int[] y, long usedArea)
+        {
+            mWidth = width;
+            mHeight = height;
+            mX = x;
+            mY = y;
+            mUsedArea = usedArea;
+        }
+
+
+        // The share of the atlas covered by the rectangles, padding excluded
+        public float getEfficiency()
+        {
+            return (float) mUsedArea / ((long) mWidth * mHeight);
+        }
+    }
+
+
+    private AtlasPacker()
+    {
+    }
+
+
+    // Places the rectangles with padding pixels on every side of each, null
+    // if they do not fit into maxSize x maxSize
+    public static Result pack(int[] widths, int[] heights, int padding,
+        int maxSize)
+    {
+        final int n = widths.length;
+        final int[] paddedWidths = new int[n];
+        final int[] paddedHeights = new int[n];
+        int minWidth = 0;
+        long sumWidths = 0;
+        long usedArea = 0;
+        for (int i = 0; i < n; i++)
+        {
+            paddedWidths[i] = widths[i] + 2 * padding;
+            paddedHeights[i] = heights[i] + 2 * padding;
+            minWidth = Math.max(minWidth, paddedWidths[i]);
+            sumWidths += paddedWidths[i];
+            usedArea += (long) widths[i] * heights[i];
+        }
+        if (n == 0 || minWidth > maxSize)
+            return null;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                if (paddedHeights[a] != paddedHeights[b])
+                    return paddedHeights[b] - paddedHeights[a];
+                return paddedWidths[b] - paddedWidths[a];
+            }
+        });
+
+        Result best = null;
+        long bestArea = Long.MAX_VALUE;
+        int maxWidth = (int) Math.min(maxSize, sumWidths);
+        int[] x = new int[n];
+        int[] y = new int[n];
+        for (int width = minWidth; width <= maxWidth; width++)
+        {
+            int height = skyline(width, maxSize, order, paddedWidths,
+                paddedHeights, x, y);
+            if (height < 0)
+                continue;
+            long area = (long) width * height;
+            if (area < bestArea || (area == bestArea
+                && Math.max(width, height) < Math.max(best.mWidth, best.mHeight)))
+            {
+                int[] bestX = new int[n];
+                int[] bestY = new int[n];
+                for (int i = 0; i < n; i++)
+                {
+                    bestX[i] = x[i] + padding;
+                    bestY[i] = y[i] + padding;
+                }
+                best = new Result(width, height, bestX, bestY, usedArea);
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+
+    // Places the padded rectangles in the given order at the lowest spot of
+    // the skyline, leftmost first. Returns the height used, -1 above maxHeight.
+    private static int skyline(int width, int maxHeight, Integer[] order,
+        int[] widths, int[] heights, int[] x, int[] y)
+    {
+        // Segments of the skyline left to right: x, y, width
+        List<int[]> skyline = new ArrayList<int[]>();
+        skyline.add(new int[]{0, 0, width});
+        int height = 0;
+
+        for (int r : order)
+        {
+            int bestIndex = -1;
+            int bestTop = Integer.MAX_VALUE;
+            int bestY = 0;
+            for (int i = 0; i < skyline.size(); i++)
+            {
+                int left = skyline.get(i)[0];
+                if (left + widths[r] > width)
+                    break;
+                // The highest segment under the rectangle
+                int top = 0;
+                int covered = 0;
+                for (int j = i; covered < widths[r]; j++)
+                {
+                    int[] segment = skyline.get(j);
+                    top = Math.max(top, segment[1]);
+                    covered = segment[0] + segment[2] - left;
+                }
+                if (top + heights[r] < bestTop)
+                {
+                    bestTop = top + heights[r];
+                    bestIndex = i;
+                    bestY = top;
+                }
+            }
+            if (bestIndex < 0 || bestTop > maxHeight)
+                return -1;
+
+            int left = skyline.get(bestIndex)[0];
+            int right = left + widths[r];
+            x[r] = left;
+            y[r] = bestY;
+            height = Math.max(height, bestTop);
+
+            // Cut the segments under the rectangle and put it in their place
+            int i = bestIndex;
+            while (i < skyline.size() && skyline.get(i)[0] < right)
+            {
+                int[] segment = skyline.get(i);
+                int segmentRight = segment[0] + segment[2];
+                if (segmentRight <= right)
+                {
+                    skyline.remove(i);
+                } else
+                {
+                    segment[2] = segmentRight - right;
+                    segment[0] = right;
+                    break;
+                }
+            }
+            skyline.add(bestIndex, new int[]{left, bestTop, widths[r]});
+
+            // Merge neighbours at the same height
+            for (int j = skyline.size() - 1; j > 0; j--)
+            {
+                int[] previous = skyline.get(j - 1);
+                int[] segment = skyline.get(j);
+                if (previous[1] == segment[1])
+                {
+                    previous[2] += segment[2];
+                    skyline.remove(j);
+                }
+            }
+        }
+        return height;
+    }
+}
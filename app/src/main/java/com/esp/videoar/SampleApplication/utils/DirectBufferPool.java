@@ -0,0 +1,88 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+// Keeps released direct buffers for the next decode. Direct buffers are slow
+// to allocate and only freed by the garbage collector, so textures decoded
+// one after the other reuse them instead. A request is served by the smallest
+// pooled buffer that holds it, but not by one more than twice its size.
+// At most maxPooledBytes are kept. Thread safe.
+public class DirectBufferPool
+{
+    private final long mMaxPooledBytes;
+    // Released buffers by capacity
+    private final TreeMap<Integer, ArrayDeque<ByteBuffer>> mBuffers =
+        new TreeMap<Integer, ArrayDeque<ByteBuffer>>();
+    private long mPooledBytes = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+
+
+    public DirectBufferPool(long maxPooledBytes)
+    {
+        mMaxPooledBytes = maxPooledBytes;
+    }
+
+
+    // A native order direct buffer with its limit at size, the content is
+    // undefined
+    public synchronized ByteBuffer acquire(int size)
+    {
+        Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry = mBuffers.ceilingEntry(size);
+        if (entry != null && entry.getKey() / 2 <= size)
+        {
+            ByteBuffer buffer = entry.getValue().pop();
+            if (entry.getValue().isEmpty())
+                mBuffers.remove(entry.getKey());
+            mPooledBytes -= buffer.capacity();
+            mHits++;
+            buffer.clear();
+            buffer.limit(size);
+            return buffer;
+        }
+
+        mMisses++;
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+
+    // The buffer must not be used afterwards
+    public synchronized void release(ByteBuffer buffer)
+    {
+        if (buffer == null || !buffer.isDirect()
+            || mPooledBytes + buffer.capacity() > mMaxPooledBytes)
+            return;
+
+        ArrayDeque<ByteBuffer> buffers = mBuffers.get(buffer.capacity());
+        if (buffers == null)
+        {
+            buffers = new ArrayDeque<ByteBuffer>();
+            mBuffers.put(buffer.capacity(), buffers);
+        }
+        buffers.push(buffer);
+        mPooledBytes += buffer.capacity();
+    }
+
+
+    public synchronized long getPooledBytes()
+    {
+        return mPooledBytes;
+    }
+
+
+    public synchronized int getHitCount()
+    {
+        return mHits;
+    }
+
+
+    public synchronized int getMissCount()
+    {
+        return mMisses;
+    }
+}
@@ -0,0 +1,217 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+// Reads ETC1 and ETC2 compressed textures from PKM and KTX 1.1 files, only the
+// first mipmap level. The images are stored bottom row first like the ones
+// given to glTexImage2D, the compressTextures Gradle task flips them before
+// encoding. The pixel data comes from Texture.BUFFER_POOL.
+public final class EtcTexture
+{
+    // The GL internal formats, ETC1 is supported by every OpenGL ES 2.0
+    // device, ETC2 by OpenGL ES 3.0 ones
+    public static final int ETC1_RGB8 = 0x8D64;
+    public static final int ETC2_RGB8 = 0x9274;
+    public static final int ETC2_RGB8_PUNCHTHROUGH_ALPHA1 = 0x9276;
+    public static final int ETC2_RGBA8_EAC = 0x9278;
+
+    private static final int PKM_HEADER_SIZE = 16;
+    private static final int KTX_HEADER_SIZE = 64;
+    private static final byte[] KTX_IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X',
+        ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+    private static final int KTX_ENDIANNESS = 0x04030201;
+
+    // PKM data types, the ones of etcpack for version 2.0
+    private static final int PKM_ETC1_RGB = 0;
+    private static final int PKM_ETC2_RGB = 1;
+    private static final int PKM_ETC2_RGBA = 3;
+    private static final int PKM_ETC2_RGBA1 = 4;
+
+
+    private EtcTexture()
+    {
+    }
+
+
+    // The texture in a PKM or KTX file, told apart by their magic
+    public static Texture parse(ByteBuffer file) throws IOException
+    {
+        if (isPkm(file))
+            return parsePkm(file);
+        if (isKtx(file))
+            return parseKtx(file);
+        throw new IOException("Neither a PKM nor a KTX file");
+    }
+
+
+    public static Texture read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        return parse(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+
+    static Texture parsePkm(ByteBuffer file) throws IOException
+    {
+        ByteBuffer header = file.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (header.remaining() < PKM_HEADER_SIZE || !isPkm(header))
+            throw new IOException("Not a PKM file");
+
+        int version = header.get(header.position() + 4);
+        int type = header.getShort(header.position() + 6) & 0xffff;
+        int format;
+        if (version == '1' && type == PKM_ETC1_RGB)
+            format = ETC1_RGB8;
+        else if (version == '2' && type == PKM_ETC1_RGB)
+            format = ETC1_RGB8;
+        else if (version == '2' && type == PKM_ETC2_RGB)
+            format = ETC2_RGB8;
+        else if (version == '2' && type == PKM_ETC2_RGBA)
+            format = ETC2_RGBA8_EAC;
+        else if (version == '2' && type == PKM_ETC2_RGBA1)
+            format = ETC2_RGB8_PUNCHTHROUGH_ALPHA1;
+        else
+            throw new IOException("Unsupported PKM version " + (char) version
+                + " type " + type);
+
+        // The extended size is the original one rounded up to whole blocks
+        int width = header.getShort(header.position() + 12) & 0xffff;
+        int height = header.getShort(header.position() + 14) & 0xffff;
+        header.position(header.position() + PKM_HEADER_SIZE);
+        return texture(format, width, height, header);
+    }
+
+
+    static Texture parseKtx(ByteBuffer file) throws IOException
+    {
+        ByteBuffer header = file.duplicate();
+        if (header.remaining() < KTX_HEADER_SIZE || !isKtx(header))
+            throw new IOException("Not a KTX file");
+
+        int start = header.position();
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(start + 12) != KTX_ENDIANNESS)
+            header.order(ByteOrder.BIG_ENDIAN);
+        if (header.getInt(start + 12) != KTX_ENDIANNESS)
+            throw new IOException("Bad KTX endianness");
+
+        int glType = header.getInt(start + 16);
+        int format = header.getInt(start + 28);
+        int width = header.getInt(start + 36);
+        int height = header.getInt(start + 40);
+        int depth = header.getInt(start + 44);
+        int arrayElements = header.getInt(start + 48);
+        int faces = header.getInt(start + 52);
+        int keyValueBytes = header.getInt(start + 60);
+        if (glType != 0 || blockBytes(format) == 0)
+            throw new IOException("Not an ETC texture, format 0x"
+                + Integer.toHexString(format));
+        if (depth != 0 || arrayElements != 0 || faces != 1 || height == 0)
+            throw new IOException("Not a plain 2D texture");
+        if (keyValueBytes < 0
+            || keyValueBytes > header.limit() - start - KTX_HEADER_SIZE - 4)
+            throw new IOException("Truncated KTX file");
+
+        header.position(start + KTX_HEADER_SIZE + keyValueBytes);
+        int imageSize = header.getInt();
+        if (imageSize != dataSize(format, width, height))
+            throw new IOException("KTX image size " + imageSize
+                + " does not match " + width + "x" + height);
+        return texture(format, width, height, header);
+    }
+
+
+    // The bytes of an image of the format, whole 4x4 blocks; 0 for formats
+    // that are not ETC
+    public static int dataSize(int format, int width, int height)
+    {
+        return ((width + 3) / 4) * ((height + 3) / 4) * blockBytes(format);
+    }
+
+
+    public static boolean hasAlpha(int format)
+    {
+        return format == ETC2_RGBA8_EAC
+            || format == ETC2_RGB8_PUNCHTHROUGH_ALPHA1;
+    }
+
+
+    public static boolean isEtc2(int format)
+    {
+        return format == ETC2_RGB8 || format == ETC2_RGBA8_EAC
+            || format == ETC2_RGB8_PUNCHTHROUGH_ALPHA1;
+    }
+
+
+    private static int blockBytes(int format)
+    {
+        switch (format)
+        {
+            case ETC1_RGB8:
+            case ETC2_RGB8:
+            case ETC2_RGB8_PUNCHTHROUGH_ALPHA1:
+                return 8;
+            case ETC2_RGBA8_EAC:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+
+
+    // Copies the image at the position of data into a pooled direct buffer
+    private static Texture texture(int format, int width, int height,
+        ByteBuffer data) throws IOException
+    {
+        if (width <= 0 || height <= 0)
+            throw new IOException("Empty texture");
+        int size = dataSize(format, width, height);
+        if (data.remaining() < size)
+            throw new IOException("Truncated image, " + data.remaining()
+                + " of " + size + " bytes");
+
+        Texture texture = new Texture();
+        texture.mWidth = width;
+        texture.mHeight = height;
+        texture.mChannels = hasAlpha(format) ? 4 : 3;
+        texture.mCompressedFormat = format;
+        texture.mData = Texture.BUFFER_POOL.acquire(size);
+        ByteBuffer image = data.duplicate();
+        image.limit(image.position() + size);
+        texture.mData.put(image);
+        texture.mData.rewind();
+        texture.mSuccess = true;
+        return texture;
+    }
+
+
+    private static boolean isPkm(ByteBuffer file)
+    {
+        int p = file.position();
+        return file.remaining() >= 4 && file.get(p) == 'P'
+            && file.get(p + 1) == 'K' && file.get(p + 2) == 'M'
+            && file.get(p + 3) == ' ';
+    }
+
+
+    private static boolean isKtx(ByteBuffer file)
+    {
+        if (file.remaining() < KTX_IDENTIFIER.length)
+            return false;
+        for (int i = 0; i < KTX_IDENTIFIER.length; i++)
+        {
+            if (file.get(file.position() + i) != KTX_IDENTIFIER[i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,65 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import java.nio.Buffer;
+
+
+// The subset of OpenGL ES 2.0 used by the renderers, as an interface so that
+// the drawing code can run against a recording implementation on the JVM.
+// Method names and arguments mirror android.opengl.GLES20.
+public interface GLBackend
+{
+    void glGenBuffers(int n, int[] buffers, int offset);
+    
+    
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+    
+    
+    void glBindBuffer(int target, int buffer);
+    
+    
+    void glBufferData(int target, int size, Buffer data, int usage);
+    
+    
+    void glVertexAttribPointer(int index, int size, int type,
+        boolean normalized, int stride, int offset);
+    
+    
+    void glEnableVertexAttribArray(int index);
+    
+    
+    void glDisableVertexAttribArray(int index);
+    
+    
+    void glDrawElements(int mode, int count, int type, int offset);
+    
+    
+    void glUseProgram(int program);
+    
+    
+    void glEnable(int cap);
+    
+    
+    void glDisable(int cap);
+    
+    
+    void glBlendFunc(int sfactor, int dfactor);
+    
+    
+    void glDepthFunc(int func);
+    
+    
+    void glActiveTexture(int texture);
+    
+    
+    void glBindTexture(int target, int texture);
+    
+    
+    void glUniform1i(int location, int x);
+    
+    
+    void glUniform4f(int location, float x, float y, float z, float w);
+    
+    
+    void glUniformMatrix4fv(int location, int count, boolean transpose,
+        float[] value, int offset);
+}
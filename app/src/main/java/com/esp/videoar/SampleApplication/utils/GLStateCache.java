@@ -0,0 +1,352 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+
+// Remembers the GL state set through it and drops the calls that would not
+// change it: the program, the active texture unit and the 2D and external
+// textures bound to the first units, the blend, depth test, cull face and
+// scissor test caps, the blend and depth functions, the enabled attribute
+// arrays and the bound buffers. Everything else is passed on as it is.
+// State changed behind its back, by Vuforia or by plain GLES20 calls, is
+// forgotten with invalidate(). Counts the state calls passed on and dropped
+// since resetCounters(). Used from the GL thread only.
+public class GLStateCache implements GLBackend
+{
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+    private static final int[] CAPS = {GLES20.GL_BLEND,
+        GLES20.GL_DEPTH_TEST, GLES20.GL_CULL_FACE, GLES20.GL_SCISSOR_TEST};
+
+    private final GLBackend mGl;
+
+    private int mProgram;
+    private int mActiveTexture;
+    private final int[] mTexture2D = new int[MAX_TEXTURE_UNITS];
+    private final int[] mTextureExternal = new int[MAX_TEXTURE_UNITS];
+    // 1 for enabled, 0 for disabled, indexed like CAPS
+    private final int[] mCaps = new int[CAPS.length];
+    private int mBlendSrc;
+    private int mBlendDst;
+    private int mDepthFunc;
+    private final int[] mAttribArrays = new int[MAX_VERTEX_ATTRIBS];
+    private int mArrayBuffer;
+    private int mElementBuffer;
+
+    private int mIssued = 0;
+    private int mSuppressed = 0;
+
+
+    public GLStateCache(GLBackend gl)
+    {
+        mGl = gl;
+        invalidate();
+    }
+
+
+    // Forgets all the state, the next call for each is passed on
+    public void invalidate()
+    {
+        mProgram = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        Arrays.fill(mTexture2D, UNKNOWN);
+        Arrays.fill(mTextureExternal, UNKNOWN);
+        Arrays.fill(mCaps, UNKNOWN);
+        mBlendSrc = UNKNOWN;
+        mBlendDst = UNKNOWN;
+        mDepthFunc = UNKNOWN;
+        Arrays.fill(mAttribArrays, UNKNOWN);
+        mArrayBuffer = UNKNOWN;
+        mElementBuffer = UNKNOWN;
+    }
+
+
+    // Disables the attribute arrays known to be enabled, e.g. before code
+    // that draws from client memory
+    public void disableVertexAttribArrays()
+    {
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++)
+        {
+            if (mAttribArrays[i] == 1)
+                glDisableVertexAttribArray(i);
+        }
+    }
+
+
+    public void resetCounters()
+    {
+        mIssued = 0;
+        mSuppressed = 0;
+    }
+
+
+    // State calls passed on since resetCounters()
+    public int getIssuedCount()
+    {
+        return mIssued;
+    }
+
+
+    // State calls dropped since resetCounters() as they changed nothing
+    public int getSuppressedCount()
+    {
+        return mSuppressed;
+    }
+
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        if (changes(mProgram, program))
+        {
+            mProgram = program;
+            mGl.glUseProgram(program);
+        }
+    }
+
+
+    @Override
+    public void glEnable(int cap)
+    {
+        setCap(cap, 1);
+    }
+
+
+    @Override
+    public void glDisable(int cap)
+    {
+        setCap(cap, 0);
+    }
+
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor)
+    {
+        if (changes(mBlendSrc == sfactor && mBlendDst == dfactor))
+        {
+            mBlendSrc = sfactor;
+            mBlendDst = dfactor;
+            mGl.glBlendFunc(sfactor, dfactor);
+        }
+    }
+
+
+    @Override
+    public void glDepthFunc(int func)
+    {
+        if (changes(mDepthFunc, func))
+        {
+            mDepthFunc = func;
+            mGl.glDepthFunc(func);
+        }
+    }
+
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        if (changes(mActiveTexture, texture))
+        {
+            mActiveTexture = texture;
+            mGl.glActiveTexture(texture);
+        }
+    }
+
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        int unit = mActiveTexture - GLES20.GL_TEXTURE0;
+        int[] bound = null;
+        if (mActiveTexture != UNKNOWN && unit >= 0 && unit < MAX_TEXTURE_UNITS)
+        {
+            if (target == GLES20.GL_TEXTURE_2D)
+                bound = mTexture2D;
+            else if (target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES)
+                bound = mTextureExternal;
+        }
+
+        if (bound == null)
+        {
+            mIssued++;
+            mGl.glBindTexture(target, texture);
+        } else if (changes(bound[unit], texture))
+        {
+            bound[unit] = texture;
+            mGl.glBindTexture(target, texture);
+        }
+    }
+
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        setAttribArray(index, 1);
+    }
+
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        setAttribArray(index, 0);
+    }
+
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        if (target == GLES20.GL_ARRAY_BUFFER)
+        {
+            if (!changes(mArrayBuffer, buffer))
+                return;
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+        {
+            if (!changes(mElementBuffer, buffer))
+                return;
+            mElementBuffer = buffer;
+        } else
+        {
+            mIssued++;
+        }
+        mGl.glBindBuffer(target, buffer);
+    }
+
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        // Deleting a bound buffer binds 0 in its place
+        for (int i = 0; i < n; i++)
+        {
+            if (buffers[offset + i] == mArrayBuffer)
+                mArrayBuffer = 0;
+            if (buffers[offset + i] == mElementBuffer)
+                mElementBuffer = 0;
+        }
+        mGl.glDeleteBuffers(n, buffers, offset);
+    }
+
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        mGl.glGenBuffers(n, buffers, offset);
+    }
+
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        mGl.glBufferData(target, size, data, usage);
+    }
+
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+        boolean normalized, int stride, int offset)
+    {
+        mGl.glVertexAttribPointer(index, size, type, normalized, stride,
+            offset);
+    }
+
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset)
+    {
+        mGl.glDrawElements(mode, count, type, offset);
+    }
+
+
+    // Uniforms belong to the program, they are passed on as they are
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        mGl.glUniform1i(location, x);
+    }
+
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        mGl.glUniform4f(location, x, y, z, w);
+    }
+
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose,
+        float[] value, int offset)
+    {
+        mGl.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+
+    private void setCap(int cap, int enabled)
+    {
+        for (int i = 0; i < CAPS.length; i++)
+        {
+            if (CAPS[i] == cap)
+            {
+                if (changes(mCaps[i], enabled))
+                {
+                    mCaps[i] = enabled;
+                    forwardCap(cap, enabled);
+                }
+                return;
+            }
+        }
+        mIssued++;
+        forwardCap(cap, enabled);
+    }
+
+
+    private void forwardCap(int cap, int enabled)
+    {
+        if (enabled == 1)
+            mGl.glEnable(cap);
+        else
+            mGl.glDisable(cap);
+    }
+
+
+    private void setAttribArray(int index, int enabled)
+    {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS)
+        {
+            if (!changes(mAttribArrays[index], enabled))
+                return;
+            mAttribArrays[index] = enabled;
+        } else
+        {
+            mIssued++;
+        }
+        if (enabled == 1)
+            mGl.glEnableVertexAttribArray(index);
+        else
+            mGl.glDisableVertexAttribArray(index);
+    }
+
+
+    // Counts the call, returns whether it is to be passed on
+    private boolean changes(int current, int value)
+    {
+        return changes(current == value);
+    }
+
+
+    private boolean changes(boolean same)
+    {
+        if (same)
+        {
+            mSuppressed++;
+            return false;
+        }
+        mIssued++;
+        return true;
+    }
+}
@@ -26,18 +26,217 @@ import java.nio.ByteOrder;
 public class Texture
 {
     private static final String LOGTAG = "Vuforia_Texture";
+    // Tried in this order by loadBestTextureFromApk()
+    private static final String[] COMPRESSED_EXTENSIONS = {".ktx", ".pkm"};
     
     public int mWidth;          // The width of the texture.
     public int mHeight;         // The height of the texture.
     public int mChannels;       // The number of channels.
-    public ByteBuffer mData;    // The pixel data.
+    public ByteBuffer mData;    // The pixel data, null once released.
     public int[] mTextureID = new int[1];
     public boolean mSuccess = false;
+    public String mName;        // Where it was loaded from, for the logs.
+    public int mCompressedFormat = 0; // The GL format of mData, 0 for RGBA bytes.
+
+    // The alpha of a compressed texture whose format has none, in the red
+    // channel of a second texture of the same size; null for the others.
+    // Its pixels are released, reloaded and accounted with this texture's.
+    public Texture mAlpha;
+
+    // Where the texture is in mTextureID: u and v of its corner, then its
+    // width and height. All of it, unless it is a region of mAtlas, which
+    // holds its pixels and GL texture. See TextureAtlas.
+    public float[] mRegion = {0, 0, 1, 1};
+    public Texture mAtlas;
+
+    // Loads the pixels again after releaseData(), e.g. for a new GL context.
+    // Null if they cannot be loaded again, they are then never released.
+    public Source mSource;
+
+    // Pixel bytes in the current GL context, 0 when not uploaded
+    private long mGpuBytes = 0;
+
+
+    public interface Source
+    {
+        // A texture with the same pixels, null if it cannot be loaded
+        Texture load();
+    }
+    
+    // The pixel data of the textures decoded from bitmaps comes from here,
+    // see releaseData()
+    public static final DirectBufferPool BUFFER_POOL =
+        new DirectBufferPool(16 * 1024 * 1024);
+    
+    
+    // Stands in for a texture that is still loading: one grey, half
+    // transparent pixel. mSuccess stays false, keyframes keep the shape of
+    // their target while they show it.
+    public static Texture createPlaceholder()
+    {
+        Texture texture = new Texture();
+        texture.mWidth = 1;
+        texture.mHeight = 1;
+        texture.mChannels = 4;
+        texture.mData = ByteBuffer.allocateDirect(4).order(
+            ByteOrder.nativeOrder());
+        texture.mData.put(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80,
+            (byte) 0x80});
+        texture.mData.rewind();
+        texture.mName = "placeholder";
+        return texture;
+    }
     
     
     /* Factory function to load a texture from the APK. */
     public static Texture loadTextureFromApk(String fileName,
         AssetManager assets)
+    {
+        return loadTextureFromApk(fileName, assets, 0);
+    }
+    
+    
+    // Images larger than maxEdge in either direction are downsampled by a
+    // power of two while decoding, 0 to keep the full size
+    public static Texture loadTextureFromApk(final String fileName,
+        final AssetManager assets, final int maxEdge)
+    {
+        Texture texture = decodeFromApk(fileName, assets, maxEdge);
+        if (texture != null)
+        {
+            texture.mName = fileName;
+            texture.mSource = new Source()
+            {
+                @Override
+                public Texture load()
+                {
+                    return decodeFromApk(fileName, assets, maxEdge);
+                }
+            };
+        }
+        return texture;
+    }
+
+
+    // The compressed variant of the image, <name>.ktx or <name>.pkm next to
+    // <name>.png, with its alpha in <name>.alpha.ktx or <name>.alpha.pkm if
+    // there is one; the image itself when there is no variant in a format
+    // the device supports. ETC2 needs OpenGL ES 3.0, see EtcTexture.
+    public static Texture loadBestTextureFromApk(String fileName,
+        final AssetManager assets, boolean etc2Supported)
+    {
+        String base = baseName(fileName);
+        for (String extension : COMPRESSED_EXTENSIONS)
+        {
+            final String path = base + extension;
+            final String alphaPath = base + ".alpha" + extension;
+            Texture texture = decodeCompressedFromApk(path, alphaPath, assets);
+            if (texture == null)
+                continue;
+            if (EtcTexture.isEtc2(texture.mCompressedFormat) && !etc2Supported)
+            {
+                texture.releaseData();
+                continue;
+            }
+            texture.mName = path;
+            texture.mSource = new Source()
+            {
+                @Override
+                public Texture load()
+                {
+                    return decodeCompressedFromApk(path, alphaPath, assets);
+                }
+            };
+            return texture;
+        }
+        return loadTextureFromApk(fileName, assets);
+    }
+
+
+    // Whether a compressed variant of the image is bundled, which
+    // loadBestTextureFromApk() would try first
+    public static boolean hasCompressedVariant(String fileName,
+        AssetManager assets)
+    {
+        String base = baseName(fileName);
+        for (String extension : COMPRESSED_EXTENSIONS)
+        {
+            try
+            {
+                assets.open(base + extension).close();
+                return true;
+            } catch (IOException e)
+            {
+                // Not bundled
+            }
+        }
+        return false;
+    }
+
+
+    private static String baseName(String fileName)
+    {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+
+    // Null if there is no such file or it cannot be read
+    private static Texture decodeCompressedFromApk(String path,
+        String alphaPath, AssetManager assets)
+    {
+        Texture texture = readCompressedFromApk(path, assets);
+        if (texture == null || EtcTexture.hasAlpha(texture.mCompressedFormat))
+            return texture;
+
+        texture.mAlpha = readCompressedFromApk(alphaPath, assets);
+        if (texture.mAlpha != null && (texture.mAlpha.mWidth != texture.mWidth
+            || texture.mAlpha.mHeight != texture.mHeight))
+        {
+            Log.e(LOGTAG, "Alpha '" + alphaPath + "' does not match the size of '"
+                + path + "'");
+            texture.releaseData();
+            return null;
+        }
+        return texture;
+    }
+
+
+    private static Texture readCompressedFromApk(String path,
+        AssetManager assets)
+    {
+        InputStream inputStream;
+        try
+        {
+            inputStream = assets.open(path, AssetManager.ACCESS_STREAMING);
+        } catch (IOException e)
+        {
+            // Not bundled
+            return null;
+        }
+        try
+        {
+            return EtcTexture.read(inputStream);
+        } catch (IOException e)
+        {
+            Log.e(LOGTAG, "Failed to read compressed texture '" + path + "'");
+            Log.i(LOGTAG, e.getMessage());
+            return null;
+        } finally
+        {
+            try
+            {
+                inputStream.close();
+            } catch (IOException e)
+            {
+                // Nothing was read from it after this point
+            }
+        }
+    }
+
+
+    private static Texture decodeFromApk(String fileName,
+        AssetManager assets, int maxEdge)
     {
         InputStream inputStream = null;
         try
@@ -46,23 +245,217 @@ public class Texture
             
             BufferedInputStream bufferedStream = new BufferedInputStream(
                 inputStream);
-            Bitmap bitMap = BitmapFactory.decodeStream(bufferedStream);
-            
-            int[] data = new int[bitMap.getWidth() * bitMap.getHeight()];
-            bitMap.getPixels(data, 0, bitMap.getWidth(), 0, 0,
-                bitMap.getWidth(), bitMap.getHeight());
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            if (maxEdge > 0)
+            {
+                // Only the size is read here, the stream is rewound after
+                bufferedStream.mark(Integer.MAX_VALUE);
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeStream(bufferedStream, null, options);
+                bufferedStream.reset();
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = sampleSizeFor(options.outWidth,
+                    options.outHeight, maxEdge);
+            }
+            // As stored, the keyframe shader blends with non premultiplied
+            // alpha
+            options.inPremultiplied = false;
+            options.inScaled = false;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap bitMap = BitmapFactory.decodeStream(bufferedStream, null,
+                options);
+            if (bitMap == null)
+                throw new IOException("Cannot decode " + fileName);
             
-            return loadTextureFromIntBuffer(data, bitMap.getWidth(),
-                bitMap.getHeight());
+            Texture texture = loadTextureFromBitmap(bitMap);
+            bitMap.recycle();
+            return texture;
         } catch (IOException e)
         {
             Log.e(LOGTAG, "Failed to log texture '" + fileName + "' from APK");
             Log.i(LOGTAG, e.getMessage());
             return null;
+        } finally
+        {
+            if (inputStream != null)
+            {
+                try
+                {
+                    inputStream.close();
+                } catch (IOException e)
+                {
+                    // Nothing was read from it after this point
+                }
+            }
+        }
+    }
+    
+    
+    // Copies the pixels of an ARGB_8888 bitmap once, straight into a direct
+    // buffer from BUFFER_POOL, and flips the rows there. An ARGB_8888 bitmap
+    // already holds its pixels as RGBA bytes.
+    public static Texture loadTextureFromBitmap(Bitmap bitmap)
+    {
+        Bitmap argb = bitmap;
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888)
+            argb = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        
+        Texture texture = new Texture();
+        texture.mWidth = argb.getWidth();
+        texture.mHeight = argb.getHeight();
+        texture.mChannels = 4;
+        
+        int rowSize = texture.mWidth * texture.mChannels;
+        texture.mData = BUFFER_POOL.acquire(rowSize * texture.mHeight);
+        argb.copyPixelsToBuffer(texture.mData);
+        texture.mData.rewind();
+        flipRows(texture.mData, rowSize, texture.mHeight);
+        if (argb != bitmap)
+            argb.recycle();
+        
+        texture.mSuccess = true;
+        return texture;
+    }
+    
+    
+    // Gives the pixel data back to BUFFER_POOL once nothing reads it any more,
+    // e.g. after the texture was uploaded and deleted
+    public void releaseData()
+    {
+        BUFFER_POOL.release(mData);
+        mData = null;
+        if (mAlpha != null)
+            mAlpha.releaseData();
+    }
+    
+    
+    // Drops the pixel data if it can be loaded again from mSource, returns
+    // whether it was dropped
+    public boolean releaseDataIfReloadable()
+    {
+        if (mSource == null || mData == null)
+            return false;
+        releaseData();
+        return true;
+    }
+
+
+    // Loads the pixel data from mSource if it was released, returns false if
+    // there is none afterwards
+    public boolean reloadData()
+    {
+        if (mData != null)
+            return true;
+        if (mSource == null)
+            return false;
+        return adoptData(mSource.load());
+    }
+
+
+    // Takes over the pixel data of a texture loaded again from mSource, e.g.
+    // in the background, if it still fits; returns false if it does not,
+    // the caller logs it
+    public boolean adoptData(Texture reloaded)
+    {
+        if (mData != null)
+        {
+            if (reloaded != null)
+                reloaded.releaseData();
+            return true;
+        }
+        if (reloaded == null || reloaded.mWidth != mWidth
+            || reloaded.mHeight != mHeight || reloaded.mChannels != mChannels
+            || reloaded.mCompressedFormat != mCompressedFormat
+            || (reloaded.mAlpha == null) != (mAlpha == null))
+        {
+            if (reloaded != null)
+                reloaded.releaseData();
+            return false;
+        }
+        mData = reloaded.mData;
+        if (mAlpha != null)
+            mAlpha.mData = reloaded.mAlpha.mData;
+        return true;
+    }
+
+
+    // The pixel bytes held in Java memory
+    public long getCpuBytes()
+    {
+        return (mData != null ? mData.capacity() : 0)
+            + (mAlpha != null ? mAlpha.getCpuBytes() : 0);
+    }
+
+
+    // The pixel bytes held by GL, as far as the owner of the context told
+    public long getGpuBytes()
+    {
+        return mGpuBytes + (mAlpha != null ? mAlpha.getGpuBytes() : 0);
+    }
+
+
+    // The pixel bytes once uploaded, compressed ones as they are
+    public long getByteSize()
+    {
+        return imageBytes() + (mAlpha != null ? mAlpha.getByteSize() : 0);
+    }
+
+
+    // Called by the owner of the GL context after uploading or deleting the
+    // texture, or when the context and with it the texture is lost
+    public void setUploaded(boolean uploaded)
+    {
+        mGpuBytes = uploaded ? imageBytes() : 0;
+        if (mAlpha != null)
+            mAlpha.setUploaded(uploaded);
+    }
+
+
+    private long imageBytes()
+    {
+        return mCompressedFormat != 0
+            ? EtcTexture.dataSize(mCompressedFormat, mWidth, mHeight)
+            : (long) mWidth * mHeight * mChannels;
+    }
+
+
+    // The smallest power of two that brings both edges down to maxEdge, with
+    // the edges rounded up as some decoders do
+    static int sampleSizeFor(int width, int height, int maxEdge)
+    {
+        int sampleSize = 1;
+        while ((width + sampleSize - 1) / sampleSize > maxEdge
+            || (height + sampleSize - 1) / sampleSize > maxEdge)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+    
+    
+    // Swaps the rows of the buffer top to bottom in place, GL expects the
+    // bottom row first
+    static void flipRows(ByteBuffer data, int rowSize, int rows)
+    {
+        byte[] top = new byte[rowSize];
+        byte[] bottom = new byte[rowSize];
+        for (int r = 0; r < rows / 2; r++)
+        {
+            int topOffset = r * rowSize;
+            int bottomOffset = (rows - 1 - r) * rowSize;
+            data.position(topOffset);
+            data.get(top);
+            data.position(bottomOffset);
+            data.get(bottom);
+            data.position(topOffset);
+            data.put(bottom);
+            data.position(bottomOffset);
+            data.put(top);
         }
+        data.rewind();
     }
     
     
+    // The former decode path, three copies through an int[] and a byte[];
+    // kept for pixels that only exist as ARGB ints
     public static Texture loadTextureFromIntBuffer(int[] data, int width,
         int height)
     {
@@ -0,0 +1,177 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import android.content.res.AssetManager;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+
+// Packs small RGBA textures into one, so that drawing any of them binds the
+// same GL texture. Every image becomes a region: a Texture with the size of
+// the image that shares the GL texture name of the atlas, with mRegion
+// telling where it is. The edge pixels of every image are repeated into its
+// padding so that linear filtering does not bleed the neighbours in.
+public class TextureAtlas
+{
+    private final Texture mTexture;
+    private final Map<String, Texture> mRegions = new HashMap<String, Texture>();
+
+
+    private TextureAtlas(Texture texture)
+    {
+        mTexture = texture;
+    }
+
+
+    // Decodes the images from the APK and packs them, null if one cannot be
+    // loaded or they do not fit into maxSize. The atlas can load its pixels
+    // again the same way, see Texture.mSource.
+    public static TextureAtlas loadFromApk(final String[] paths,
+        final AssetManager assets, final int padding, final int maxSize)
+    {
+        Texture[] images = new Texture[paths.length];
+        for (int i = 0; i < paths.length; i++)
+        {
+            images[i] = Texture.loadTextureFromApk(paths[i], assets);
+            if (images[i] == null)
+            {
+                releaseAll(images);
+                return null;
+            }
+        }
+        TextureAtlas atlas = build(paths, images, padding, maxSize);
+        releaseAll(images);
+        if (atlas == null)
+            return null;
+
+        atlas.mTexture.mName = "atlas of " + paths.length + " images";
+        atlas.mTexture.mSource = new Texture.Source()
+        {
+            @Override
+            public Texture load()
+            {
+                TextureAtlas again = loadFromApk(paths, assets, padding, maxSize);
+                return again != null ? again.mTexture : null;
+            }
+        };
+        return atlas;
+    }
+
+
+    // Packs RGBA textures stored bottom row first, as decoded by Texture;
+    // null if they do not fit into maxSize. The images are not changed.
+    public static TextureAtlas build(String[] names, Texture[] images,
+        int padding, int maxSize)
+    {
+        int[] widths = new int[images.length];
+        int[] heights = new int[images.length];
+        for (int i = 0; i < images.length; i++)
+        {
+            if (images[i].mCompressedFormat != 0 || images[i].mChannels != 4)
+                throw new IllegalArgumentException("Not an RGBA texture: "
+                    + names[i]);
+            widths[i] = images[i].mWidth;
+            heights[i] = images[i].mHeight;
+        }
+        AtlasPacker.Result layout = AtlasPacker.pack(widths, heights, padding,
+            maxSize);
+        if (layout == null)
+            return null;
+
+        Texture texture = new Texture();
+        texture.mWidth = layout.mWidth;
+        texture.mHeight = layout.mHeight;
+        texture.mChannels = 4;
+        texture.mData = Texture.BUFFER_POOL.acquire(layout.mWidth
+            * layout.mHeight * 4);
+        // Pooled buffers are not cleared
+        byte[] zeros = new byte[layout.mWidth * 4];
+        for (int row = 0; row < layout.mHeight; row++)
+            texture.mData.put(zeros);
+        texture.mSuccess = true;
+
+        TextureAtlas atlas = new TextureAtlas(texture);
+        for (int i = 0; i < images.length; i++)
+        {
+            copyPadded(images[i], texture.mData, layout.mWidth,
+                layout.mX[i], layout.mY[i], padding);
+            atlas.mRegions.put(names[i], region(texture, images[i], names[i],
+                layout.mX[i], layout.mY[i]));
+        }
+        texture.mData.rewind();
+        return atlas;
+    }
+
+
+    public Texture getTexture()
+    {
+        return mTexture;
+    }
+
+
+    // The region of the image with that name, null if it is not in the atlas
+    public Texture getRegion(String name)
+    {
+        return mRegions.get(name);
+    }
+
+
+    private static Texture region(Texture atlas, Texture image, String name,
+        int x, int y)
+    {
+        Texture region = new Texture();
+        region.mWidth = image.mWidth;
+        region.mHeight = image.mHeight;
+        region.mChannels = 4;
+        region.mName = name;
+        region.mAtlas = atlas;
+        // Set once the atlas is uploaded
+        region.mTextureID = atlas.mTextureID;
+        region.mRegion = new float[]{(float) x / atlas.mWidth,
+            (float) y / atlas.mHeight, (float) image.mWidth / atlas.mWidth,
+            (float) image.mHeight / atlas.mHeight};
+        region.mSuccess = true;
+        return region;
+    }
+
+
+    // Copies the image to x, y of the atlas and repeats its edge pixels
+    // padding times around it
+    private static void copyPadded(Texture image, ByteBuffer atlas,
+        int atlasWidth, int x, int y, int padding)
+    {
+        int rowSize = image.mWidth * 4;
+        int paddedRowSize = rowSize + 2 * padding * 4;
+        byte[] row = new byte[rowSize];
+        byte[] paddedRow = new byte[paddedRowSize];
+        ByteBuffer pixels = image.mData.duplicate();
+
+        for (int r = -padding; r < image.mHeight + padding; r++)
+        {
+            int sourceRow = Math.min(Math.max(r, 0), image.mHeight - 1);
+            pixels.position(sourceRow * rowSize);
+            pixels.get(row);
+            for (int p = 0; p < padding; p++)
+            {
+                System.arraycopy(row, 0, paddedRow, p * 4, 4);
+                System.arraycopy(row, rowSize - 4, paddedRow,
+                    paddedRowSize - (p + 1) * 4, 4);
+            }
+            System.arraycopy(row, 0, paddedRow, padding * 4, rowSize);
+
+            atlas.position(((y + r) * atlasWidth + x - padding) * 4);
+            atlas.put(paddedRow);
+        }
+    }
+
+
+    private static void releaseAll(Texture[] images)
+    {
+        for (Texture image : images)
+        {
+            if (image != null)
+                image.releaseData();
+        }
+    }
+}
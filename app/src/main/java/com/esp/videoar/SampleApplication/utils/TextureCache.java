@@ -0,0 +1,238 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+
+// Shares decoded textures between their users. A texture is found by its
+// asset path, and a newly decoded one is replaced by an already resident
+// texture with the same pixels, so each image is decoded, kept and uploaded
+// once. Textures are reference counted: released ones stay resident for the
+// next acquire() until the byte budget is exceeded, then the least recently
+// released go first. Their GL textures are deleted by the owner of the GL
+// context, see drainEvicted(). Thread safe.
+public class TextureCache
+{
+    public interface Loader
+    {
+        // Decodes the texture at the path, null if it cannot be loaded
+        Texture load(String path);
+    }
+
+
+    private static final class Entry
+    {
+        final Texture texture;
+        final String hash;
+        final long bytes;
+        final List<String> paths = new ArrayList<String>();
+        int references = 0;
+
+
+        Entry(Texture texture, String hash)
+        {
+            this.texture = texture;
+            this.hash = hash;
+            this.bytes = texture.getByteSize();
+        }
+    }
+
+    private final long mBudgetBytes;
+    private final Loader mLoader;
+
+    private final Map<String, Entry> mByPath = new HashMap<String, Entry>();
+    private final Map<String, Entry> mByHash = new HashMap<String, Entry>();
+    private final Map<Texture, Entry> mByTexture = new IdentityHashMap<Texture, Entry>();
+    // Entries nobody references, least recently released first
+    private final LinkedHashSet<Entry> mUnreferenced = new LinkedHashSet<Entry>();
+    private final List<Texture> mEvicted = new ArrayList<Texture>();
+
+    private long mResidentBytes = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+    private int mDuplicates = 0;
+
+
+    public TextureCache(long budgetBytes, Loader loader)
+    {
+        mBudgetBytes = budgetBytes;
+        mLoader = loader;
+    }
+
+
+    // The texture at the path with one more reference, null if it cannot be
+    // loaded. The decode runs outside the lock, so other paths are decoded
+    // and cached textures handed out meanwhile.
+    public Texture acquire(String path)
+    {
+        synchronized (this)
+        {
+            Entry entry = mByPath.get(path);
+            if (entry != null)
+            {
+                mHits++;
+                return reference(entry);
+            }
+            mMisses++;
+        }
+
+        Texture texture = mLoader.load(path);
+        if (texture == null)
+            return null;
+        String hash = contentHash(texture);
+
+        Texture acquired;
+        synchronized (this)
+        {
+            // Another thread may have decoded the same path or pixels meanwhile
+            Entry entry = mByPath.get(path);
+            if (entry == null)
+                entry = mByHash.get(hash);
+            if (entry != null)
+            {
+                mDuplicates++;
+            } else
+            {
+                entry = new Entry(texture, hash);
+                mByHash.put(hash, entry);
+                mByTexture.put(texture, entry);
+                mResidentBytes += entry.bytes;
+            }
+            if (mByPath.put(path, entry) != entry)
+                entry.paths.add(path);
+            acquired = reference(entry);
+        }
+        // The copy just decoded is dropped
+        if (acquired != texture)
+            texture.releaseData();
+        return acquired;
+    }
+
+
+    // Gives up a reference taken with acquire(), returns false if the texture
+    // is not one of this cache's
+    public synchronized boolean release(Texture texture)
+    {
+        Entry entry = mByTexture.get(texture);
+        if (entry == null || entry.references == 0)
+            return false;
+
+        if (--entry.references == 0)
+        {
+            mUnreferenced.add(entry);
+            trim();
+        }
+        return true;
+    }
+
+
+    // Adds the textures evicted since the last call to the list, their GL
+    // textures are to be deleted; returns how many. Allocates nothing, it
+    // runs every frame.
+    public synchronized int drainEvicted(List<Texture> into)
+    {
+        int count = mEvicted.size();
+        for (int i = 0; i < count; i++)
+            into.add(mEvicted.get(i));
+        mEvicted.clear();
+        return count;
+    }
+
+
+    // The decoded size of every resident texture, whether its pixels are
+    // still in memory or only uploaded, see Texture.getCpuBytes()
+    public synchronized long getResidentBytes()
+    {
+        return mResidentBytes;
+    }
+
+
+    public synchronized int getHitCount()
+    {
+        return mHits;
+    }
+
+
+    // Decodes, including the ones that turned out to be duplicates
+    public synchronized int getMissCount()
+    {
+        return mMisses;
+    }
+
+
+    public synchronized int getDuplicateCount()
+    {
+        return mDuplicates;
+    }
+
+
+    public synchronized int size()
+    {
+        return mByTexture.size();
+    }
+
+
+    // A hash of the size, the format and the pixels
+    static String contentHash(Texture texture)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer size = ByteBuffer.allocate(16);
+        size.putInt(texture.mWidth).putInt(texture.mHeight).putInt(texture.mChannels)
+            .putInt(texture.mCompressedFormat);
+        size.flip();
+        digest.update(size);
+        if (texture.mData != null)
+            digest.update(texture.mData.duplicate());
+        if (texture.mAlpha != null && texture.mAlpha.mData != null)
+            digest.update(texture.mAlpha.mData.duplicate());
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hash.append(Character.forDigit(b >> 4 & 0xf, 16))
+                .append(Character.forDigit(b & 0xf, 16));
+        }
+        return hash.toString();
+    }
+
+
+    private Texture reference(Entry entry)
+    {
+        if (entry.references++ == 0)
+            mUnreferenced.remove(entry);
+        trim();
+        return entry.texture;
+    }
+
+
+    private void trim()
+    {
+        Iterator<Entry> it = mUnreferenced.iterator();
+        while (mResidentBytes > mBudgetBytes && it.hasNext())
+        {
+            Entry entry = it.next();
+            it.remove();
+            for (String path : entry.paths)
+                mByPath.remove(path);
+            mByHash.remove(entry.hash);
+            mByTexture.remove(entry.texture);
+            mResidentBytes -= entry.bytes;
+            mEvicted.add(entry.texture);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// Decodes textures on a few background threads and hands them to the GL
+// thread, which uploads them at the start of its frames. The hand over is a
+// lock free queue, so neither side waits for the other, and every frame
+// uploads only as many textures as fit into its time budget. Textures are
+// delivered to numbered slots, what a slot is is up to the GL side.
+public class TextureLoader
+{
+    private static final String LOGTAG = "TextureLoader";
+
+
+    public interface Decoder
+    {
+        // Runs on a loader thread, null if the texture cannot be loaded
+        Texture decode();
+    }
+
+
+    public interface Uploader
+    {
+        // Runs on the GL thread
+        void upload(int slot, Texture texture);
+
+
+        // Runs on the GL thread with the pixels reload() loaded again for the
+        // texture, null if they could not be loaded
+        void reloaded(Texture texture, Texture pixels);
+    }
+
+
+    private static final class Loaded
+    {
+        final int slot;
+        final Texture texture;
+        // The texture whose pixels these are, for reload()
+        final Texture reloadOf;
+
+
+        Loaded(int slot, Texture texture, Texture reloadOf)
+        {
+            this.slot = slot;
+            this.texture = texture;
+            this.reloadOf = reloadOf;
+        }
+    }
+
+    private final ExecutorService mExecutor;
+    private final ConcurrentLinkedQueue<Loaded> mLoaded =
+        new ConcurrentLinkedQueue<Loaded>();
+    // Submitted and not uploaded yet
+    private final AtomicInteger mPending = new AtomicInteger();
+
+
+    public TextureLoader(int threads)
+    {
+        mExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, LOGTAG + "-"
+                    + mCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    // Decodes the texture of the slot in the background
+    public void load(final int slot, final Decoder decoder)
+    {
+        mPending.incrementAndGet();
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Texture texture = null;
+                try
+                {
+                    texture = decoder.decode();
+                } catch (Throwable e)
+                {
+                    // Errors too, e.g. running out of memory for a bitmap
+                    Log.e(LOGTAG, "Failed to decode the texture of slot " + slot);
+                } finally
+                {
+                    // The slot is done with either way, or getPendingCount()
+                    // never gets back to 0
+                    if (texture != null)
+                        mLoaded.add(new Loaded(slot, texture, null));
+                    else
+                        mPending.decrementAndGet();
+                }
+            }
+        });
+    }
+
+
+    // Loads the released pixels of a texture from its mSource in the
+    // background, e.g. after the GL context was lost; they are handed to
+    // Uploader.reloaded() on the GL thread
+    public void reload(final Texture texture)
+    {
+        mPending.incrementAndGet();
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Texture pixels = null;
+                try
+                {
+                    pixels = texture.mSource.load();
+                } catch (Throwable e)
+                {
+                    Log.e(LOGTAG, "Failed to reload texture '" + texture.mName + "'");
+                } finally
+                {
+                    mLoaded.add(new Loaded(-1, pixels, texture));
+                }
+            }
+        });
+    }
+
+
+    // For work that fills several slots, e.g. an atlas: the runnable calls
+    // deliver() for each of them
+    public void execute(Runnable decode)
+    {
+        mExecutor.execute(decode);
+    }
+
+
+    // Queues a texture decoded elsewhere for upload, from any thread
+    public void deliver(int slot, Texture texture)
+    {
+        mPending.incrementAndGet();
+        mLoaded.add(new Loaded(slot, texture, null));
+    }
+
+
+    // Called by the GL thread at the start of a frame: uploads the decoded
+    // textures until budgetNanos are spent, at least one so that loading
+    // always progresses. Returns how many were uploaded.
+    public int uploadPending(Uploader uploader, long budgetNanos)
+    {
+        long start = System.nanoTime();
+        int uploaded = 0;
+        Loaded loaded;
+        while ((uploaded == 0 || System.nanoTime() - start < budgetNanos)
+            && (loaded = mLoaded.poll()) != null)
+        {
+            if (loaded.reloadOf != null)
+                uploader.reloaded(loaded.reloadOf, loaded.texture);
+            else
+                uploader.upload(loaded.slot, loaded.texture);
+            mPending.decrementAndGet();
+            uploaded++;
+        }
+        return uploaded;
+    }
+
+
+    // Textures submitted or delivered and not uploaded yet
+    public int getPendingCount()
+    {
+        return mPending.get();
+    }
+
+
+    // Textures still decoding are dropped
+    public void shutdown()
+    {
+        mExecutor.shutdownNow();
+    }
+}
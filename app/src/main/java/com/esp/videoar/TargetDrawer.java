@@ -0,0 +1,215 @@
+package com.esp.videoar;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import com.esp.videoar.SampleApplication.utils.GLBackend;
+import com.esp.videoar.SampleApplication.utils.GLStateCache;
+import com.esp.videoar.SampleApplication.utils.Texture;
+import com.esp.videoar.SampleApplication.utils.TextureCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the tracked targets for {@link VideoRenderer#renderFrame()}: the keyframe or the video
+ * of each target, then its status icon.
+ *
+ * Every GL call goes through a {@link GLStateCache} over a {@link GLBackend} and every matrix
+ * through a {@link QuadScratch}, so a steady state frame runs, and is checked not to allocate,
+ * on the JVM. The Vuforia calls that deliver the poses stay in the renderer.
+ */
+class TargetDrawer {
+
+    private final GLStateCache mGl;
+    private final QuadGeometry mQuad;
+    private final QuadScratch mScratch;
+
+    // Indexed by target and owned by the renderer, which keeps them up to date
+    private final float[] mKeyframeAspectRatio;
+    private final float[] mVideoAspectRatio;
+    private final int[] mVideoTextureIDs;
+    private final float[][] mTexCoordTransforms;
+
+    private QuadProgram mVideoProgram = new QuadProgram();
+    private QuadProgram mKeyframeProgram = new QuadProgram();
+    private QuadProgram mSplitAlphaProgram = new QuadProgram();
+
+    // The keyframe of every target, then the status icons, see VideoRenderer.PLAY_ICON
+    private List<Texture> mTextures = null;
+    // Drawn instead of a texture that is not uploaded yet
+    private Texture mMissingTexture = null;
+
+    // Reused by drainEvicted() every frame
+    private final List<Texture> mEvicted = new ArrayList<>();
+
+    TargetDrawer(GLStateCache gl, QuadGeometry quad, QuadScratch scratch,
+                 float[] keyframeAspectRatio, float[] videoAspectRatio, int[] videoTextureIDs,
+                 float[][] texCoordTransforms) {
+        mGl = gl;
+        mQuad = quad;
+        mScratch = scratch;
+        mKeyframeAspectRatio = keyframeAspectRatio;
+        mVideoAspectRatio = videoAspectRatio;
+        mVideoTextureIDs = videoTextureIDs;
+        mTexCoordTransforms = texCoordTransforms;
+    }
+
+    // The programs of the current context, see QuadProgram.create()
+    void setPrograms(QuadProgram video, QuadProgram keyframe, QuadProgram splitAlpha) {
+        mVideoProgram = video;
+        mKeyframeProgram = keyframe;
+        mSplitAlphaProgram = splitAlpha;
+    }
+
+    void setTextures(List<Texture> textures) {
+        mTextures = textures;
+    }
+
+    void setMissingTexture(Texture texture) {
+        mMissingTexture = texture;
+    }
+
+    // The projection and the blending are the same for every quad of the frame
+    void beginFrame(float[] projection) {
+        mScratch.setProjection(projection);
+        mGl.glEnable(GLES20.GL_BLEND);
+        mGl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    // Draws a target whose pose for this frame is in the scratch state, see
+    // QuadScratch.setPose34(). The pose delivers the center of the target, so
+    // it spans -halfWidth to halfWidth and -halfHeight to halfHeight.
+    void drawTarget(int target, MediaState status, float halfWidth, float halfHeight) {
+        // If the movie is ready to start playing or it has reached the end
+        // of playback we render the keyframe
+        if ((status == MediaState.READY)
+                || (status == MediaState.REACHED_END)
+                || (status == MediaState.NOT_READY)
+                || (status == MediaState.ERROR)) {
+            // Here we use the aspect ratio of the keyframe since it
+            // is likely that it is not a perfect square
+            Texture keyframe = mTextures.get(target);
+            float ratio;
+            if (keyframe.mSuccess)
+                ratio = mKeyframeAspectRatio[target];
+            else
+                ratio = halfHeight / halfWidth;
+
+            float[] modelViewProjectionKeyframe = mScratch.keyframeMVP(target, halfWidth, ratio);
+
+            mGl.glDepthFunc(GLES20.GL_LESS);
+            drawKeyframeQuad(keyframe, modelViewProjectionKeyframe);
+        } else
+        // In any other case, such as playing or paused, we render
+        // the actual contents
+        {
+            // Here we use the aspect ratio of the video frame
+            float[] modelViewProjectionVideo = mScratch.videoMVP(target, halfWidth,
+                    mVideoAspectRatio[target]);
+
+            mGl.glDepthFunc(GLES20.GL_LESS);
+            mGl.glUseProgram(mVideoProgram.program);
+            mQuad.bind(mGl, mVideoProgram.vertexHandle, mVideoProgram.normalHandle,
+                    mVideoProgram.texCoordHandle);
+
+            mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+
+            // IMPORTANT:
+            // Notice here that the texture that we are binding is not the
+            // typical GL_TEXTURE_2D but instead the GL_TEXTURE_EXTERNAL_OES
+            mGl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mVideoTextureIDs[target]);
+            mGl.glUniformMatrix4fv(mVideoProgram.mvpMatrixHandle, 1, false,
+                    modelViewProjectionVideo, 0);
+            mGl.glUniformMatrix4fv(mVideoProgram.texCoordMatrixHandle, 1, false,
+                    mTexCoordTransforms[target], 0);
+            mGl.glUniform1i(mVideoProgram.samplerHandle, 0);
+
+            // Render
+            mQuad.draw(mGl);
+        }
+
+        // The following section renders the icons. The actual textures used
+        // are loaded from the assets folder
+        if ((status == MediaState.READY)
+                || (status == MediaState.REACHED_END)
+                || (status == MediaState.PAUSED)
+                || (status == MediaState.NOT_READY)
+                || (status == MediaState.ERROR)) {
+            // If the movie is ready to be played, pause, has reached end or
+            // is not ready then we display one of the icons
+            mGl.glDepthFunc(GLES20.GL_LEQUAL);
+
+            // The inacuracy of the rendering process in some devices means
+            // that even if we use the "Less or Equal" version of the depth
+            // function it is likely that we will get ugly artifacts, so the
+            // icon is also lifted slightly off the target
+            float[] modelViewProjectionButton = mScratch.buttonMVP(target, halfHeight);
+
+            // Depending on the status in which we are we choose the
+            // appropriate texture to display. Notice that unlike the video
+            // these are regular GL_TEXTURE_2D textures
+            Texture icon;
+            switch (status) {
+                case NOT_READY:
+                    icon = mTextures.get(VideoRenderer.BUSY_ICON);
+                    break;
+                case ERROR:
+                    icon = mTextures.get(VideoRenderer.ERROR_ICON);
+                    break;
+                default:
+                    icon = mTextures.get(VideoRenderer.PLAY_ICON);
+                    break;
+            }
+            drawKeyframeQuad(icon, modelViewProjectionButton);
+        }
+    }
+
+    // Leaves the state as Vuforia and the next frame's video background
+    // expect it: no program, no blending, client side arrays
+    void endFrame() {
+        mGl.glUseProgram(0);
+        mGl.glDisable(GLES20.GL_BLEND);
+        mGl.glDepthFunc(GLES20.GL_LESS);
+        mGl.glDisable(GLES20.GL_DEPTH_TEST);
+        mGl.disableVertexAttribArrays();
+        mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    // The textures the cache evicted since the last frame, their GL textures
+    // are to be deleted. The list is reused every frame.
+    List<Texture> drainEvicted(TextureCache cache) {
+        mEvicted.clear();
+        cache.drainEvicted(mEvicted);
+        return mEvicted;
+    }
+
+    // Draws the quad with the texture, through the split alpha shader when
+    // its alpha is in a second texture
+    private void drawKeyframeQuad(Texture t, float[] modelViewProjection) {
+        // Still reloading after a context loss
+        if ((t.mAtlas != null ? t.mAtlas : t).getGpuBytes() == 0)
+            t = mMissingTexture;
+        boolean splitAlpha = t.mAlpha != null;
+        QuadProgram p = splitAlpha ? mSplitAlphaProgram : mKeyframeProgram;
+        float[] region = t.mRegion;
+
+        mGl.glUseProgram(p.program);
+        mQuad.bind(mGl, p.vertexHandle, p.normalHandle, p.texCoordHandle);
+
+        if (splitAlpha) {
+            mGl.glActiveTexture(GLES20.GL_TEXTURE1);
+            mGl.glBindTexture(GLES20.GL_TEXTURE_2D, t.mAlpha.mTextureID[0]);
+            mGl.glUniform1i(p.alphaSamplerHandle, 1);
+        }
+        mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGl.glBindTexture(GLES20.GL_TEXTURE_2D, t.mTextureID[0]);
+        mGl.glUniform1i(p.samplerHandle, 0);
+        mGl.glUniform4f(p.texCoordRegionHandle, region[0], region[1], region[2], region[3]);
+        mGl.glUniformMatrix4fv(p.mvpMatrixHandle, 1, false, modelViewProjection, 0);
+
+        // Render
+        mQuad.draw(mGl);
+    }
+}
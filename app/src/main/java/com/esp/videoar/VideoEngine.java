@@ -0,0 +1,59 @@
+package com.esp.videoar;
+
+import android.view.Surface;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * What MediaPlayerHelper needs from the thing that decodes a video into its Surface, modelled
+ * after MediaPlayer. {@link MediaPlayerEngine} wraps a MediaPlayer, {@link CodecEngine} decodes
+ * with MediaExtractor and MediaCodec. The listener may be called on any thread.
+ */
+interface VideoEngine {
+
+    interface Listener {
+        void onPrepared(VideoEngine engine);
+
+        void onVideoSizeChanged(VideoEngine engine, int width, int height);
+
+        void onBufferingUpdate(VideoEngine engine, int percent);
+
+        void onCompletion(VideoEngine engine);
+
+        void onError(VideoEngine engine, String description);
+    }
+
+    void setListener(Listener listener);
+
+    void setDataSource(FileDescriptor fd, long offset, long length) throws IOException;
+
+    void setSurface(Surface surface);
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    // With previousSync the engine may land on the keyframe before the
+    // position, which shows a frame without decoding up to the position
+    void seekTo(int position, boolean previousSync);
+
+    boolean isPlaying();
+
+    int getCurrentPosition();
+
+    int getDuration();
+
+    int getVideoWidth();
+
+    int getVideoHeight();
+
+    void setVolume(float volume);
+
+    // The engine cannot be used afterwards
+    void release();
+}
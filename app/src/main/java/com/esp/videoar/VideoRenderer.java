@@ -9,9 +9,14 @@ import android.util.DisplayMetrics;
 import android.util.Log;
 
 import com.esp.videoar.SampleApplication.SampleApplicationSession;
+import com.esp.videoar.SampleApplication.utils.GLES20Backend;
+import com.esp.videoar.SampleApplication.utils.GLStateCache;
 import com.esp.videoar.SampleApplication.utils.SampleMath;
 import com.esp.videoar.SampleApplication.utils.SampleUtils;
 import com.esp.videoar.SampleApplication.utils.Texture;
+import com.esp.videoar.SampleApplication.utils.TextureCache;
+import com.esp.videoar.SampleApplication.utils.TextureLoader;
+import com.esp.videoar.mp4.Mp4Info;
 import com.vuforia.COORDINATE_SYSTEM_TYPE;
 import com.vuforia.CameraDevice;
 import com.vuforia.Device;
@@ -31,71 +36,81 @@ import com.vuforia.Vec2F;
 import com.vuforia.Vec3F;
 import com.vuforia.Vuforia;
 
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-public class VideoRenderer implements GLSurfaceView.Renderer {
+public class VideoRenderer implements GLSurfaceView.Renderer,
+        MediaPlayerHelper.OnMediaStateChangedListener {
 
     private static final String TAG = "VideoRenderer";
 
-    public SampleApplicationSession mAppSession;
+    // Queue play, pause and load on the MediaPlayerHelper command thread
+    // instead of calling into MediaPlayer from the GL thread. Set to false to
+    // compare the time the GL thread spends blocked on media calls
+    static final boolean ASYNC_MEDIA_COMMANDS = true;
+
+    // At most this many videos are prepared at once, one more than can be
+    // tracked simultaneously so that switching between targets is smooth
+    static final int MAX_PREPARED_DECODERS = MainActivity.MAX_SIMULTANEOUS_TARGETS + 1;
+    static final long DECODER_MEMORY_BUDGET = 48L * 1024 * 1024;
+    // Output buffers a decoder typically holds, used to estimate its memory
+    private static final int DECODER_BUFFER_COUNT = 6;
+    // Prepares running at the same time, the others wait in the PrepareScheduler
+    static final int MAX_CONCURRENT_PREPARES = 2;
+
+    // Resume and seek positions snap back to the previous keyframe when it is
+    // at most this far away, the decoder then starts showing frames without
+    // first decoding up to the position. Set FAST_SEEK to false for exact seeks.
+    static final boolean FAST_SEEK = true;
+    static final int FAST_SEEK_TOLERANCE_MILLIS = 2000;
+
+    // Set to true to show the videos on the targets as muted overlays, decoded
+    // by the MediaCodec engine without their sound; going fullscreen plays it.
+    // Videos without sound are requested as MediaType.ON_TEXTURE_MUTED anyway.
+    static final boolean MUTED_OVERLAYS = false;
+
+    // The media blocking and GL state statistics are logged every this many frames
+    private static final int MEDIA_STATS_FRAMES = 300;
+
+    // mTextures holds the keyframe of every target, then the status icons
+    static final int PLAY_ICON = MainActivity.NUM_TARGETS;
+    static final int BUSY_ICON = MainActivity.NUM_TARGETS + 1;
+    static final int ERROR_ICON = MainActivity.NUM_TARGETS + 2;
+
+    // Textures drop their pixels once uploaded and load them again from their
+    // source when the GL context was lost, in the background when there is a
+    // TextureLoader; a placeholder is drawn until they are back
+    static final boolean RELEASE_TEXTURE_DATA = true;
+
+    // Time per frame for uploading the textures decoded in the background,
+    // the rest waits for the next frames
+    static final long TEXTURE_UPLOAD_BUDGET_NANOS = 4 * 1000 * 1000;
 
-    // Video Playback Rendering Specific
-    private int videoPlaybackShaderID = 0;
-    private int videoPlaybackVertexHandle = 0;
-    private int videoPlaybackNormalHandle = 0;
-    private int videoPlaybackTexCoordHandle = 0;
-    private int videoPlaybackMVPMatrixHandle = 0;
-    private int videoPlaybackTexSamplerOESHandle = 0;
+    public SampleApplicationSession mAppSession;
 
     // Video Playback Textures for the two targets
     int videoPlaybackTextureID[] = new int[MainActivity.NUM_TARGETS];
 
-    // Keyframe and icon rendering specific
-    private int keyframeShaderID = 0;
-    private int keyframeVertexHandle = 0;
-    private int keyframeNormalHandle = 0;
-    private int keyframeTexCoordHandle = 0;
-    private int keyframeMVPMatrixHandle = 0;
-    private int keyframeTexSampler2DHandle = 0;
-
-    private int[] seek;
-
-    // We cannot use the default texture coordinates of the quad since these
-    // will change depending on the video itself
-    private float videoQuadTextureCoords[] = {0.0f, 0.0f, 1.0f, 0.0f, 1.0f,
-            1.0f, 0.0f, 1.0f,};
-
-    private float videoQuadTextureCoordsTransformed[][];
-    // This variable will hold the transformed coordinates (changes every frame)
-    private float videoQuadTextureCoordsTransformedStones[] = {0.0f, 0.0f,
-            1.0f, 0.0f, 1.0f, 1.0f, 0.0f, 1.0f,};
-
-    private float videoQuadTextureCoordsTransformedChips[] = {0.0f, 0.0f,
-            1.0f, 0.0f, 1.0f, 1.0f, 0.0f, 1.0f,};
-
     // Trackable dimensions
     Vec3F targetPositiveDimensions[] = new Vec3F[MainActivity.NUM_TARGETS];
 
-    static int NUM_QUAD_VERTEX = 4;
-    static int NUM_QUAD_INDEX = 6;
-
-    double quadVerticesArray[] = {-1.0f, -1.0f, 0.0f, 1.0f, -1.0f, 0.0f, 1.0f,
-            1.0f, 0.0f, -1.0f, 1.0f, 0.0f};
-
-    double quadTexCoordsArray[] = {0.0f, 0.0f, 1.0f, 0.0f, 1.0f, 1.0f, 0.0f,
-            1.0f};
-
-    double quadNormalsArray[] = {0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1,};
-
-    short quadIndicesArray[] = {0, 1, 2, 2, 3, 0};
-
-    Buffer quadVertices, quadTexCoords, quadIndices, quadNormals;
+    // The quad geometry lives in buffer objects, uploaded in initRendering().
+    // The state calls of the draws go through the cache, which drops those
+    // that change nothing, e.g. binding the atlas again for every icon.
+    private final GLStateCache mGl = new GLStateCache(new GLES20Backend());
+    private final QuadGeometry mQuad = new QuadGeometry();
+    // Draws the keyframes, videos and icons of the tracked targets
+    private final TargetDrawer mTargets;
+    // Also draws the video background
+    private QuadProgram mKeyframeProgram = new QuadProgram();
 
     public boolean mIsActive = false;
 
@@ -105,24 +120,157 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
     private MediaType[] mCanRequestType = null;
     private int mSeekPosition[] = null;
     private boolean[] mShouldPlayImmediately = null;
-    private long[] mLostTrackingSince = null;
     private boolean[] mLoadRequested = null;
+    // Not loaded again on detection until the next load request
+    private boolean[] mLoadFailed = null;
 
     MainActivity mActivity;
 
-    // Needed to calculate whether a screen tap is inside the target
+    // Needed to calculate whether a screen tap is inside the target, filled
+    // from the last pose of the target on a tap
     Matrix44F modelViewMatrix[] = new Matrix44F[MainActivity.NUM_TARGETS];
 
     private Vector<Texture> mTextures;
+    // Where the shared textures in mTextures come from, null if none are shared
+    private TextureCache mTextureCache = null;
+    // Fills the slots of mTextures that still hold a placeholder
+    private TextureLoader mTextureLoader;
+    private final TextureLoader.Uploader mLoadedTextureUploader = new TextureLoader.Uploader() {
+        @Override
+        public void upload(int slot, Texture texture) {
+            setLoadedTexture(slot, texture);
+        }
+
+        @Override
+        public void reloaded(Texture texture, Texture pixels) {
+            setReloadedTexture(texture, pixels);
+        }
+    };
+    // Textures whose pixels are being loaded again in the background
+    private final Set<Texture> mReloading =
+            Collections.newSetFromMap(new IdentityHashMap<Texture, Boolean>());
+
+    // Poster frames decoded in the background, swapped in for the keyframes
+    // on the GL thread
+    private final AtomicReferenceArray<Texture> mPendingPosterFrames =
+            new AtomicReferenceArray<>(MainActivity.NUM_TARGETS);
 
     boolean isTracking[] = new boolean[MainActivity.NUM_TARGETS];
     MediaState currentStatus[] = new MediaState[MainActivity.NUM_TARGETS];
 
+    // One bit per target whose state or video size changed since the last
+    // frame, set by the MediaPlayerHelper listeners and drained on the GL thread
+    private final AtomicInteger mChangedTargets = new AtomicInteger(0);
+
+    // Loads the videos as their targets are detected, within the budget above
+    private final DecoderManager mDecoderManager = new DecoderManager(MainActivity.NUM_TARGETS,
+            MAX_PREPARED_DECODERS, DECODER_MEMORY_BUDGET,
+            new Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+            },
+            new DecoderManager.Decoders() {
+                @Override
+                public void load(int target) {
+                    mPrepareScheduler.submit(target);
+                }
+
+                @Override
+                public void unload(int target) {
+                    mPrepareScheduler.cancel(target);
+                    unloadMedia(target);
+                }
+            });
+
+    // Starts the loads of the DecoderManager a few at a time, tracked targets first
+    private final PrepareScheduler mPrepareScheduler = new PrepareScheduler(
+            MainActivity.NUM_TARGETS, MAX_CONCURRENT_PREPARES,
+            new Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+            },
+            new PrepareScheduler.Preparer() {
+                @Override
+                public void prepare(int target) {
+                    loadMedia(target);
+                }
+            });
+
+    // Prepares the videos likely to be detected next in the free decoders
+    private final DetectionPredictor mPredictor = new DetectionPredictor(MainActivity.NUM_TARGETS,
+            new Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+            });
+    private final boolean[] mPreloaded = new boolean[MainActivity.NUM_TARGETS];
+    private final boolean[] mNotPreloadable = new boolean[MainActivity.NUM_TARGETS];
+    // When the last load of a target was issued and when it became ready, -1 if not yet
+    private final long[] mLoadIssuedAt = new long[MainActivity.NUM_TARGETS];
+    private final long[] mReadyAt = new long[MainActivity.NUM_TARGETS];
+
+    // Starts and pauses the videos as the targets are found and lost
+    private final PlaybackPolicy mPlaybackPolicy = new PlaybackPolicy(MainActivity.NUM_TARGETS,
+            new Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+            },
+            new PlaybackPolicy.Commands() {
+                @Override
+                public void play(int target, int seekPosition) {
+                    if (seekPosition != MediaPlayerHelper.CURRENT_POSITION)
+                        seekPosition = snapToKeyframe(target, seekPosition);
+                    if (ASYNC_MEDIA_COMMANDS)
+                        mVideoPlayerHelper[target].requestPlay(seekPosition);
+                    else
+                        mVideoPlayerHelper[target].play(false, seekPosition);
+                }
+
+                @Override
+                public void pause(int target) {
+                    if (ASYNC_MEDIA_COMMANDS)
+                        mVideoPlayerHelper[target].requestPause();
+                    else
+                        mVideoPlayerHelper[target].pause();
+                }
+
+                @Override
+                public int currentPosition(int target) {
+                    // A paused MediaPlayer resumes where it stopped, the queued
+                    // pause did not run yet so there is nothing to read here
+                    if (ASYNC_MEDIA_COMMANDS)
+                        return MediaPlayerHelper.CURRENT_POSITION;
+                    return mVideoPlayerHelper[target].getCurrentPosition();
+                }
+            });
+
+    // Read from the video files before their players are prepared, null if unknown
+    private final Mp4Info[] mVideoInfo = new Mp4Info[MainActivity.NUM_TARGETS];
+
     // These hold the aspect ratio of both the video and the
     // keyframe
     float videoQuadAspectRatio[] = new float[MainActivity.NUM_TARGETS];
     float keyframeQuadAspectRatio[] = new float[MainActivity.NUM_TARGETS];
 
+    // Preallocated matrices so that renderFrame() does not allocate
+    private final QuadScratch mScratch = new QuadScratch(MainActivity.NUM_TARGETS);
+    private final float[] mZeroDimensions = {0.0f, 0.0f, 0.0f};
+    private final float[] mHalfDimensions = {0.0f, 0.0f, 0.0f};
+
+    // Time the GL thread spent inside MediaPlayerHelper calls
+    private long mMediaBlockedNanos = 0;
+    private long mMediaBlockedMaxNanos = 0;
+    private int mMediaStatsFrames = 0;
+    private long mGlIssued = 0;
+    private long mGlSuppressed = 0;
+
     public VideoRenderer(MainActivity activity, SampleApplicationSession session) {
         mActivity = activity;
         mAppSession = session;
@@ -131,10 +279,9 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         mMovieName = new String[MainActivity.NUM_TARGETS];
         mCanRequestType = new MediaType[MainActivity.NUM_TARGETS];
         mSeekPosition = new int[MainActivity.NUM_TARGETS];
-        seek = new int[MainActivity.NUM_TARGETS];
         mShouldPlayImmediately = new boolean[MainActivity.NUM_TARGETS];
-        mLostTrackingSince = new long[MainActivity.NUM_TARGETS];
         mLoadRequested = new boolean[MainActivity.NUM_TARGETS];
+        mLoadFailed = new boolean[MainActivity.NUM_TARGETS];
         mTexCoordTransformationMatrix = new float[MainActivity.NUM_TARGETS][16];
 
         // Initialize the arrays to default values
@@ -143,10 +290,12 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
             mMovieName[i] = "";
             mCanRequestType[i] = MediaType.ON_TEXTURE_FULLSCREEN;
             mSeekPosition[i] = 0;
-            seek[i] = 0;
             mShouldPlayImmediately[i] = false;
-            mLostTrackingSince[i] = -1;
             mLoadRequested[i] = false;
+            mReadyAt[i] = -1;
+            currentStatus[i] = MediaState.NOT_READY;
+            // Identity until the SurfaceTexture reports its transform
+            Matrix.setIdentityM(mTexCoordTransformationMatrix[i], 0);
         }
 
         for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
@@ -157,27 +306,46 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
             modelViewMatrix[i] = new Matrix44F();
         }
 
-        videoQuadTextureCoordsTransformed = new float[MainActivity.NUM_TARGETS][];
-        for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
-            videoQuadTextureCoordsTransformed[i] = new float[]{0.0f, 0.0f,
-                    1.0f, 0.0f, 1.0f, 1.0f, 0.0f, 1.0f,};
-        }
-
+        mTargets = new TargetDrawer(mGl, mQuad, mScratch, keyframeQuadAspectRatio,
+                videoQuadAspectRatio, videoPlaybackTextureID, mTexCoordTransformationMatrix);
     }
 
     // Store the Player Helper object passed from the main activity
     public void setVideoPlayerHelper(int target, MediaPlayerHelper playerHelper) {
         mVideoPlayerHelper[target] = playerHelper;
+        if (playerHelper != null)
+            playerHelper.setOnMediaStateChangedListener(this);
+        // Pick up whatever state the helper is in already
+        markChanged(target);
     }
 
     public void requestLoad(int target, String movieName, int seekPosition, boolean playImmediately) {
         mMovieName[target] = movieName;
         mSeekPosition[target] = seekPosition;
-        seek[target] = seekPosition;
+        // The position replaces the one recorded when the movie was unloaded
+        if (mVideoPlayerHelper[target] != null)
+            mVideoPlayerHelper[target].takeUnloadPosition();
         mShouldPlayImmediately[target] = playImmediately;
         mLoadRequested[target] = true;
     }
 
+    // Loads the movie again from the position recorded when it was unloaded,
+    // see unloadAll()
+    public void requestReload(int target, boolean playImmediately) {
+        mShouldPlayImmediately[target] = playImmediately;
+        mLoadRequested[target] = true;
+    }
+
+    // Called by MainActivity.onPause() once the GL thread is paused. The
+    // players unload on their command threads, the positions to resume from
+    // stay here, those of the targets evicted earlier included.
+    public void unloadAll() {
+        for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
+            if (mVideoPlayerHelper[i] != null)
+                unloadMedia(i);
+        }
+    }
+
 
     @Override
     public void onSurfaceCreated(GL10 gl10, EGLConfig eglConfig) {
@@ -204,8 +372,7 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
                 // And now check if a load has been requested with the
                 // parameters passed from the main activity
                 if (mLoadRequested[i]) {
-                    mVideoPlayerHelper[i].load(mMovieName[i], mCanRequestType[i],
-                            mShouldPlayImmediately[i], mSeekPosition[i]);
+                    consumeLoadRequest(i);
                     mLoadRequested[i] = false;
                 }
             }
@@ -217,13 +384,75 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         Vuforia.onSurfaceChanged(width, height);
         for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
             if (mLoadRequested[i] && mVideoPlayerHelper[i] != null) {
-                mVideoPlayerHelper[i].load(mMovieName[i], mCanRequestType[i],
-                        mShouldPlayImmediately[i], mSeekPosition[i]);
+                consumeLoadRequest(i);
                 mLoadRequested[i] = false;
             }
         }
     }
 
+    // The players were unloaded since the previous request (see
+    // MainActivity.onPause()), the video is now only loaded once its target is
+    // detected, or right away when it has to resume playing
+    private void consumeLoadRequest(int target) {
+        mDecoderManager.invalidate(target);
+        mPrepareScheduler.cancel(target);
+        takeUnloadPosition(target);
+        mLoadFailed[target] = false;
+        mPreloaded[target] = false;
+        if (mShouldPlayImmediately[target])
+            mDecoderManager.request(target);
+    }
+
+    private void loadMedia(int target) {
+        mSeekPosition[target] = snapToKeyframe(target, mSeekPosition[target]);
+        // The player may pick the keyframe itself only when no keyframe is
+        // further apart than the tolerance, without the index seeks are exact
+        mVideoPlayerHelper[target].setSeekToPreviousSync(FAST_SEEK && mVideoInfo[target] != null
+                && mVideoInfo[target].getSyncSamples().maxGapUs(mVideoInfo[target].getDurationUs())
+                <= FAST_SEEK_TOLERANCE_MILLIS * 1000L);
+        MediaType type = mCanRequestType[target];
+        if (type == MediaType.ON_TEXTURE_FULLSCREEN && (MUTED_OVERLAYS
+                || (mVideoInfo[target] != null && !mVideoInfo[target].hasAudio())))
+            type = MediaType.ON_TEXTURE_MUTED;
+        mPlaybackPolicy.reset(target, mSeekPosition[target]);
+        mLoadIssuedAt[target] = SystemClock.uptimeMillis();
+        mReadyAt[target] = -1;
+        if (ASYNC_MEDIA_COMMANDS) {
+            mVideoPlayerHelper[target].requestLoad(mMovieName[target], type,
+                    mShouldPlayImmediately[target], mSeekPosition[target]);
+        } else {
+            mVideoPlayerHelper[target].load(mMovieName[target], type,
+                    mShouldPlayImmediately[target], mSeekPosition[target]);
+        }
+    }
+
+    // Evicted by the DecoderManager, the video continues where it was the
+    // next time its target is detected. The helper records the position
+    // while unloading, until then the published one is used, so that the GL
+    // thread never calls into the player here.
+    private void unloadMedia(int target) {
+        int position = mVideoPlayerHelper[target].getSnapshot().position;
+        if (position >= 0)
+            mSeekPosition[target] = position;
+        mShouldPlayImmediately[target] = false;
+        mPreloaded[target] = false;
+
+        if (ASYNC_MEDIA_COMMANDS) {
+            mVideoPlayerHelper[target].requestUnload();
+        } else {
+            mVideoPlayerHelper[target].unload();
+            takeUnloadPosition(target);
+        }
+    }
+
+    // Picks up the position the helper recorded when it unloaded, unless the
+    // video has been loaded again in the meantime
+    private void takeUnloadPosition(int target) {
+        int position = mVideoPlayerHelper[target].takeUnloadPosition();
+        if (position >= 0 && !mDecoderManager.isLoaded(target))
+            mSeekPosition[target] = position;
+    }
+
 
     @Override
     public void onDrawFrame(GL10 gl10) {
@@ -231,51 +460,124 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
             return;
         }
 
+        long mediaStart = System.nanoTime();
+        int changedTargets = mChangedTargets.getAndSet(0);
         for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
             if (mVideoPlayerHelper[i] != null) {
+                if ((changedTargets & (1 << i)) != 0)
+                    applyMediaState(i);
                 if (mVideoPlayerHelper[i].isPlayableOnTexture()) {
-                    if (mVideoPlayerHelper[i].getStatus() == MediaState.PLAYING) {
-                        mVideoPlayerHelper[i].updateVideoData();
-                    }
+                    // Only latches when the decoder produced a new frame, so
+                    // a frame decoded by a seek while paused shows up too
+                    mVideoPlayerHelper[i].updateVideoData();
+                    // The transform is applied to the texture coordinates in
+                    // the video vertex shader
                     mVideoPlayerHelper[i].getSurfaceTextureTransformMatrix(mTexCoordTransformationMatrix[i]);
-                    setVideoDimensions(i,
-                            mVideoPlayerHelper[i].getVideoWidth(),
-                            mVideoPlayerHelper[i].getVideoHeight(),
-                            mTexCoordTransformationMatrix[i]);
                 }
-                setStatus(i, mVideoPlayerHelper[i].getStatus().getNumericType());
             }
         }
 
+        long mediaNanos = System.nanoTime() - mediaStart;
+
         renderFrame();
 
+        mediaStart = System.nanoTime();
         for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
-            // Ask whether the target is currently being tracked and if so react
-            // to it
-            if (isTracking(i)) {
-                // If it is tracking reset the timestamp for lost tracking
-                mLostTrackingSince[i] = -1;
-                if (mVideoPlayerHelper[i] != null && !mVideoPlayerHelper[i].isPlaying()) {
-//                    mActivity.playVideo(i);
-                    Log.d(TAG, "onDrawFrame: " + seek[i]);
-                    mVideoPlayerHelper[i].play(false, seek[i]);
-                }
-            } else {
-                // If it isn't tracking
-                // check whether it just lost it or if it's been a while
-                if (mLostTrackingSince[i] < 0)
-                    mLostTrackingSince[i] = SystemClock.uptimeMillis();
-                else {
-                    // If it's been more than 2 seconds then pause the player
-                    if ((SystemClock.uptimeMillis() - mLostTrackingSince[i]) > 20) {
-                        if (mVideoPlayerHelper[i] != null)
-                            mVideoPlayerHelper[i].pause();
-                        seek[i] = mVideoPlayerHelper[i].getCurrentPosition();
-//                        mSeekPosition[i] =
-                    }
-                }
+            if (mVideoPlayerHelper[i] == null)
+                continue;
+            if (isTracking(i) && !mMovieName[i].isEmpty() && !mLoadFailed[i]) {
+                mPrepareScheduler.onTracked(i);
+                if (mPredictor.onTracked(i))
+                    recordDetection(i);
+                mDecoderManager.onTracked(i);
             }
+            mPlaybackPolicy.update(i, isTracking(i), currentStatus[i]);
+        }
+        preloadPredicted();
+        mPrepareScheduler.update();
+        mediaNanos += System.nanoTime() - mediaStart;
+
+        updateMediaStats(mediaNanos);
+    }
+
+    // A target was detected after a while, counts whether its video had been
+    // preloaded and how much of its preparation happened before the detection
+    private void recordDetection(int target) {
+        boolean hit = mPreloaded[target] && mDecoderManager.isLoaded(target);
+        long saved = 0;
+        if (hit) {
+            long now = SystemClock.uptimeMillis();
+            long readyAt = mReadyAt[target] >= 0 ? mReadyAt[target] : now;
+            saved = Math.min(now, readyAt) - mLoadIssuedAt[target];
+        }
+        mPredictor.recordDetection(hit, saved);
+        // From now on it is loaded because it was tracked
+        mPreloaded[target] = false;
+    }
+
+    // Preloads the most likely next target while a decoder is free
+    private void preloadPredicted() {
+        if (!mDecoderManager.hasFreeDecoder())
+            return;
+
+        for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
+            mNotPreloadable[i] = mVideoPlayerHelper[i] == null || mMovieName[i].isEmpty()
+                    || mLoadFailed[i] || mDecoderManager.isLoaded(i);
+        }
+        int target = mPredictor.predictNext(mNotPreloadable);
+        if (target >= 0 && mDecoderManager.preload(target))
+            mPreloaded[target] = true;
+    }
+
+    // The detection statistics to keep between sessions, only call these
+    // while the GL thread is not rendering
+    public String savePredictions() {
+        return mPredictor.save();
+    }
+
+    public boolean restorePredictions(String saved) {
+        return mPredictor.restore(saved);
+    }
+
+    // Accumulates the time the GL thread spent in the media calls of a frame
+    // and logs the average and worst case every MEDIA_STATS_FRAMES frames
+    private void updateMediaStats(long mediaNanos) {
+        mMediaBlockedNanos += mediaNanos;
+        mGlIssued += mGl.getIssuedCount();
+        mGlSuppressed += mGl.getSuppressedCount();
+        if (mediaNanos > mMediaBlockedMaxNanos)
+            mMediaBlockedMaxNanos = mediaNanos;
+
+        if (++mMediaStatsFrames < MEDIA_STATS_FRAMES)
+            return;
+
+        Log.d(TAG, "Media calls blocked the GL thread " + mMediaBlockedNanos / mMediaStatsFrames / 1000
+                + " us per frame on average, " + mMediaBlockedMaxNanos / 1000 + " us at most ("
+                + (ASYNC_MEDIA_COMMANDS ? "async" : "sync") + " commands)");
+        Log.d(TAG, "Preloaded " + (int) (mPredictor.getHitRate() * 100) + "% of "
+                + mPredictor.getDetectionCount() + " detections, saving "
+                + mPredictor.getAverageSavedMillis() + " ms to the first frame on average");
+        Log.d(TAG, mPrepareScheduler.getPrepareCount() + " prepares waited "
+                + mPrepareScheduler.getAverageWaitMillis() + " ms on average ("
+                + mPrepareScheduler.getMaxWaitMillis() + " ms at most) and took "
+                + mPrepareScheduler.getAveragePrepareMillis() + " ms on average ("
+                + mPrepareScheduler.getMaxPrepareMillis() + " ms at most), "
+                + mPrepareScheduler.getTimeoutCount() + " timed out");
+        for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
+            MediaPlayerHelper helper = mVideoPlayerHelper[i];
+            if (helper != null && helper.getResumeCount() > 0)
+                Log.d(TAG, mMovieName[i] + " resumed " + helper.getResumeCount() + " times after "
+                        + helper.getAverageResumeLatencyMillis() + " ms on average ("
+                        + (helper.isSeekingToPreviousSync() ? "previous sync" : "exact")
+                        + " seeks)");
         }
+        Log.d(TAG, "GL state calls per frame: " + mGlIssued / mMediaStatsFrames + " issued, "
+                + mGlSuppressed / mMediaStatsFrames + " dropped as redundant");
+        mMediaBlockedNanos = 0;
+        mMediaBlockedMaxNanos = 0;
+        mMediaStatsFrames = 0;
+        mGlIssued = 0;
+        mGlSuppressed = 0;
     }
 
     void initRendering() {
@@ -286,23 +588,23 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
                 : 1.0f);
 
         // Now generate the OpenGL texture objects and add settings
+        // Here we create the textures for the keyframe and for all the
+        // icons, a texture shared by several targets only once
+        // The GL textures of a lost context are gone
+        Set<Texture> uploaded = Collections.newSetFromMap(new IdentityHashMap<Texture, Boolean>());
         for (Texture t : mTextures) {
-            // Here we create the textures for the keyframe
-            // and for all the icons
-            GLES20.glGenTextures(1, t.mTextureID, 0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, t.mTextureID[0]);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                    GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                    GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                    GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                    GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
-                    t.mWidth, t.mHeight, 0, GLES20.GL_RGBA,
-                    GLES20.GL_UNSIGNED_BYTE, t.mData);
+            // Regions of an atlas come with it
+            Texture owner = t.mAtlas != null ? t.mAtlas : t;
+            if (uploaded.add(owner)) {
+                owner.setUploaded(false);
+                uploadTexture(owner);
+            }
         }
+        Texture missing = Texture.createPlaceholder();
+        missing.mName = "missing";
+        uploadTexture(missing);
+        mTargets.setMissingTexture(missing);
+        Log.d(TAG, describeTextureMemory());
 
         // Now we create the texture for the video data from the movie
         // IMPORTANT:
@@ -321,97 +623,55 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         }
 
         // The first shader is the one that will display the video data of the
-        // movie
-        // (it is aware of the GL_TEXTURE_EXTERNAL_OES extension)
-        videoPlaybackShaderID = SampleUtils.createProgramFromShaderSrc(
-                VideoShader.VIDEO_VERTEX_SHADER,
-                VideoShader.VIDEO_FRAGMENT_SHADER);
-        videoPlaybackVertexHandle = GLES20.glGetAttribLocation(
-                videoPlaybackShaderID, "vertexPosition");
-        videoPlaybackNormalHandle = GLES20.glGetAttribLocation(
-                videoPlaybackShaderID, "vertexNormal");
-        videoPlaybackTexCoordHandle = GLES20.glGetAttribLocation(
-                videoPlaybackShaderID, "vertexTexCoord");
-        videoPlaybackMVPMatrixHandle = GLES20.glGetUniformLocation(
-                videoPlaybackShaderID, "modelViewProjectionMatrix");
-        videoPlaybackTexSamplerOESHandle = GLES20.glGetUniformLocation(
-                videoPlaybackShaderID, "texSamplerOES");
-
-        // This is a simpler shader with regular 2D textures
-        keyframeShaderID = SampleUtils.createProgramFromShaderSrc(
-                FrameShader.FRAME_VERTEX_SHADER,
-                FrameShader.FRAME_FRAGMENT_SHADER);
-        keyframeVertexHandle = GLES20.glGetAttribLocation(keyframeShaderID,
-                "vertexPosition");
-        keyframeNormalHandle = GLES20.glGetAttribLocation(keyframeShaderID,
-                "vertexNormal");
-        keyframeTexCoordHandle = GLES20.glGetAttribLocation(keyframeShaderID,
-                "vertexTexCoord");
-        keyframeMVPMatrixHandle = GLES20.glGetUniformLocation(keyframeShaderID,
-                "modelViewProjectionMatrix");
-        keyframeTexSampler2DHandle = GLES20.glGetUniformLocation(
-                keyframeShaderID, "texSampler2D");
+        // movie (it is aware of the GL_TEXTURE_EXTERNAL_OES extension). The
+        // others are simpler shaders with regular 2D textures, the second one
+        // for textures with their alpha in a second texture.
+        mKeyframeProgram = QuadProgram.create(FrameShader.FRAME_VERTEX_SHADER,
+                FrameShader.FRAME_FRAGMENT_SHADER, "texSampler2D");
+        mTargets.setPrograms(
+                QuadProgram.create(VideoShader.VIDEO_VERTEX_SHADER,
+                        VideoShader.VIDEO_FRAGMENT_SHADER, "texSamplerOES"),
+                mKeyframeProgram,
+                QuadProgram.create(FrameShader.FRAME_VERTEX_SHADER,
+                        FrameShader.FRAME_SPLIT_ALPHA_FRAGMENT_SHADER, "texSampler2D"));
 
         for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
             keyframeQuadAspectRatio[i] = (float) mTextures
-                    .get(0).mHeight / (float) mTextures.get(0).mWidth;
+                    .get(i).mHeight / (float) mTextures.get(i).mWidth;
         }
 //        keyframeQuadAspectRatio[MainActivity.KFC] = (float) mTextures
 //                .get(0).mHeight / (float) mTextures.get(0).mWidth;
 //        keyframeQuadAspectRatio[MainActivity.CHIPS] = (float) mTextures.get(1).mHeight
 //                / (float) mTextures.get(1).mWidth;
 
-        quadVertices = fillBuffer(quadVerticesArray);
-        quadTexCoords = fillBuffer(quadTexCoordsArray);
-        quadIndices = fillBuffer(quadIndicesArray);
-        quadNormals = fillBuffer(quadNormalsArray);
-        videoBackgroundTex = new GLTextureUnit();
-    }
-
-    private Buffer fillBuffer(double[] array) {
-        // Convert to floats because OpenGL doesnt work on doubles, and manually
-        // casting each input value would take too much time.
-        ByteBuffer bb = ByteBuffer.allocateDirect(4 * array.length); // each
-        // float
-        // takes 4
-        // bytes
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        for (double d : array)
-            bb.putFloat((float) d);
-        bb.rewind();
-
-        return bb;
-
-    }
-
-
-    private Buffer fillBuffer(short[] array) {
-        ByteBuffer bb = ByteBuffer.allocateDirect(2 * array.length); // each
-        // short
-        // takes 2
-        // bytes
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        for (short s : array)
-            bb.putShort(s);
-        bb.rewind();
-
-        return bb;
+        // A new context starts from the default state
+        mGl.invalidate();
 
+        // Buffer objects are lost together with the context, so they are
+        // created again here
+        mQuad.upload(mGl);
+        videoBackgroundTex = new GLTextureUnit();
     }
 
     void renderFrame() {
         // Clear color and depth buffer
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        mGl.resetCounters();
+
+        uploadPosterFrames();
+        uploadLoadedTextures();
 
         // Get the state from Vuforia and mark the beginning of a rendering
         // section
         State state = Renderer.getInstance().begin();
+        // Vuforia and the uploads above change the GL state behind the cache
+        mGl.invalidate();
 
         // Explicitly render the Video Background
 //        Renderer.getInstance().drawVideoBackground();
 
         renderVideoBackground();
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        mGl.glEnable(GLES20.GL_DEPTH_TEST);
 
         // Set the viewport
         int[] viewport = mAppSession.getViewport();
@@ -423,19 +683,24 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         // reflected as well,
         // therefore standard counter clockwise face culling will result in
         // "inside out" models.
-        GLES20.glEnable(GLES20.GL_CULL_FACE);
+        mGl.glEnable(GLES20.GL_CULL_FACE);
         GLES20.glCullFace(GLES20.GL_BACK);
         if (Renderer.getInstance().getVideoBackgroundConfig().getReflection() == VIDEO_BACKGROUND_REFLECTION.VIDEO_BACKGROUND_REFLECTION_ON)
             GLES20.glFrontFace(GLES20.GL_CW); // Front camera
         else
             GLES20.glFrontFace(GLES20.GL_CCW); // Back camera
 
-        float temp[] = {0.0f, 0.0f, 0.0f};
         for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
             isTracking[i] = false;
-            targetPositiveDimensions[i].setData(temp);
+            targetPositiveDimensions[i].setData(mZeroDimensions);
         }
 
+        mTargets.beginFrame(mAppSession.getProjectionMatrix().getData());
+
+        // The Vuforia getters below return new wrappers and arrays across JNI
+        // on every call, for the trackable results, their poses, targets, names
+        // and sizes. They are the only allocations left in a steady state frame,
+        // the drawing in mTargets allocates nothing (see TargetDrawerTest).
         // Did we find any trackables this frame?
         for (int tIdx = 0; tIdx < state.getNumTrackableResults(); tIdx++) {
             // Get the trackable:
@@ -461,283 +726,28 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
 //            else
 //                currentTarget = MainActivity.CHIPS;
 
-            modelViewMatrix[currentTarget] = Tool
-                    .convertPose2GLMatrix(trackableResult.getPose());
+            // The pose is converted only once per trackable, straight into
+            // the scratch state that all the draws below work on
+            mScratch.setPose34(currentTarget, trackableResult.getPose().getData());
 
             isTracking[currentTarget] = true;
 
-            targetPositiveDimensions[currentTarget] = imageTarget.getSize();
-
             // The pose delivers the center of the target, thus the dimensions
             // go from -width/2 to width/2, same for height
-            temp[0] = targetPositiveDimensions[currentTarget].getData()[0] / 2.0f;
-            temp[1] = targetPositiveDimensions[currentTarget].getData()[1] / 2.0f;
-            targetPositiveDimensions[currentTarget].setData(temp);
-
-            // If the movie is ready to start playing or it has reached the end
-            // of playback we render the keyframe
-            if ((currentStatus[currentTarget] == MediaState.READY)
-                    || (currentStatus[currentTarget] == MediaState.REACHED_END)
-                    || (currentStatus[currentTarget] == MediaState.NOT_READY)
-                    || (currentStatus[currentTarget] == MediaState.ERROR)) {
-                float[] modelViewMatrixKeyframe = Tool.convertPose2GLMatrix(
-                        trackableResult.getPose()).getData();
-                float[] modelViewProjectionKeyframe = new float[16];
-                // Matrix.translateM(modelViewMatrixKeyframe, 0, 0.0f, 0.0f,
-                // targetPositiveDimensions[currentTarget].getData()[0]);
-
-                // Here we use the aspect ratio of the keyframe since it
-                // is likely that it is not a perfect square
-
-                float ratio = 1.0f;
-                if (mTextures.get(currentTarget).mSuccess)
-                    ratio = keyframeQuadAspectRatio[currentTarget];
-                else
-                    ratio = targetPositiveDimensions[currentTarget].getData()[1]
-                            / targetPositiveDimensions[currentTarget].getData()[0];
-
-                Matrix.scaleM(modelViewMatrixKeyframe, 0,
-                        targetPositiveDimensions[currentTarget].getData()[0],
-                        targetPositiveDimensions[currentTarget].getData()[0]
-                                * ratio,
-                        targetPositiveDimensions[currentTarget].getData()[0]);
-                Matrix.multiplyMM(modelViewProjectionKeyframe, 0,
-                        mAppSession.getProjectionMatrix().getData(), 0,
-                        modelViewMatrixKeyframe, 0);
-
-                //enable blending
-                GLES20.glEnable(GLES20.GL_BLEND);
-                GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
-                GLES20.glUseProgram(keyframeShaderID);
-
-                // Prepare for rendering the keyframe
-                GLES20.glVertexAttribPointer(keyframeVertexHandle, 3,
-                        GLES20.GL_FLOAT, false, 0, quadVertices);
-                GLES20.glVertexAttribPointer(keyframeNormalHandle, 3,
-                        GLES20.GL_FLOAT, false, 0, quadNormals);
-                GLES20.glVertexAttribPointer(keyframeTexCoordHandle, 2,
-                        GLES20.GL_FLOAT, false, 0, quadTexCoords);
-
-                GLES20.glEnableVertexAttribArray(keyframeVertexHandle);
-                GLES20.glEnableVertexAttribArray(keyframeNormalHandle);
-                GLES20.glEnableVertexAttribArray(keyframeTexCoordHandle);
-
-                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-
-                // The first loaded texture from the assets folder is the
-                // keyframe
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                        mTextures.get(currentTarget).mTextureID[0]);
-                GLES20.glUniformMatrix4fv(keyframeMVPMatrixHandle, 1, false,
-                        modelViewProjectionKeyframe, 0);
-                GLES20.glUniform1i(keyframeTexSampler2DHandle, 0);
-
-                // Render
-                GLES20.glDrawElements(GLES20.GL_TRIANGLES, NUM_QUAD_INDEX,
-                        GLES20.GL_UNSIGNED_SHORT, quadIndices);
-
-                GLES20.glDisableVertexAttribArray(keyframeVertexHandle);
-                GLES20.glDisableVertexAttribArray(keyframeNormalHandle);
-                GLES20.glDisableVertexAttribArray(keyframeTexCoordHandle);
-
-                GLES20.glUseProgram(0);
-                GLES20.glDisable(GLES20.GL_BLEND);
-            } else
-            // In any other case, such as playing or paused, we render
-            // the actual contents
-            {
-                float[] modelViewMatrixVideo = Tool.convertPose2GLMatrix(
-                        trackableResult.getPose()).getData();
-                float[] modelViewProjectionVideo = new float[16];
-                // Matrix.translateM(modelViewMatrixVideo, 0, 0.0f, 0.0f,
-                // targetPositiveDimensions[currentTarget].getData()[0]);
-
-                // Here we use the aspect ratio of the video frame
-                Matrix.scaleM(modelViewMatrixVideo, 0,
-                        targetPositiveDimensions[currentTarget].getData()[0],
-                        targetPositiveDimensions[currentTarget].getData()[0]
-                                * videoQuadAspectRatio[currentTarget],
-                        targetPositiveDimensions[currentTarget].getData()[0]);
-                Matrix.multiplyMM(modelViewProjectionVideo, 0,
-                        mAppSession.getProjectionMatrix().getData(), 0,
-                        modelViewMatrixVideo, 0);
-
-                //Enable blending
-                GLES20.glEnable(GLES20.GL_BLEND);
-                GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
-                GLES20.glUseProgram(videoPlaybackShaderID);
-
-                // Prepare for rendering the keyframe
-                GLES20.glVertexAttribPointer(videoPlaybackVertexHandle, 3,
-                        GLES20.GL_FLOAT, false, 0, quadVertices);
-                GLES20.glVertexAttribPointer(videoPlaybackNormalHandle, 3,
-                        GLES20.GL_FLOAT, false, 0, quadNormals);
-
-
-                GLES20.glVertexAttribPointer(videoPlaybackTexCoordHandle,
-                        2, GLES20.GL_FLOAT, false, 0,
-                        fillBuffer(videoQuadTextureCoordsTransformed[currentTarget]));
-//                if (imageTarget.getName().compareTo("stones") == 0) {
-////                    GLES20.glVertexAttribPointer(videoPlaybackTexCoordHandle,
-////                            2, GLES20.GL_FLOAT, false, 0,
-////                            fillBuffer(videoQuadTextureCoordsTransformedStones));
-//                    GLES20.glVertexAttribPointer(videoPlaybackTexCoordHandle,
-//                            2, GLES20.GL_FLOAT, false, 0,
-//                            fillBuffer(videoQuadTextureCoordsTransformed[0]));
-//                } else {
-////                    GLES20.glVertexAttribPointer(videoPlaybackTexCoordHandle,
-////                            2, GLES20.GL_FLOAT, false, 0,
-////                            fillBuffer(videoQuadTextureCoordsTransformedChips));
-//                    GLES20.glVertexAttribPointer(videoPlaybackTexCoordHandle,
-//                            2, GLES20.GL_FLOAT, false, 0,
-//                            fillBuffer(videoQuadTextureCoordsTransformed[1]));
-//                }
-                GLES20.glEnableVertexAttribArray(videoPlaybackVertexHandle);
-                GLES20.glEnableVertexAttribArray(videoPlaybackNormalHandle);
-                GLES20.glEnableVertexAttribArray(videoPlaybackTexCoordHandle);
-
-                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-
-                // IMPORTANT:
-                // Notice here that the texture that we are binding is not the
-                // typical GL_TEXTURE_2D but instead the GL_TEXTURE_EXTERNAL_OES
-                GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
-                        videoPlaybackTextureID[currentTarget]);
-                GLES20.glUniformMatrix4fv(videoPlaybackMVPMatrixHandle, 1,
-                        false, modelViewProjectionVideo, 0);
-                GLES20.glUniform1i(videoPlaybackTexSamplerOESHandle, 0);
-
-                // Render
-                GLES20.glDrawElements(GLES20.GL_TRIANGLES, NUM_QUAD_INDEX,
-                        GLES20.GL_UNSIGNED_SHORT, quadIndices);
-
-                GLES20.glDisableVertexAttribArray(videoPlaybackVertexHandle);
-                GLES20.glDisableVertexAttribArray(videoPlaybackNormalHandle);
-                GLES20.glDisableVertexAttribArray(videoPlaybackTexCoordHandle);
-
-                GLES20.glUseProgram(0);
-                GLES20.glDisable(GLES20.GL_BLEND);
-            }
-
-            // The following section renders the icons. The actual textures used
-            // are loaded from the assets folder
-
-            if ((currentStatus[currentTarget] == MediaState.READY)
-                    || (currentStatus[currentTarget] == MediaState.REACHED_END)
-                    || (currentStatus[currentTarget] == MediaState.PAUSED)
-                    || (currentStatus[currentTarget] == MediaState.NOT_READY)
-                    || (currentStatus[currentTarget] == MediaState.ERROR)) {
-                // If the movie is ready to be played, pause, has reached end or
-                // is not
-                // ready then we display one of the icons
-                float[] modelViewMatrixButton = Tool.convertPose2GLMatrix(
-                        trackableResult.getPose()).getData();
-                float[] modelViewProjectionButton = new float[16];
-
-                GLES20.glDepthFunc(GLES20.GL_LEQUAL);
-
-                GLES20.glEnable(GLES20.GL_BLEND);
-                GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA,
-                        GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
-                // The inacuracy of the rendering process in some devices means
-                // that
-                // even if we use the "Less or Equal" version of the depth
-                // function
-                // it is likely that we will get ugly artifacts
-                // That is the translation in the Z direction is slightly
-                // different
-                // Another posibility would be to use a depth func "ALWAYS" but
-                // that is typically not a good idea
-                Matrix
-                        .translateM(
-                                modelViewMatrixButton,
-                                0,
-                                0.0f,
-                                0.0f,
-                                targetPositiveDimensions[currentTarget].getData()[1] / 10.98f);
-                Matrix
-                        .scaleM(
-                                modelViewMatrixButton,
-                                0,
-                                (targetPositiveDimensions[currentTarget].getData()[1] / 2.0f),
-                                (targetPositiveDimensions[currentTarget].getData()[1] / 2.0f),
-                                (targetPositiveDimensions[currentTarget].getData()[1] / 2.0f));
-                Matrix.multiplyMM(modelViewProjectionButton, 0,
-                        mAppSession.getProjectionMatrix().getData(), 0,
-                        modelViewMatrixButton, 0);
-
-                GLES20.glUseProgram(keyframeShaderID);
-
-                GLES20.glVertexAttribPointer(keyframeVertexHandle, 3,
-                        GLES20.GL_FLOAT, false, 0, quadVertices);
-                GLES20.glVertexAttribPointer(keyframeNormalHandle, 3,
-                        GLES20.GL_FLOAT, false, 0, quadNormals);
-                GLES20.glVertexAttribPointer(keyframeTexCoordHandle, 2,
-                        GLES20.GL_FLOAT, false, 0, quadTexCoords);
-
-                GLES20.glEnableVertexAttribArray(keyframeVertexHandle);
-                GLES20.glEnableVertexAttribArray(keyframeNormalHandle);
-                GLES20.glEnableVertexAttribArray(keyframeTexCoordHandle);
-
-                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-
-                // Depending on the status in which we are we choose the
-                // appropriate
-                // texture to display. Notice that unlike the video these are
-                // regular
-                // GL_TEXTURE_2D textures
-                switch (currentStatus[currentTarget]) {
-                    case READY:
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                                mTextures.get(2).mTextureID[0]);
-                        break;
-                    case REACHED_END:
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                                mTextures.get(2).mTextureID[0]);
-                        break;
-                    case PAUSED:
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                                mTextures.get(2).mTextureID[0]);
-                        break;
-                    case NOT_READY:
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                                mTextures.get(3).mTextureID[0]);
-                        break;
-                    case ERROR:
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                                mTextures.get(4).mTextureID[0]);
-                        break;
-                    default:
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                                mTextures.get(3).mTextureID[0]);
-                        break;
-                }
-                GLES20.glUniformMatrix4fv(keyframeMVPMatrixHandle, 1, false,
-                        modelViewProjectionButton, 0);
-                GLES20.glUniform1i(keyframeTexSampler2DHandle, 0);
-
-                // Render
-                GLES20.glDrawElements(GLES20.GL_TRIANGLES, NUM_QUAD_INDEX,
-                        GLES20.GL_UNSIGNED_SHORT, quadIndices);
+            float[] targetSize = imageTarget.getSize().getData();
+            float halfWidth = targetSize[0] / 2.0f;
+            float halfHeight = targetSize[1] / 2.0f;
+            mHalfDimensions[0] = halfWidth;
+            mHalfDimensions[1] = halfHeight;
+            targetPositiveDimensions[currentTarget].setData(mHalfDimensions);
 
-                GLES20.glDisableVertexAttribArray(keyframeVertexHandle);
-                GLES20.glDisableVertexAttribArray(keyframeNormalHandle);
-                GLES20.glDisableVertexAttribArray(keyframeTexCoordHandle);
-
-                GLES20.glUseProgram(0);
-
-                // Finally we return the depth func to its original state
-                GLES20.glDepthFunc(GLES20.GL_LESS);
-                GLES20.glDisable(GLES20.GL_BLEND);
-            }
+            mTargets.drawTarget(currentTarget, currentStatus[currentTarget], halfWidth,
+                    halfHeight);
 
             SampleUtils.checkGLError("VideoPlayback renderFrame");
         }
 
-        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+        mTargets.endFrame();
 
         Renderer.getInstance().end();
 
@@ -749,6 +759,7 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         // Vec3F lineStart = new Vec3F();
         // Vec3F lineEnd = new Vec3F();
 
+        modelViewMatrix[target].setData(mScratch.getPose(target));
         DisplayMetrics metrics = new DisplayMetrics();
         mActivity.getWindowManager().getDefaultDisplay().getMetrics(metrics);
         intersection = SampleMath.getPointToPlaneIntersection(SampleMath
@@ -771,8 +782,30 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
             return false;
     }
 
-    void setVideoDimensions(int target, float videoWidth, float videoHeight,
-                            float[] textureCoordMatrix) {
+    // Sizes the video quad and the decoder estimate from the file itself, so
+    // that neither has to wait for the player. Called before rendering starts.
+    public void setVideoInfo(int target, Mp4Info info) {
+        mVideoInfo[target] = info;
+        if (info.getWidth() > 0 && info.getHeight() > 0) {
+            setVideoDimensions(target, info.getWidth(), info.getHeight());
+            mDecoderManager.setFootprint(target, DecoderManager.estimateFootprint(
+                    info.getWidth(), info.getHeight(), DECODER_BUFFER_COUNT));
+        }
+    }
+
+    // The keyframe before the position in milliseconds when it is within
+    // FAST_SEEK_TOLERANCE_MILLIS, the position itself otherwise. Rounded up,
+    // so that a seek to the previous keyframe does not land on the one before.
+    private int snapToKeyframe(int target, int position) {
+        Mp4Info info = mVideoInfo[target];
+        if (!FAST_SEEK || info == null || position <= 0)
+            return position;
+        long snappedUs = info.getSyncSamples().snapToPreviousSync(position * 1000L,
+                FAST_SEEK_TOLERANCE_MILLIS * 1000L);
+        return (int) ((snappedUs + 999) / 1000);
+    }
+
+    void setVideoDimensions(int target, float videoWidth, float videoHeight) {
         // The quad originaly comes as a perfect square, however, the video
         // often has a different aspect ration such as 4:3 or 16:9,
         // To mitigate this we have two options:
@@ -782,164 +815,237 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         // the height down.
         // (see the render call in renderFrame)
         videoQuadAspectRatio[target] = videoHeight / videoWidth;
+    }
+
+    // Copies the published state of a target whose state or size changed,
+    // called on the GL thread only
+    private void applyMediaState(int target) {
+        MediaSnapshot snapshot = mVideoPlayerHelper[target].getSnapshot();
+        currentStatus[target] = snapshot.state;
+        // An unload publishes NOT_READY once it recorded the position
+        if (snapshot.state == MediaState.NOT_READY)
+            takeUnloadPosition(target);
+        if (snapshot.isReady() && mReadyAt[target] < 0)
+            mReadyAt[target] = SystemClock.uptimeMillis();
+        // Prepared or failed, either way the next prepare can start
+        if (snapshot.state != MediaState.NOT_READY)
+            mPrepareScheduler.onPrepared(target);
+        if (snapshot.isPlayableOnTexture() && snapshot.isReady()) {
+            setVideoDimensions(target, snapshot.width, snapshot.height);
+            if (snapshot.width > 0 && snapshot.height > 0)
+                mDecoderManager.setFootprint(target, DecoderManager.estimateFootprint(
+                        snapshot.width, snapshot.height, DECODER_BUFFER_COUNT));
+        }
+        // The helper unloads itself on errors, give the decoder slot back
+        if (snapshot.state == MediaState.ERROR) {
+            mDecoderManager.invalidate(target);
+            mLoadFailed[target] = true;
+        }
+    }
 
-        float mtx[] = textureCoordMatrix;
-        float tempUVMultRes[] = new float[2];
-
-
-        tempUVMultRes = uvMultMat4f(
-                videoQuadTextureCoordsTransformed[target][0],
-                videoQuadTextureCoordsTransformed[target][1],
-                videoQuadTextureCoords[0], videoQuadTextureCoords[1], mtx);
-        videoQuadTextureCoordsTransformed[target][0] = tempUVMultRes[0];
-        videoQuadTextureCoordsTransformed[target][1] = tempUVMultRes[1];
-        tempUVMultRes = uvMultMat4f(
-                videoQuadTextureCoordsTransformed[target][2],
-                videoQuadTextureCoordsTransformed[target][3],
-                videoQuadTextureCoords[2], videoQuadTextureCoords[3], mtx);
-        videoQuadTextureCoordsTransformed[target][2] = tempUVMultRes[0];
-        videoQuadTextureCoordsTransformed[target][3] = tempUVMultRes[1];
-        tempUVMultRes = uvMultMat4f(
-                videoQuadTextureCoordsTransformed[target][4],
-                videoQuadTextureCoordsTransformed[target][5],
-                videoQuadTextureCoords[4], videoQuadTextureCoords[5], mtx);
-        videoQuadTextureCoordsTransformed[target][4] = tempUVMultRes[0];
-        videoQuadTextureCoordsTransformed[target][5] = tempUVMultRes[1];
-        tempUVMultRes = uvMultMat4f(
-                videoQuadTextureCoordsTransformed[target][6],
-                videoQuadTextureCoordsTransformed[target][7],
-                videoQuadTextureCoords[6], videoQuadTextureCoords[7], mtx);
-        videoQuadTextureCoordsTransformed[target][6] = tempUVMultRes[0];
-        videoQuadTextureCoordsTransformed[target][7] = tempUVMultRes[1];
-
-//        if (target == MainActivity.STONES) {
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedStones[0],
-//                    videoQuadTextureCoordsTransformedStones[1],
-//                    videoQuadTextureCoords[0], videoQuadTextureCoords[1], mtx);
-//            videoQuadTextureCoordsTransformedStones[0] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedStones[1] = tempUVMultRes[1];
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedStones[2],
-//                    videoQuadTextureCoordsTransformedStones[3],
-//                    videoQuadTextureCoords[2], videoQuadTextureCoords[3], mtx);
-//            videoQuadTextureCoordsTransformedStones[2] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedStones[3] = tempUVMultRes[1];
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedStones[4],
-//                    videoQuadTextureCoordsTransformedStones[5],
-//                    videoQuadTextureCoords[4], videoQuadTextureCoords[5], mtx);
-//            videoQuadTextureCoordsTransformedStones[4] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedStones[5] = tempUVMultRes[1];
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedStones[6],
-//                    videoQuadTextureCoordsTransformedStones[7],
-//                    videoQuadTextureCoords[6], videoQuadTextureCoords[7], mtx);
-//            videoQuadTextureCoordsTransformedStones[6] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedStones[7] = tempUVMultRes[1];
-//        } else if (target == MainActivity.CHIPS) {
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedChips[0],
-//                    videoQuadTextureCoordsTransformedChips[1],
-//                    videoQuadTextureCoords[0], videoQuadTextureCoords[1], mtx);
-//            videoQuadTextureCoordsTransformedChips[0] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedChips[1] = tempUVMultRes[1];
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedChips[2],
-//                    videoQuadTextureCoordsTransformedChips[3],
-//                    videoQuadTextureCoords[2], videoQuadTextureCoords[3], mtx);
-//            videoQuadTextureCoordsTransformedChips[2] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedChips[3] = tempUVMultRes[1];
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedChips[4],
-//                    videoQuadTextureCoordsTransformedChips[5],
-//                    videoQuadTextureCoords[4], videoQuadTextureCoords[5], mtx);
-//            videoQuadTextureCoordsTransformedChips[4] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedChips[5] = tempUVMultRes[1];
-//            tempUVMultRes = uvMultMat4f(
-//                    videoQuadTextureCoordsTransformedChips[6],
-//                    videoQuadTextureCoordsTransformedChips[7],
-//                    videoQuadTextureCoords[6], videoQuadTextureCoords[7], mtx);
-//            videoQuadTextureCoordsTransformedChips[6] = tempUVMultRes[0];
-//            videoQuadTextureCoordsTransformedChips[7] = tempUVMultRes[1];
-//        }
-
-        // textureCoordMatrix = mtx;
+    @Override
+    public void onMediaStateChanged(MediaPlayerHelper helper, MediaState state) {
+        markChanged(helper);
     }
 
-    float[] uvMultMat4f(float transformedU, float transformedV, float u,
-                        float v, float[] pMat) {
-        float x = pMat[0] * u + pMat[4] * v /* + pMat[ 8]*0.f */ + pMat[12]
-                * 1.f;
-        float y = pMat[1] * u + pMat[5] * v /* + pMat[ 9]*0.f */ + pMat[13]
-                * 1.f;
-        // float z = pMat[2]*u + pMat[6]*v + pMat[10]*0.f + pMat[14]*1.f; // We
-        // dont need z and w so we comment them out
-        // float w = pMat[3]*u + pMat[7]*v + pMat[11]*0.f + pMat[15]*1.f;
-
-        float result[] = new float[2];
-        // transformedU = x;
-        // transformedV = y;
-        result[0] = x;
-        result[1] = y;
-        return result;
+    @Override
+    public void onVideoSizeChanged(MediaPlayerHelper helper, int width, int height) {
+        markChanged(helper);
     }
 
-    void setStatus(int target, int value) {
-        // Transform the value passed from java to our own values
-        switch (value) {
-            case 0:
-                currentStatus[target] = MediaState.REACHED_END;
-                break;
-            case 1:
-                currentStatus[target] = MediaState.PAUSED;
-                break;
-            case 2:
-                currentStatus[target] = MediaState.STOPPED;
-                break;
-            case 3:
-                currentStatus[target] = MediaState.PLAYING;
-                break;
-            case 4:
-                currentStatus[target] = MediaState.READY;
-                break;
-            case 5:
-                currentStatus[target] = MediaState.NOT_READY;
-                break;
-            case 6:
-                currentStatus[target] = MediaState.ERROR;
-                break;
-            default:
-                currentStatus[target] = MediaState.NOT_READY;
-                break;
+    private void markChanged(MediaPlayerHelper helper) {
+        for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
+            if (mVideoPlayerHelper[i] == helper)
+                markChanged(i);
         }
     }
 
+    private void markChanged(int target) {
+        int changed;
+        do {
+            changed = mChangedTargets.get();
+        } while (!mChangedTargets.compareAndSet(changed, changed | (1 << target)));
+    }
+
     boolean isTracking(int target) {
         return isTracking[target];
     }
 
-    public void setTextures(Vector<Texture> textures) {
-        mTextures = textures;
+    // Replaces the keyframe of the target with a frame of its video, from any
+    // thread, the texture is uploaded with the next frame
+    public void setPosterFrame(int target, Texture texture) {
+        mPendingPosterFrames.set(target, texture);
     }
 
+    private void uploadPosterFrames() {
+        boolean swapped = false;
+        for (int i = 0; i < MainActivity.NUM_TARGETS; i++) {
+            Texture texture = mPendingPosterFrames.getAndSet(i, null);
+            if (texture == null)
+                continue;
+            uploadTexture(texture);
+            Texture previous = mTextures.set(i, texture);
+            keyframeQuadAspectRatio[i] = (float) texture.mHeight / (float) texture.mWidth;
+
+            // A shared texture is only deleted once the cache evicts it, the
+            // placeholder once no slot shows it any more
+            if ((mTextureCache == null || !mTextureCache.release(previous))
+                    && !mTextures.contains(previous))
+                deleteTexture(previous);
+            swapped = true;
+        }
+        if (mTextureCache != null) {
+            List<Texture> evicted = mTargets.drainEvicted(mTextureCache);
+            for (int i = 0; i < evicted.size(); i++) {
+                deleteTexture(evicted.get(i));
+            }
+        }
+        if (swapped)
+            Log.d(TAG, describeTextureMemory());
+    }
+
+    private void uploadLoadedTextures() {
+        if (mTextureLoader == null)
+            return;
+        int uploaded = mTextureLoader.uploadPending(mLoadedTextureUploader,
+                TEXTURE_UPLOAD_BUDGET_NANOS);
+        if (uploaded > 0 && mTextureLoader.getPendingCount() == 0)
+            Log.d(TAG, describeTextureMemory());
+    }
+
+    // Puts a texture decoded in the background into its slot, unless the
+    // slot got a texture meanwhile, e.g. a poster frame
+    private void setLoadedTexture(int slot, Texture texture) {
+        Texture previous = mTextures.get(slot);
+        if (previous.mSuccess) {
+            if (mTextureCache == null || !mTextureCache.release(texture))
+                deleteTexture(texture);
+            return;
+        }
+
+        // Regions of an atlas and textures shared between slots are
+        // uploaded with the first of them
+        Texture owner = texture.mAtlas != null ? texture.mAtlas : texture;
+        if (owner.getGpuBytes() == 0)
+            uploadTexture(owner);
+        mTextures.set(slot, texture);
+        if (slot < MainActivity.NUM_TARGETS)
+            keyframeQuadAspectRatio[slot] = (float) texture.mHeight / (float) texture.mWidth;
+
+        // The placeholder is shared by the slots still loading
+        if (!mTextures.contains(previous))
+            deleteTexture(previous);
+    }
+
+    // Uploads the pixels loaded again for a texture in the background, unless
+    // it is not shown any more
+    private void setReloadedTexture(Texture texture, Texture pixels) {
+        mReloading.remove(texture);
+        boolean shown = false;
+        for (Texture t : mTextures)
+            shown |= t == texture || t.mAtlas == texture;
+        if (!shown || texture.getGpuBytes() > 0) {
+            if (pixels != null)
+                pixels.releaseData();
+            return;
+        }
+        if (texture.adoptData(pixels))
+            uploadTexture(texture);
+        else
+            Log.e(TAG, "Failed to reload texture '" + texture.mName + "'");
+    }
+
+    private void deleteTexture(Texture t) {
+        // A region goes with its atlas, which the other regions still use
+        if (t.mAtlas != null)
+            return;
+        GLES20.glDeleteTextures(1, t.mTextureID, 0);
+        if (t.mAlpha != null)
+            GLES20.glDeleteTextures(1, t.mAlpha.mTextureID, 0);
+        t.setUploaded(false);
+        t.releaseData();
+    }
+
+    // The resident pixel bytes of every distinct texture, in Java memory and in GL
+    String describeTextureMemory() {
+        StringBuilder description = new StringBuilder("Texture memory:");
+        Set<Texture> seen = Collections.newSetFromMap(new IdentityHashMap<Texture, Boolean>());
+        long cpuBytes = 0;
+        long gpuBytes = 0;
+        for (Texture region : mTextures) {
+            Texture t = region.mAtlas != null ? region.mAtlas : region;
+            if (!seen.add(t))
+                continue;
+            cpuBytes += t.getCpuBytes();
+            gpuBytes += t.getGpuBytes();
+            description.append("\n  ").append(t.mName).append(": ")
+                    .append(t.getCpuBytes() / 1024).append(" kB cpu, ")
+                    .append(t.getGpuBytes() / 1024).append(" kB gpu");
+        }
+        description.append("\n  total: ").append(cpuBytes / 1024).append(" kB cpu, ")
+                .append(gpuBytes / 1024).append(" kB gpu");
+        return description.toString();
+    }
+
+    // Releases the pixels after the upload if they can be loaded again. If
+    // they were released before, e.g. before the context was lost, they are
+    // loaded again in the background and uploaded once they are back.
+    private void uploadTexture(Texture t) {
+        if (t.mData == null && t.mSource != null) {
+            if (mTextureLoader == null) {
+                if (!t.reloadData())
+                    Log.e(TAG, "Failed to reload texture '" + t.mName + "'");
+            } else {
+                if (mReloading.add(t))
+                    mTextureLoader.reload(t);
+                return;
+            }
+        }
+        uploadImage(t);
+        if (t.mAlpha != null)
+            uploadImage(t.mAlpha);
+        t.setUploaded(true);
+        if (RELEASE_TEXTURE_DATA)
+            t.releaseDataIfReloadable();
+    }
+
+    // Compressed textures are uploaded as they are, see EtcTexture
+    private void uploadImage(Texture t) {
+        GLES20.glGenTextures(1, t.mTextureID, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, t.mTextureID[0]);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        if (t.mCompressedFormat == 0) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
+                    t.mWidth, t.mHeight, 0, GLES20.GL_RGBA,
+                    GLES20.GL_UNSIGNED_BYTE, t.mData);
+        } else if (t.mData != null) {
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, t.mCompressedFormat,
+                    t.mWidth, t.mHeight, 0, t.mData.remaining(), t.mData);
+            SampleUtils.checkGLError("Compressed texture " + t.mName);
+        }
+    }
 
-    private Buffer fillBuffer(float[] array) {
-        // Convert to floats because OpenGL doesnt work on doubles, and manually
-        // casting each input value would take too much time.
-        ByteBuffer bb = ByteBuffer.allocateDirect(4 * array.length); // each
-        // float
-        // takes 4
-        // bytes
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        for (float d : array)
-            bb.putFloat(d);
-        bb.rewind();
+    public void setTextureLoader(TextureLoader loader) {
+        mTextureLoader = loader;
+    }
 
-        return bb;
+    public void setTextureCache(TextureCache cache) {
+        mTextureCache = cache;
+    }
 
+    public void setTextures(Vector<Texture> textures) {
+        mTextures = textures;
+        mTargets.setTextures(textures);
     }
 
+
     private int currentView = VIEW.VIEW_SINGULAR;
     private GLTextureUnit videoBackgroundTex = null;
     private RenderingPrimitives mRenderingPrimitives = null;
@@ -953,6 +1059,8 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
         if (!Renderer.getInstance().updateVideoBackgroundTexture(videoBackgroundTex)) {
             return;
         }
+        // The camera texture was bound behind the cache
+        mGl.invalidate();
         mRenderingPrimitives = Device.getInstance().getRenderingPrimitives();
         Matrix34F matrix34F = mRenderingPrimitives.getVideoBackgroundProjectionMatrix(
                 currentView,
@@ -966,21 +1074,25 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
             float sceneScaleFactor = (float) getSceneScaleFactor();
             Matrix.scaleM(vbProjectionMatrix, 0, sceneScaleFactor, sceneScaleFactor, 1.0f);
         }
-        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-        GLES20.glDisable(GLES20.GL_CULL_FACE);
-        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        mGl.glDisable(GLES20.GL_DEPTH_TEST);
+        mGl.glDisable(GLES20.GL_CULL_FACE);
+        mGl.glDisable(GLES20.GL_SCISSOR_TEST);
         Mesh vbMesh = mRenderingPrimitives.getVideoBackgroundMesh(currentView);
-        GLES20.glUseProgram(keyframeShaderID);
-        GLES20.glVertexAttribPointer(keyframeVertexHandle, 3, GLES20.GL_FLOAT, false, 0, vbMesh.getPositions().asFloatBuffer());
-        GLES20.glVertexAttribPointer(keyframeTexCoordHandle, 2, GLES20.GL_FLOAT, false, 0, vbMesh.getUVs().asFloatBuffer());
+        mGl.glUseProgram(mKeyframeProgram.program);
+        // The mesh is in client memory
+        mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLES20.glVertexAttribPointer(mKeyframeProgram.vertexHandle, 3, GLES20.GL_FLOAT, false, 0, vbMesh.getPositions().asFloatBuffer());
+        GLES20.glVertexAttribPointer(mKeyframeProgram.texCoordHandle, 2, GLES20.GL_FLOAT, false, 0, vbMesh.getUVs().asFloatBuffer());
 
-        GLES20.glUniform1i(keyframeTexSampler2DHandle, vbVideoTextureUnit);
+        GLES20.glUniform1i(mKeyframeProgram.samplerHandle, vbVideoTextureUnit);
+        GLES20.glUniform4f(mKeyframeProgram.texCoordRegionHandle, 0.0f, 0.0f, 1.0f, 1.0f);
 
-        GLES20.glEnableVertexAttribArray(keyframeVertexHandle);
-        GLES20.glEnableVertexAttribArray(keyframeTexCoordHandle);
+        mGl.glEnableVertexAttribArray(mKeyframeProgram.vertexHandle);
+        mGl.glEnableVertexAttribArray(mKeyframeProgram.texCoordHandle);
 
         // Pass the projection matrix to OpenGL
-        GLES20.glUniformMatrix4fv(keyframeMVPMatrixHandle, 1, false, vbProjectionMatrix, 0);
+        GLES20.glUniformMatrix4fv(mKeyframeProgram.mvpMatrixHandle, 1, false, vbProjectionMatrix, 0);
 
 
         // Then, we issue the render call
@@ -988,8 +1100,8 @@ public class VideoRenderer implements GLSurfaceView.Renderer {
                 vbMesh.getTriangles().asShortBuffer());
 
         // Finally, we disable the vertex arrays
-        GLES20.glDisableVertexAttribArray(keyframeVertexHandle);
-        GLES20.glDisableVertexAttribArray(keyframeTexCoordHandle);
+        mGl.glDisableVertexAttribArray(mKeyframeProgram.vertexHandle);
+        mGl.glDisableVertexAttribArray(mKeyframeProgram.texCoordHandle);
 
         SampleUtils.checkGLError("Rendering of the video background failed");
     }
@@ -4,6 +4,10 @@ import android.graphics.SurfaceTexture;
 
 public class VideoShader {
 
+    /**
+     * texCoordMatrix là ma trận biến đổi của SurfaceTexture (getTransformMatrix),
+     * tọa độ texture được biến đổi ngay trên GPU thay vì trên CPU mỗi frame.
+     */
     public static final String VIDEO_VERTEX_SHADER = " \n"
             + "attribute vec4 vertexPosition; \n"
             + "attribute vec4 vertexNormal; \n"
@@ -11,11 +15,13 @@ public class VideoShader {
             + "varying vec2 texCoord; \n"
             + "varying vec4 normal; \n"
             + "uniform mat4 modelViewProjectionMatrix; \n"
+            + "uniform mat4 texCoordMatrix; \n"
             + "\n"
             + "void main() \n"
             + "{ \n"
             + "   gl_Position = modelViewProjectionMatrix * vertexPosition; \n"
-            + "   normal = vertexNormal; \n" + "   texCoord = vertexTexCoord; \n"
+            + "   normal = vertexNormal; \n"
+            + "   texCoord = (texCoordMatrix * vec4(vertexTexCoord, 0.0, 1.0)).xy; \n"
             + "} \n";
 
     /**
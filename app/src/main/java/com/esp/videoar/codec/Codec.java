@@ -0,0 +1,36 @@
+package com.esp.videoar.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The parts of a started MediaCodec decoder the {@link DecodeLoop} uses, so that the loop can
+ * be driven by a fake decoder in the unit tests. None of the calls block.
+ */
+public interface Codec {
+
+    int NO_BUFFER = -1;
+
+    // Filled in by dequeueOutputBuffer()
+    class OutputInfo {
+        public long presentationTimeUs;
+        public boolean endOfStream;
+    }
+
+    // Index of a free input buffer, NO_BUFFER if none is free right now
+    int dequeueInputBuffer();
+
+    ByteBuffer getInputBuffer(int index);
+
+    void queueInputBuffer(int index, int size, long presentationTimeUs);
+
+    void queueEndOfStream(int index);
+
+    // Index of a decoded frame, NO_BUFFER if none is ready right now
+    int dequeueOutputBuffer(OutputInfo info);
+
+    // Renders the frame to the output Surface or drops it, and gives the buffer back
+    void releaseOutputBuffer(int index, boolean render);
+
+    // Drops everything queued and decoded, the indices handed out before become invalid
+    void flush();
+}
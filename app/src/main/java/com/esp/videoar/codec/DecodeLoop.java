@@ -0,0 +1,233 @@
+package com.esp.videoar.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Moves samples from a {@link SampleSource} through a {@link Codec} and presents the decoded
+ * frames against a {@link MediaClock}.
+ *
+ * Every {@link #step()} feeds the decoder whatever input buffers it has free, takes decoded
+ * frames while fewer than outputDepth of them wait to be shown, and renders the frames that
+ * are due. A frame that is more than LATE_US late is dropped if a newer one is already
+ * waiting. Seeks are frame accurate, see {@link SeekPlanner}; the frame at the target is shown
+ * right away, also while paused.
+ *
+ * Not thread safe, all calls have to come from the thread that owns the decoder.
+ */
+public class DecodeLoop {
+
+    // Frames are rendered this much ahead of their time, the SurfaceTexture
+    // only latches them with the next GL frame anyway
+    static final long EARLY_US = 10000;
+    static final long LATE_US = 40000;
+
+    public interface Listener {
+        // The last frame of the track was shown, the clock is paused
+        void onEndOfStream();
+    }
+
+    private final Codec mCodec;
+    private final SampleSource mSource;
+    private final MediaClock mClock;
+    private final SeekPlanner mPlanner = new SeekPlanner();
+    private final Listener mListener;
+    private final Codec.OutputInfo mOutputInfo = new Codec.OutputInfo();
+
+    // The decoded frames waiting for their time, in presentation order
+    private final int[] mPendingIndex;
+    private final long[] mPendingTimeUs;
+    private int mPendingHead = 0;
+    private int mPendingCount = 0;
+
+    private boolean mInputEnded = false;
+    private boolean mOutputEnded = false;
+    private boolean mEndReported = false;
+    private long mLastDecodedUs = -1;
+
+    private int mRenderedFrames = 0;
+    private int mLateFrames = 0;
+
+    public DecodeLoop(Codec codec, SampleSource source, MediaClock clock, int outputDepth,
+                      Listener listener) {
+        mCodec = codec;
+        mSource = source;
+        mClock = clock;
+        mListener = listener;
+        mPendingIndex = new int[outputDepth];
+        mPendingTimeUs = new long[outputDepth];
+
+        // Show the first frame as soon as it is decoded, like a seek to the start
+        mPlanner.plan(0, 0);
+    }
+
+    public void start() {
+        if (mEndReported)
+            seekTo(0);
+        mClock.start();
+    }
+
+    public void pause() {
+        mClock.pause();
+    }
+
+    public boolean isPlaying() {
+        return mClock.isRunning();
+    }
+
+    public void seekTo(long timeUs) {
+        seekTo(timeUs, false);
+    }
+
+    // With previousSync the seek ends at the sync sample before the time
+    // instead, so that no frame has to be decoded only to be dropped
+    public void seekTo(long timeUs, boolean previousSync) {
+        boolean flush;
+        if (previousSync) {
+            mSource.seekTo(timeUs);
+            if (mSource.getSampleTime() >= 0)
+                timeUs = mSource.getSampleTime();
+            mPlanner.plan(timeUs, -1);
+            flush = true;
+        } else {
+            flush = mPlanner.plan(timeUs, mInputEnded ? -1 : mLastDecodedUs);
+            if (flush)
+                mSource.seekTo(timeUs);
+        }
+
+        if (flush) {
+            // The flush gives the pending buffers back, their indices are stale
+            mCodec.flush();
+            mPendingCount = 0;
+            mInputEnded = false;
+            mLastDecodedUs = -1;
+        } else {
+            while (mPendingCount > 0 && mPlanner.shouldDrop(mPendingTimeUs[mPendingHead])) {
+                releasePending(false);
+            }
+        }
+        mOutputEnded = false;
+        mEndReported = false;
+        mClock.setMediaTimeUs(timeUs);
+    }
+
+    // Does whatever can be done without waiting, returns false if nothing
+    public boolean step() {
+        boolean progress = feedInput();
+        progress |= drainOutput();
+        progress |= render();
+
+        if (mOutputEnded && mPendingCount == 0 && !mEndReported) {
+            mEndReported = true;
+            mClock.pause();
+            mListener.onEndOfStream();
+            progress = true;
+        }
+        return progress;
+    }
+
+    // The seek target while seeking, the media time otherwise
+    public long getPositionUs() {
+        return mPlanner.isSeeking() ? mPlanner.getTargetUs() : mClock.getMediaTimeUs();
+    }
+
+    public int getRenderedFrameCount() {
+        return mRenderedFrames;
+    }
+
+    public int getLateFrameCount() {
+        return mLateFrames;
+    }
+
+    public int getSeekDroppedFrameCount() {
+        return mPlanner.getDroppedFrameCount();
+    }
+
+    public int getPendingFrameCount() {
+        return mPendingCount;
+    }
+
+    private boolean feedInput() {
+        boolean progress = false;
+        while (!mInputEnded) {
+            int index = mCodec.dequeueInputBuffer();
+            if (index == Codec.NO_BUFFER)
+                break;
+
+            long timeUs = mSource.getSampleTime();
+            if (timeUs < 0) {
+                mCodec.queueEndOfStream(index);
+                mInputEnded = true;
+            } else {
+                ByteBuffer buffer = mCodec.getInputBuffer(index);
+                int size = mSource.readSampleData(buffer);
+                mCodec.queueInputBuffer(index, size, timeUs);
+                mSource.advance();
+            }
+            progress = true;
+        }
+        return progress;
+    }
+
+    private boolean drainOutput() {
+        boolean progress = false;
+        while (!mOutputEnded && mPendingCount < mPendingIndex.length) {
+            int index = mCodec.dequeueOutputBuffer(mOutputInfo);
+            if (index == Codec.NO_BUFFER)
+                break;
+            progress = true;
+
+            if (mOutputInfo.endOfStream) {
+                mCodec.releaseOutputBuffer(index, false);
+                mOutputEnded = true;
+                break;
+            }
+
+            mLastDecodedUs = mOutputInfo.presentationTimeUs;
+            if (mPlanner.shouldDrop(mOutputInfo.presentationTimeUs)) {
+                mCodec.releaseOutputBuffer(index, false);
+                continue;
+            }
+
+            int tail = (mPendingHead + mPendingCount) % mPendingIndex.length;
+            mPendingIndex[tail] = index;
+            mPendingTimeUs[tail] = mOutputInfo.presentationTimeUs;
+            mPendingCount++;
+        }
+        return progress;
+    }
+
+    private boolean render() {
+        boolean progress = false;
+        while (mPendingCount > 0) {
+            if (mPlanner.isSeeking()) {
+                // The first frame at or after the target, whatever the clock says
+                mPlanner.complete();
+                releasePending(true);
+                progress = true;
+                continue;
+            }
+            if (!mClock.isRunning())
+                break;
+
+            long now = mClock.getMediaTimeUs();
+            long timeUs = mPendingTimeUs[mPendingHead];
+            if (timeUs > now + EARLY_US)
+                break;
+
+            boolean late = timeUs < now - LATE_US && mPendingCount > 1;
+            if (late)
+                mLateFrames++;
+            releasePending(!late);
+            progress = true;
+        }
+        return progress;
+    }
+
+    private void releasePending(boolean render) {
+        mCodec.releaseOutputBuffer(mPendingIndex[mPendingHead], render);
+        if (render)
+            mRenderedFrames++;
+        mPendingHead = (mPendingHead + 1) % mPendingIndex.length;
+        mPendingCount--;
+    }
+}
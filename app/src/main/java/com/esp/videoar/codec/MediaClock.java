@@ -0,0 +1,52 @@
+package com.esp.videoar.codec;
+
+import com.esp.videoar.Clock;
+
+/**
+ * The media time the decoded frames are presented against.
+ *
+ * With an audio track the audio position would drive it. The AR overlays are decoded without
+ * their audio, so the media time simply follows the system clock while playing and stands
+ * still while paused.
+ */
+public class MediaClock {
+
+    private final Clock mClock;
+    private boolean mRunning = false;
+    // The media time at mBaseUptime while running, the current one while paused
+    private long mBaseMediaUs = 0;
+    private long mBaseUptime = 0;
+
+    public MediaClock(Clock clock) {
+        mClock = clock;
+    }
+
+    public void start() {
+        if (mRunning)
+            return;
+        mBaseUptime = mClock.uptimeMillis();
+        mRunning = true;
+    }
+
+    public void pause() {
+        if (!mRunning)
+            return;
+        mBaseMediaUs = getMediaTimeUs();
+        mRunning = false;
+    }
+
+    public void setMediaTimeUs(long timeUs) {
+        mBaseMediaUs = timeUs;
+        mBaseUptime = mClock.uptimeMillis();
+    }
+
+    public long getMediaTimeUs() {
+        if (!mRunning)
+            return mBaseMediaUs;
+        return mBaseMediaUs + (mClock.uptimeMillis() - mBaseUptime) * 1000;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+}
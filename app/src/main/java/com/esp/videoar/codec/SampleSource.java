@@ -0,0 +1,22 @@
+package com.esp.videoar.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The compressed samples of the one track being decoded, in decode order. Mirrors the parts of
+ * MediaExtractor the {@link DecodeLoop} needs, once a track has been selected.
+ */
+public interface SampleSource {
+
+    // Presentation time of the current sample, -1 once the end of the track is reached
+    long getSampleTime();
+
+    // Copies the current sample into the buffer and returns its size
+    int readSampleData(ByteBuffer buffer);
+
+    // Moves to the next sample, returns false at the end of the track
+    boolean advance();
+
+    // Moves to the sync sample at or before the given time
+    void seekTo(long timeUs);
+}
@@ -0,0 +1,52 @@
+package com.esp.videoar.codec;
+
+/**
+ * Plans frame-accurate seeks.
+ *
+ * A decoder can only start at a sync sample, so a seek repositions the source at the sync
+ * sample before the target and drops the decoded frames before the target; the first frame at
+ * or after it is shown. A short forward seek is cheaper to reach by decoding on from the
+ * current position than by flushing the decoder and going back to a sync sample.
+ */
+public class SeekPlanner {
+
+    // Forward seeks up to this far ahead of the decoded position just decode on
+    public static final long MAX_DECODE_AHEAD_US = 1000000;
+
+    private long mTargetUs = -1;
+    private int mDroppedFrames = 0;
+
+    // Starts a seek, returns whether the source has to be repositioned and the
+    // decoder flushed. decodedUs is the time of the latest decoded frame, -1
+    // if the decoder cannot produce more frames without being flushed.
+    public boolean plan(long targetUs, long decodedUs) {
+        mTargetUs = targetUs;
+        return decodedUs < 0 || targetUs < decodedUs || targetUs - decodedUs > MAX_DECODE_AHEAD_US;
+    }
+
+    // Whether a decoded frame comes before the seek target and must not be shown
+    public boolean shouldDrop(long presentationTimeUs) {
+        if (mTargetUs < 0 || presentationTimeUs >= mTargetUs)
+            return false;
+        mDroppedFrames++;
+        return true;
+    }
+
+    // The frame at the target was shown
+    public void complete() {
+        mTargetUs = -1;
+    }
+
+    public boolean isSeeking() {
+        return mTargetUs >= 0;
+    }
+
+    public long getTargetUs() {
+        return mTargetUs;
+    }
+
+    // Frames decoded only to reach a seek target
+    public int getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+}
@@ -0,0 +1,340 @@
+package com.esp.videoar.mp4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds MP4 files whose movie box (moov) comes after the media data and rewrites them with the
+ * movie box first, so that a player can start without reading the end of the file first.
+ *
+ * Only the movie box is held in memory, everything else is copied channel to channel. The
+ * chunk offsets (stco, co64) of every track are moved along with the media data. A file is
+ * rewritten into a temporary file next to it that then replaces it, it is never left half
+ * written.
+ *
+ * Also a command line tool, see the faststartAssets task in app/build.gradle:
+ * <pre>
+ * java com.esp.videoar.mp4.Faststart [--check] file-or-directory...
+ * </pre>
+ * With --check nothing is rewritten and the exit status is 1 if a file needs it.
+ */
+public final class Faststart {
+
+    // The movie box is read into memory, larger ones are refused
+    static final int MAX_MOOV_SIZE = 64 * 1024 * 1024;
+    // Bytes handed to transferTo() at a time
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+    // A top level box, and where it goes in the rewritten file
+    private static final class Box {
+        final int type;
+        final long offset;
+        final long size;
+        long newOffset;
+
+        Box(int type, long offset, long size) {
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private Faststart() {
+    }
+
+    public static boolean isFaststart(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return isFaststart(in.getChannel(), 0, file.length());
+        }
+    }
+
+    // True if the movie box comes before the first media data box, or if
+    // there is no media data box at all
+    public static boolean isFaststart(FileChannel channel, long start, long length)
+            throws IOException {
+        for (Box box : readBoxes(channel, start, length)) {
+            if (box.type == Mp4Parser.MOOV)
+                return true;
+            if (box.type == Mp4Parser.MDAT)
+                return false;
+        }
+        throw new IOException("No moov box");
+    }
+
+    // Rewrites the file with its movie box first, returns false if it already
+    // was. Meant for videos downloaded to the cache before they are played.
+    public static boolean process(File file) throws IOException {
+        if (isFaststart(file))
+            return false;
+
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (FileInputStream in = new FileInputStream(file);
+                 FileOutputStream out = new FileOutputStream(temp)) {
+                remux(in.getChannel(), 0, file.length(), out.getChannel());
+                out.getChannel().force(false);
+            }
+            if (!temp.renameTo(file))
+                throw new IOException("Could not replace " + file);
+        } finally {
+            if (temp.exists() && !temp.delete())
+                temp.deleteOnExit();
+        }
+        return true;
+    }
+
+    // Writes the length bytes of in from start on to out with the movie box
+    // moved in front of the first media data box. The position of in is not
+    // used, out is written from its current position.
+    public static void remux(FileChannel in, long start, long length, FileChannel out)
+            throws IOException {
+        rewrite(in, start, length, out, true);
+    }
+
+    // The opposite of remux(): moves the movie box behind all the others, as
+    // many encoders write it. Makes the test files for remux().
+    static void moveMoovToEnd(FileChannel in, long start, long length, FileChannel out)
+            throws IOException {
+        rewrite(in, start, length, out, false);
+    }
+
+    private static void rewrite(FileChannel in, long start, long length, FileChannel out,
+                                boolean moovFirst) throws IOException {
+        List<Box> boxes = readBoxes(in, start, length);
+        Box moov = null;
+        int firstMdat = -1;
+        for (int i = 0; i < boxes.size(); i++) {
+            Box box = boxes.get(i);
+            if (box.type == Mp4Parser.MOOV) {
+                if (moov != null)
+                    throw new IOException("More than one moov box");
+                moov = box;
+            } else if (box.type == Mp4Parser.MDAT && firstMdat < 0) {
+                firstMdat = i;
+            }
+        }
+        if (moov == null)
+            throw new IOException("No moov box");
+        if (moov.size > MAX_MOOV_SIZE)
+            throw new IOException("moov box of " + moov.size + " bytes is too large");
+
+        // The new order: whatever came before the media data, the movie box,
+        // then the rest as it was. Or everything else first.
+        List<Box> order = new ArrayList<>(boxes.size());
+        for (int i = 0; i < boxes.size(); i++) {
+            Box box = boxes.get(i);
+            if (moovFirst && i == firstMdat)
+                order.add(moov);
+            if (box != moov)
+                order.add(box);
+        }
+        if (!moovFirst || firstMdat < 0)
+            order.add(moov);
+        long offset = 0;
+        for (Box box : order) {
+            box.newOffset = offset;
+            offset += box.size;
+        }
+
+        ByteBuffer moovData = ByteBuffer.allocate((int) moov.size);
+        readFully(in, moovData, start + moov.offset);
+        moovData.flip();
+        // A last box may leave its size at 0, this one is not last any more
+        if (moovData.getInt(0) == 0)
+            moovData.putInt(0, (int) moov.size);
+        patchChunkOffsets(moovData, boxes);
+
+        for (Box box : order) {
+            if (box == moov) {
+                moovData.rewind();
+                while (moovData.hasRemaining()) {
+                    out.write(moovData);
+                }
+            } else {
+                transferFully(in, start + box.offset, box.size, out);
+            }
+        }
+    }
+
+    // Every chunk offset of the movie box, in track order
+    static long[] readChunkOffsets(ByteBuffer moov) throws IOException {
+        List<ByteBuffer> tables = new ArrayList<>();
+        findChunkOffsetTables(moov, 0, moov.limit(), tables);
+        int count = 0;
+        for (ByteBuffer table : tables) {
+            count += table.getInt(12);
+        }
+        long[] offsets = new long[count];
+        int i = 0;
+        for (ByteBuffer table : tables) {
+            boolean wide = table.getInt(4) == Mp4Parser.CO64;
+            int entries = table.getInt(12);
+            for (int entry = 0; entry < entries; entry++) {
+                offsets[i++] = wide ? table.getLong(16 + entry * 8)
+                        : table.getInt(16 + entry * 4) & 0xffffffffL;
+            }
+        }
+        return offsets;
+    }
+
+    private static void patchChunkOffsets(ByteBuffer moov, List<Box> boxes) throws IOException {
+        List<ByteBuffer> tables = new ArrayList<>();
+        findChunkOffsetTables(moov, 0, moov.limit(), tables);
+        for (ByteBuffer table : tables) {
+            boolean wide = table.getInt(4) == Mp4Parser.CO64;
+            int entries = table.getInt(12);
+            for (int entry = 0; entry < entries; entry++) {
+                if (wide) {
+                    int index = 16 + entry * 8;
+                    table.putLong(index, move(table.getLong(index), boxes));
+                } else {
+                    int index = 16 + entry * 4;
+                    long moved = move(table.getInt(index) & 0xffffffffL, boxes);
+                    // Growing stco into co64 would move the offsets once more
+                    if (moved > 0xffffffffL)
+                        throw new IOException("Chunk offset " + moved + " does not fit stco");
+                    table.putInt(index, (int) moved);
+                }
+            }
+        }
+    }
+
+    // Slices of the stco and co64 boxes, header included, found under the
+    // containers on the way from moov to the sample tables
+    private static void findChunkOffsetTables(ByteBuffer moov, int from, int to,
+                                              List<ByteBuffer> tables) throws IOException {
+        for (int pos = from; pos < to; ) {
+            if (to - pos < 8)
+                throw new IOException("Truncated box in moov at " + pos);
+            long size = moov.getInt(pos) & 0xffffffffL;
+            int type = moov.getInt(pos + 4);
+            int headerSize = 8;
+            if (size == 1) {
+                size = moov.getLong(pos + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = to - pos;
+            }
+            if (size < headerSize || pos + size > to)
+                throw new IOException("Bad size of " + Mp4Parser.fourccString(type) + " box in moov");
+
+            if (type == Mp4Parser.MOOV || type == Mp4Parser.TRAK || type == Mp4Parser.MDIA
+                    || type == Mp4Parser.MINF || type == Mp4Parser.STBL) {
+                findChunkOffsetTables(moov, pos + headerSize, pos + (int) size, tables);
+            } else if (type == Mp4Parser.STCO || type == Mp4Parser.CO64) {
+                ByteBuffer table = moov.duplicate();
+                table.position(pos);
+                table.limit(pos + (int) size);
+                table = table.slice();
+                int entrySize = type == Mp4Parser.CO64 ? 8 : 4;
+                if (headerSize != 8 || table.limit() < 16
+                        || 16 + (table.getInt(12) & 0xffffffffL) * entrySize > table.limit())
+                    throw new IOException("Bad " + Mp4Parser.fourccString(type) + " box");
+                tables.add(table);
+            }
+            pos += size;
+        }
+    }
+
+    // Where the byte at offset of the old file is in the new one
+    private static long move(long offset, List<Box> boxes) throws IOException {
+        for (Box box : boxes) {
+            if (offset >= box.offset && offset < box.offset + box.size)
+                return offset - box.offset + box.newOffset;
+        }
+        throw new IOException("Chunk offset " + offset + " is outside the file");
+    }
+
+    private static List<Box> readBoxes(FileChannel channel, long start, long length)
+            throws IOException {
+        List<Box> boxes = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        for (long pos = 0; pos < length; ) {
+            header.clear();
+            header.limit((int) Math.min(16, length - pos));
+            readFully(channel, header, start + pos);
+            if (header.limit() < 8)
+                throw new IOException("Truncated box at " + pos);
+
+            long size = header.getInt(0) & 0xffffffffL;
+            int type = header.getInt(4);
+            int headerSize = 8;
+            if (size == 1) {
+                if (header.limit() < 16)
+                    throw new IOException("Truncated box at " + pos);
+                size = header.getLong(8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = length - pos;
+            }
+            if (size < headerSize || pos + size > length)
+                throw new IOException("Bad size of " + Mp4Parser.fourccString(type) + " box at " + pos);
+
+            boxes.add(new Box(type, pos, size));
+            pos += size;
+        }
+        return boxes;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+
+    private static void transferFully(FileChannel in, long position, long count, FileChannel out)
+            throws IOException {
+        while (count > 0) {
+            long transferred = in.transferTo(position, Math.min(count, TRANSFER_CHUNK), out);
+            if (transferred <= 0)
+                throw new IOException("Unexpected end of file");
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean check = false;
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--check")) {
+                check = true;
+            } else {
+                File file = new File(arg);
+                File[] children = file.listFiles();
+                if (children == null) {
+                    files.add(file);
+                    continue;
+                }
+                for (File child : children) {
+                    if (child.getName().toLowerCase().endsWith(".mp4"))
+                        files.add(child);
+                }
+            }
+        }
+
+        boolean needed = false;
+        for (File file : files) {
+            if (check) {
+                boolean faststart = isFaststart(file);
+                needed |= !faststart;
+                System.out.println(file + (faststart ? ": faststart" : ": moov after mdat"));
+            } else {
+                System.out.println(file + (process(file) ? ": moved moov to the front"
+                        : ": faststart already"));
+            }
+        }
+        if (needed)
+            System.exit(1);
+    }
+}
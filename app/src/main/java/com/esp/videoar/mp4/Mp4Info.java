@@ -0,0 +1,71 @@
+package com.esp.videoar.mp4;
+
+/**
+ * What {@link Mp4Parser} found out about a file: the first video track and where the movie
+ * box sits. Offsets are relative to the start of the parsed range.
+ */
+public final class Mp4Info {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final long mDurationUs;
+    private final int mSampleCount;
+    private final String mCodec;
+    private final boolean mHasAudio;
+    private final SyncSampleIndex mSyncSamples;
+    private final long mMoovOffset;
+    private final long mMdatOffset;
+
+    Mp4Info(int width, int height, long durationUs, int sampleCount, String codec,
+            boolean hasAudio, SyncSampleIndex syncSamples, long moovOffset, long mdatOffset) {
+        mWidth = width;
+        mHeight = height;
+        mDurationUs = durationUs;
+        mSampleCount = sampleCount;
+        mCodec = codec;
+        mHasAudio = hasAudio;
+        mSyncSamples = syncSamples;
+        mMoovOffset = moovOffset;
+        mMdatOffset = mdatOffset;
+    }
+
+    // The size of the coded frames, as MediaPlayer reports it once prepared
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    // Number of frames in the video track
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    // The sample entry type, e.g. "avc1"
+    public String getCodec() {
+        return mCodec;
+    }
+
+    public boolean hasAudio() {
+        return mHasAudio;
+    }
+
+    public SyncSampleIndex getSyncSamples() {
+        return mSyncSamples;
+    }
+
+    public long getMoovOffset() {
+        return mMoovOffset;
+    }
+
+    // -1 if the file has no media data box
+    public long getMdatOffset() {
+        return mMdatOffset;
+    }
+}
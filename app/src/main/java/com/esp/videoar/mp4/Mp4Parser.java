@@ -0,0 +1,325 @@
+package com.esp.videoar.mp4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the video track description of an MP4 (ISO base media) file without decoding it.
+ *
+ * Only box headers are read while walking the file, the media data is skipped, and of the
+ * movie box only the boxes needed for the size, duration, codec and sync sample index are
+ * loaded. Works on a range of a file as well, e.g. an asset inside the APK:
+ * <pre>
+ * AssetFileDescriptor afd = assets.openFd(name);
+ * Mp4Info info = Mp4Parser.parse(afd.createInputStream().getChannel(),
+ *         afd.getStartOffset(), afd.getLength());
+ * </pre>
+ * Edit lists are only used to shift the media time, empty edits (delays) are ignored.
+ */
+public final class Mp4Parser {
+
+    static final int MOOV = fourcc("moov");
+    static final int MDAT = fourcc("mdat");
+    static final int TRAK = fourcc("trak");
+    static final int EDTS = fourcc("edts");
+    static final int ELST = fourcc("elst");
+    static final int MDIA = fourcc("mdia");
+    static final int MDHD = fourcc("mdhd");
+    static final int HDLR = fourcc("hdlr");
+    static final int MINF = fourcc("minf");
+    static final int STBL = fourcc("stbl");
+    static final int STSD = fourcc("stsd");
+    static final int STTS = fourcc("stts");
+    static final int CTTS = fourcc("ctts");
+    static final int STSS = fourcc("stss");
+    static final int STCO = fourcc("stco");
+    static final int CO64 = fourcc("co64");
+
+    private static final int VIDE = fourcc("vide");
+    private static final int SOUN = fourcc("soun");
+
+    private final FileChannel mChannel;
+    private final long mStart;
+    private final ByteBuffer mHeader = ByteBuffer.allocate(16);
+
+    // The header read last by readHeader()
+    private int mBoxType;
+    private long mBoxSize;
+    private int mHeaderSize;
+
+    // What was found in the current track
+    private int mHandler;
+    private long mTimescale;
+    private long mDuration;
+    private long mMediaTime;
+    private String mCodec;
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mStts;
+    private ByteBuffer mCtts;
+    private ByteBuffer mStss;
+
+    private Mp4Parser(FileChannel channel, long start) {
+        mChannel = channel;
+        mStart = start;
+    }
+
+    public static Mp4Info parse(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return parse(in.getChannel(), 0, file.length());
+        }
+    }
+
+    // Parses the length bytes of the channel from start on, the channel position is not used
+    public static Mp4Info parse(FileChannel channel, long start, long length) throws IOException {
+        return new Mp4Parser(channel, start).parseFile(length);
+    }
+
+    static int fourcc(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+
+    static String fourccString(int type) {
+        return new String(new char[]{(char) (type >>> 24), (char) (type >>> 16 & 0xff),
+                (char) (type >>> 8 & 0xff), (char) (type & 0xff)});
+    }
+
+    private Mp4Info parseFile(long length) throws IOException {
+        long moovOffset = -1;
+        long mdatOffset = -1;
+        Mp4Info info = null;
+
+        for (long pos = 0; pos < length; ) {
+            readHeader(pos, length);
+            int type = mBoxType;
+            long size = mBoxSize;
+            if (type == MOOV) {
+                moovOffset = pos;
+                info = parseMoov(pos + mHeaderSize, pos + size);
+            } else if (type == MDAT && mdatOffset < 0) {
+                mdatOffset = pos;
+            }
+            pos += size;
+        }
+
+        if (info == null)
+            throw new IOException("No moov box");
+        return new Mp4Info(info.getWidth(), info.getHeight(), info.getDurationUs(),
+                info.getSampleCount(), info.getCodec(), info.hasAudio(), info.getSyncSamples(),
+                moovOffset, mdatOffset);
+    }
+
+    private Mp4Info parseMoov(long from, long to) throws IOException {
+        Mp4Info video = null;
+        boolean hasAudio = false;
+        for (long pos = from; pos < to; ) {
+            readHeader(pos, to);
+            long size = mBoxSize;
+            if (mBoxType == TRAK) {
+                resetTrack();
+                parseContainer(pos + mHeaderSize, pos + size);
+                if (mHandler == SOUN) {
+                    hasAudio = true;
+                } else if (mHandler == VIDE && video == null) {
+                    if (mTimescale <= 0 || mStts == null)
+                        throw new IOException("Incomplete video track");
+                    video = new Mp4Info(mWidth, mHeight, mDuration * 1000000 / mTimescale,
+                            sampleCount(mStts), mCodec, false,
+                            buildIndex(mStts, mCtts, mStss, mTimescale, mMediaTime), -1, -1);
+                }
+            }
+            pos += size;
+        }
+
+        if (video == null)
+            throw new IOException("No video track");
+        return new Mp4Info(video.getWidth(), video.getHeight(), video.getDurationUs(),
+                video.getSampleCount(), video.getCodec(), hasAudio, video.getSyncSamples(), -1, -1);
+    }
+
+    // Walks the boxes of a track, descending into the containers on the way to the sample table
+    private void parseContainer(long from, long to) throws IOException {
+        for (long pos = from; pos < to; ) {
+            readHeader(pos, to);
+            int type = mBoxType;
+            long size = mBoxSize;
+            long payload = pos + mHeaderSize;
+            int payloadSize = (int) (size - mHeaderSize);
+
+            if (type == EDTS || type == MDIA || type == MINF || type == STBL) {
+                parseContainer(payload, pos + size);
+            } else if (type == ELST) {
+                parseElst(read(payload, payloadSize));
+            } else if (type == MDHD) {
+                parseMdhd(read(payload, payloadSize));
+            } else if (type == HDLR) {
+                mHandler = read(payload, payloadSize).getInt(8);
+            } else if (type == STSD) {
+                parseStsd(read(payload, payloadSize));
+            } else if (mHandler == VIDE && type == STTS) {
+                mStts = read(payload, payloadSize);
+            } else if (mHandler == VIDE && type == CTTS) {
+                mCtts = read(payload, payloadSize);
+            } else if (mHandler == VIDE && type == STSS) {
+                mStss = read(payload, payloadSize);
+            }
+            pos += size;
+        }
+    }
+
+    private void parseMdhd(ByteBuffer box) {
+        if (box.get(0) == 1) {
+            mTimescale = box.getInt(20) & 0xffffffffL;
+            mDuration = box.getLong(24);
+        } else {
+            mTimescale = box.getInt(12) & 0xffffffffL;
+            mDuration = box.getInt(16) & 0xffffffffL;
+        }
+    }
+
+    // The media time the presentation starts at, from the first non-empty edit
+    private void parseElst(ByteBuffer box) {
+        boolean version1 = box.get(0) == 1;
+        int entries = box.getInt(4);
+        int entrySize = version1 ? 20 : 12;
+        for (int i = 0; i < entries; i++) {
+            int entry = 8 + i * entrySize;
+            long mediaTime = version1 ? box.getLong(entry + 8) : box.getInt(entry + 4);
+            if (mediaTime >= 0) {
+                mMediaTime = mediaTime;
+                return;
+            }
+        }
+    }
+
+    // The first sample entry, for a visual one the coded size follows 24 bytes in
+    private void parseStsd(ByteBuffer box) {
+        if (box.getInt(4) < 1)
+            return;
+        mCodec = fourccString(box.getInt(12));
+        if (mHandler == VIDE && box.limit() >= 44) {
+            mWidth = box.getShort(40) & 0xffff;
+            mHeight = box.getShort(42) & 0xffff;
+        }
+    }
+
+    // Presentation times of the sync samples, from the decode time deltas (stts)
+    // and composition offsets (ctts), both run-length coded
+    static SyncSampleIndex buildIndex(ByteBuffer stts, ByteBuffer ctts, ByteBuffer stss,
+                                      long timescale, long mediaTime) {
+        if (stss == null)
+            return new SyncSampleIndex(null, null);
+
+        int count = stss.getInt(4);
+        int[] samples = new int[count];
+        long[] times = new long[count];
+
+        int sttsEntries = stts.getInt(4);
+        int sttsEntry = 0;
+        long sttsFirstSample = 1;
+        long sttsFirstTime = 0;
+
+        int cttsEntries = ctts != null ? ctts.getInt(4) : 0;
+        int cttsEntry = 0;
+        long cttsFirstSample = 1;
+
+        for (int i = 0; i < count; i++) {
+            int sample = stss.getInt(8 + i * 4);
+
+            while (sttsEntry < sttsEntries
+                    && sample >= sttsFirstSample + runLength(stts, sttsEntry)) {
+                long run = runLength(stts, sttsEntry);
+                sttsFirstTime += run * (stts.getInt(12 + sttsEntry * 8) & 0xffffffffL);
+                sttsFirstSample += run;
+                sttsEntry++;
+            }
+            long delta = sttsEntry < sttsEntries ? stts.getInt(12 + sttsEntry * 8) & 0xffffffffL : 0;
+            long decodeTime = sttsFirstTime + (sample - sttsFirstSample) * delta;
+
+            while (cttsEntry < cttsEntries
+                    && sample >= cttsFirstSample + runLength(ctts, cttsEntry)) {
+                cttsFirstSample += runLength(ctts, cttsEntry);
+                cttsEntry++;
+            }
+            // Signed in version 1, and in practice in version 0 as well
+            long offset = cttsEntry < cttsEntries ? ctts.getInt(12 + cttsEntry * 8) : 0;
+
+            samples[i] = sample;
+            times[i] = Math.max(0, (decodeTime + offset - mediaTime) * 1000000 / timescale);
+        }
+        return new SyncSampleIndex(samples, times);
+    }
+
+    // The run lengths of the time to sample table add up to the sample count
+    static int sampleCount(ByteBuffer stts) {
+        long count = 0;
+        int entries = stts.getInt(4);
+        for (int i = 0; i < entries; i++) {
+            count += runLength(stts, i);
+        }
+        return (int) count;
+    }
+
+    private static long runLength(ByteBuffer table, int entry) {
+        return table.getInt(8 + entry * 8) & 0xffffffffL;
+    }
+
+    private void resetTrack() {
+        mHandler = 0;
+        mTimescale = 0;
+        mDuration = 0;
+        mMediaTime = 0;
+        mCodec = null;
+        mWidth = 0;
+        mHeight = 0;
+        mStts = null;
+        mCtts = null;
+        mStss = null;
+    }
+
+    // Reads the box header at pos into mBoxType, mBoxSize and mHeaderSize
+    private void readHeader(long pos, long end) throws IOException {
+        mHeader.clear();
+        mHeader.limit((int) Math.min(16, end - pos));
+        readFully(mHeader, pos);
+        if (mHeader.limit() < 8)
+            throw new IOException("Truncated box at " + pos);
+
+        long size = mHeader.getInt(0) & 0xffffffffL;
+        mBoxType = mHeader.getInt(4);
+        mHeaderSize = 8;
+        if (size == 1) {
+            if (mHeader.limit() < 16)
+                throw new IOException("Truncated box at " + pos);
+            size = mHeader.getLong(8);
+            mHeaderSize = 16;
+        } else if (size == 0) {
+            // Extends to the end of the file
+            size = end - pos;
+        }
+        if (size < mHeaderSize || pos + size > end)
+            throw new IOException("Bad size of " + fourccString(mBoxType) + " box at " + pos);
+        mBoxSize = size;
+    }
+
+    private ByteBuffer read(long pos, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        readFully(buffer, pos);
+        buffer.flip();
+        return buffer;
+    }
+
+    // Fills the buffer up to its limit, the boxes are then read with absolute gets
+    private void readFully(ByteBuffer buffer, long pos) throws IOException {
+        long position = mStart + pos;
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.esp.videoar.mp4;
+
+import java.util.Arrays;
+
+/**
+ * The sync samples (keyframes) of a video track: their sample numbers and presentation times,
+ * in two primitive arrays sorted by time. A track without a sync sample table has only
+ * keyframes, every time is then a keyframe time.
+ */
+public final class SyncSampleIndex {
+
+    private final int[] mSampleNumbers;
+    private final long[] mTimesUs;
+
+    // Both null when every sample is a sync sample
+    SyncSampleIndex(int[] sampleNumbers, long[] timesUs) {
+        mSampleNumbers = sampleNumbers;
+        mTimesUs = timesUs;
+    }
+
+    public boolean isEverySampleSync() {
+        return mTimesUs == null;
+    }
+
+    // Number of sync samples, 0 when every sample is one
+    public int size() {
+        return mTimesUs == null ? 0 : mTimesUs.length;
+    }
+
+    public long getTimeUs(int i) {
+        return mTimesUs[i];
+    }
+
+    // 1-based, as in the stss box
+    public int getSampleNumber(int i) {
+        return mSampleNumbers[i];
+    }
+
+    // The last keyframe at or before the given time, the first one if there is none
+    public long previousSyncUs(long timeUs) {
+        if (mTimesUs == null)
+            return timeUs;
+        if (mTimesUs.length == 0)
+            return 0;
+        int i = Arrays.binarySearch(mTimesUs, timeUs);
+        if (i >= 0)
+            return mTimesUs[i];
+        int insertion = -i - 1;
+        return mTimesUs[Math.max(0, insertion - 1)];
+    }
+
+    // The keyframe before the given time if it is at most toleranceUs earlier,
+    // the time itself otherwise
+    public long snapToPreviousSync(long timeUs, long toleranceUs) {
+        long syncUs = previousSyncUs(timeUs);
+        return syncUs <= timeUs && timeUs - syncUs <= toleranceUs ? syncUs : timeUs;
+    }
+
+    // The longest stretch without a keyframe in a track of the given
+    // duration, the most a seek to the previous keyframe can move back
+    public long maxGapUs(long durationUs) {
+        if (mTimesUs == null)
+            return 0;
+        if (mTimesUs.length == 0)
+            return durationUs;
+        long gapUs = mTimesUs[0];
+        for (int i = 1; i < mTimesUs.length; i++)
+            gapUs = Math.max(gapUs, mTimesUs[i] - mTimesUs[i - 1]);
+        return Math.max(gapUs, durationUs - mTimesUs[mTimesUs.length - 1]);
+    }
+
+    // The first keyframe at or after the given time, -1 if there is none
+    public long nextSyncUs(long timeUs) {
+        if (mTimesUs == null)
+            return timeUs;
+        int i = Arrays.binarySearch(mTimesUs, timeUs);
+        if (i >= 0)
+            return mTimesUs[i];
+        int insertion = -i - 1;
+        return insertion < mTimesUs.length ? mTimesUs[insertion] : -1;
+    }
+}
@@ -0,0 +1,125 @@
+package com.esp.videoar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DecoderManagerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private long now;
+    private List<String> calls;
+    private DecoderManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        now = 1000;
+        calls = new ArrayList<>();
+        manager = newManager(3, 100 * MB);
+    }
+
+    @Test
+    public void onTracked_loadsOnlyOnFirstDetection() throws Exception {
+        manager.onTracked(2);
+        now += 16;
+        manager.onTracked(2);
+
+        assertEquals(1, calls.size());
+        assertEquals("load 2", calls.get(0));
+        assertTrue(manager.isLoaded(2));
+        assertFalse(manager.isLoaded(0));
+    }
+
+    @Test
+    public void decoderBudget_evictsTheLeastRecentlyTracked() throws Exception {
+        track(0);
+        track(1);
+        track(2);
+        track(0);
+        track(3);
+
+        assertEquals("unload 1", calls.get(3));
+        assertEquals("load 3", calls.get(4));
+        assertEquals(3, manager.getLoadedCount());
+        assertEquals(1, manager.getEvictionCount());
+    }
+
+    @Test
+    public void targetsTrackedThisFrame_areNeverEvicted() throws Exception {
+        manager = newManager(2, 100 * MB);
+        now += 16;
+        manager.onTracked(0);
+        manager.onTracked(1);
+
+        assertFalse(manager.onTracked(2));
+        assertEquals(1, manager.getRefusalCount());
+        assertTrue(manager.isLoaded(0));
+        assertTrue(manager.isLoaded(1));
+    }
+
+    @Test
+    public void memoryBudget_usesTheKnownFootprints() throws Exception {
+        manager = newManager(8, 20 * MB);
+        track(0);
+        manager.setFootprint(0, 12 * MB);
+        manager.setFootprint(1, 12 * MB);
+        track(1);
+
+        assertEquals("unload 0", calls.get(1));
+        assertEquals(12 * MB, manager.getLoadedFootprint());
+    }
+
+    @Test
+    public void invalidate_freesTheSlotWithoutUnloading() throws Exception {
+        manager = newManager(1, 100 * MB);
+        track(0);
+        manager.invalidate(0);
+        track(1);
+
+        assertEquals(2, calls.size());
+        assertEquals("load 1", calls.get(1));
+        assertEquals(0, manager.getEvictionCount());
+    }
+
+    @Test
+    public void preload_usesOnlyFreeDecodersAndGoesFirst() throws Exception {
+        manager = newManager(2, 100 * MB);
+        track(0);
+        assertTrue(manager.preload(1));
+        assertFalse(manager.preload(2));
+        track(3);
+
+        assertEquals("unload 1", calls.get(2));
+        assertEquals("load 3", calls.get(3));
+        assertTrue(manager.isLoaded(0));
+    }
+
+    private void track(int target) {
+        now += 16;
+        manager.onTracked(target);
+    }
+
+    private DecoderManager newManager(int maxDecoders, long budget) {
+        return new DecoderManager(8, maxDecoders, budget, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now;
+            }
+        }, new DecoderManager.Decoders() {
+            @Override
+            public void load(int target) {
+                calls.add("load " + target);
+            }
+
+            @Override
+            public void unload(int target) {
+                calls.add("unload " + target);
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.esp.videoar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionPredictorTest {
+
+    private long now;
+    private DetectionPredictor predictor;
+
+    @Before
+    public void setUp() throws Exception {
+        now = 1000;
+        predictor = newPredictor(4);
+    }
+
+    @Test
+    public void onTracked_startsAnEpisodeOnlyAfterAGap() throws Exception {
+        assertTrue(predictor.onTracked(0));
+        now += 16;
+        assertFalse(predictor.onTracked(0));
+        now += DetectionPredictor.EPISODE_GAP_MILLIS + 1;
+        assertTrue(predictor.onTracked(0));
+    }
+
+    @Test
+    public void predictNext_prefersTheTargetSeenTogether() throws Exception {
+        // 2 is seen more often, but 1 always hangs next to 0
+        for (int i = 0; i < 3; i++) {
+            episode(2);
+        }
+        for (int i = 0; i < 2; i++) {
+            episode(0);
+            episode(1);
+            now += DetectionPredictor.CO_OCCURRENCE_MILLIS + 1;
+        }
+        now += DetectionPredictor.CO_OCCURRENCE_MILLIS + 1;
+
+        episode(0);
+
+        assertEquals(1, predictor.predictNext(new boolean[4]));
+    }
+
+    @Test
+    public void predictNext_skipsExcludedAndTrackedTargets() throws Exception {
+        episode(0);
+        now += DetectionPredictor.CO_OCCURRENCE_MILLIS + 1;
+        predictor.onTracked(1);
+
+        assertEquals(0, predictor.predictNext(new boolean[4]));
+        assertEquals(-1, predictor.predictNext(new boolean[]{true, false, false, false}));
+    }
+
+    @Test
+    public void predictNext_needsSomeHistory() throws Exception {
+        assertEquals(-1, predictor.predictNext(new boolean[4]));
+    }
+
+    @Test
+    public void predictNext_needsMoreThanTheUniformPrior() throws Exception {
+        // Every target seen equally often, none of them recently
+        StringBuilder saved = new StringBuilder("1;4");
+        for (int i = 0; i < 4; i++) {
+            saved.append(";1.0;5;0;0;0;0");
+        }
+        saved.append(";0;0;0");
+        assertTrue(predictor.restore(saved.toString()));
+
+        assertEquals(0.25f, predictor.score(2), 0.0001f);
+        assertEquals(-1, predictor.predictNext(new boolean[4]));
+    }
+
+    @Test
+    public void stats_countHitsAndSavedTime() throws Exception {
+        predictor.recordDetection(true, 300);
+        predictor.recordDetection(false, 0);
+
+        assertEquals(0.5f, predictor.getHitRate(), 0.0001f);
+        assertEquals(150, predictor.getAverageSavedMillis());
+    }
+
+    @Test
+    public void saveAndRestore_keepTheStatistics() throws Exception {
+        episode(0);
+        episode(1);
+        predictor.recordDetection(true, 200);
+        String saved = predictor.save();
+
+        DetectionPredictor restored = newPredictor(4);
+        assertTrue(restored.restore(saved));
+        assertEquals(saved, restored.save());
+        assertEquals(1.0f, restored.getHitRate(), 0.0001f);
+    }
+
+    @Test
+    public void restore_ignoresStatisticsOfOtherTargets() throws Exception {
+        episode(0);
+        String saved = predictor.save();
+
+        DetectionPredictor other = newPredictor(5);
+        assertFalse(other.restore(saved));
+        assertFalse(other.restore(null));
+        assertFalse(other.restore("garbage"));
+        assertEquals(0.0f, other.score(0), 0.0001f);
+    }
+
+    private void episode(int target) {
+        now += DetectionPredictor.EPISODE_GAP_MILLIS + 1;
+        predictor.onTracked(target);
+    }
+
+    private DetectionPredictor newPredictor(int numTargets) {
+        return new DetectionPredictor(numTargets, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now;
+            }
+        });
+    }
+}
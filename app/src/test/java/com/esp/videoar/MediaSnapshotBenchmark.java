@@ -0,0 +1,172 @@
+package com.esp.videoar;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Contends the per-frame reads of the media state against simulated MediaPlayer callback
+ * writers, once through the published {@link MediaSnapshot} and once through fields guarded by a
+ * ReentrantLock as MediaPlayerHelper used to do.
+ *
+ * Not a unit test, run it from the IDE or with
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; com.esp.videoar.MediaSnapshotBenchmark
+ * Every configuration uses one reader thread and (threads - 1) writer threads.
+ */
+public class MediaSnapshotBenchmark {
+
+    private static final int[] THREADS = {2, 4, 8};
+    private static final long WARMUP_MILLIS = 500;
+    private static final long MEASURE_MILLIS = 2000;
+
+    // One reader pass mirrors what onDrawFrame() asks every target
+    private interface Subject {
+        int read();
+
+        void write(int i);
+    }
+
+    private static class SnapshotSubject implements Subject {
+        final AtomicReference<MediaSnapshot> snapshot =
+                new AtomicReference<>(MediaSnapshot.INITIAL);
+
+        @Override
+        public int read() {
+            MediaSnapshot s = snapshot.get();
+            int sum = s.state.getNumericType();
+            if (s.isPlayableOnTexture() && s.isReady())
+                sum += s.width + s.height;
+            return sum;
+        }
+
+        @Override
+        public void write(int i) {
+            MediaSnapshot current;
+            do {
+                current = snapshot.get();
+            } while (!snapshot.compareAndSet(current, (i & 1) == 0
+                    ? current.withState(MediaState.PLAYING).withType(MediaType.ON_TEXTURE)
+                    : current.withPosition(i).withSize(640, 360)));
+        }
+    }
+
+    private static class LockedSubject implements Subject {
+        final ReentrantLock lock = new ReentrantLock();
+        MediaState state = MediaState.NOT_READY;
+        MediaType type = MediaType.UNKNOWN;
+        int width = -1;
+        int height = -1;
+        int position = -1;
+
+        @Override
+        public int read() {
+            lock.lock();
+            try {
+                int sum = state.getNumericType();
+                if (type == MediaType.ON_TEXTURE && state != MediaState.NOT_READY)
+                    sum += width + height;
+                return sum;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(int i) {
+            lock.lock();
+            try {
+                if ((i & 1) == 0) {
+                    state = MediaState.PLAYING;
+                    type = MediaType.ON_TEXTURE;
+                } else {
+                    position = i;
+                    width = 640;
+                    height = 360;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("threads  snapshot reads/us  locked reads/us");
+        for (int threads : THREADS) {
+            double snapshot = run(new SnapshotSubject(), threads);
+            double locked = run(new LockedSubject(), threads);
+            System.out.println(String.format("%7d  %17.1f  %15.1f", threads, snapshot, locked));
+        }
+    }
+
+    // Returns the reads per microsecond of the reader thread
+    private static double run(final Subject subject, int threads) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] reads = new long[1];
+        final long[] elapsed = new long[1];
+        final boolean[] stop = new boolean[1];
+        Thread[] writers = new Thread[threads - 1];
+
+        for (int w = 0; w < writers.length; w++) {
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    int i = 0;
+                    while (!isStopped(stop)) {
+                        subject.write(i++);
+                        // Callbacks arrive far less often than frames are drawn
+                        Thread.yield();
+                    }
+                }
+            });
+            writers[w].start();
+        }
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                await(start);
+                int sink = 0;
+                long deadline = System.nanoTime() + WARMUP_MILLIS * 1000000L;
+                while (System.nanoTime() < deadline)
+                    sink += subject.read();
+
+                long count = 0;
+                long begin = System.nanoTime();
+                deadline = begin + MEASURE_MILLIS * 1000000L;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1000; i++)
+                        sink += subject.read();
+                    count += 1000;
+                }
+                elapsed[0] = System.nanoTime() - begin;
+                reads[0] = count + (sink == 42 ? 1 : 0);
+            }
+        });
+        reader.start();
+
+        start.countDown();
+        reader.join();
+        synchronized (stop) {
+            stop[0] = true;
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        return reads[0] * 1000.0 / elapsed[0];
+    }
+
+    private static boolean isStopped(boolean[] stop) {
+        synchronized (stop) {
+            return stop[0];
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
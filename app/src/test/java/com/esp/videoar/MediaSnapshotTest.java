@@ -0,0 +1,48 @@
+package com.esp.videoar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MediaSnapshotTest {
+
+    @Test
+    public void initial_isNotReadyNorPlayable() throws Exception {
+        MediaSnapshot snapshot = MediaSnapshot.INITIAL;
+
+        assertFalse(snapshot.isReady());
+        assertFalse(snapshot.isPlayableOnTexture());
+        assertFalse(snapshot.isPlayableFullscreen());
+        assertEquals(-1, snapshot.width);
+        assertEquals(-1, snapshot.duration);
+    }
+
+    @Test
+    public void with_copiesTheOtherFields() throws Exception {
+        MediaSnapshot snapshot = MediaSnapshot.INITIAL
+                .withType(MediaType.ON_TEXTURE_FULLSCREEN)
+                .withSize(640, 360)
+                .withDuration(12000)
+                .withState(MediaState.PAUSED)
+                .withPosition(3500);
+
+        assertEquals(MediaState.PAUSED, snapshot.state);
+        assertEquals(MediaType.ON_TEXTURE_FULLSCREEN, snapshot.type);
+        assertEquals(640, snapshot.width);
+        assertEquals(360, snapshot.height);
+        assertEquals(12000, snapshot.duration);
+        assertEquals(3500, snapshot.position);
+        assertTrue(snapshot.isReady());
+        assertTrue(snapshot.isPlayableOnTexture());
+        assertTrue(snapshot.isPlayableFullscreen());
+    }
+
+    @Test
+    public void with_returnsTheSameSnapshotWhenNothingChanges() throws Exception {
+        MediaSnapshot snapshot = MediaSnapshot.INITIAL.withSize(640, 360);
+
+        assertSame(snapshot, snapshot.withSize(640, 360));
+        assertSame(snapshot, snapshot.withState(MediaState.NOT_READY));
+        assertNotSame(snapshot, snapshot.withState(MediaState.READY));
+    }
+}
@@ -0,0 +1,126 @@
+package com.esp.videoar;
+
+import java.util.Random;
+
+/**
+ * Counts the MediaPlayer commands issued for simulated tracking traces, by the play/pause logic
+ * VideoRenderer.onDrawFrame() used to have and by {@link PlaybackPolicy}.
+ *
+ * Not a unit test, run it from the IDE or with
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; com.esp.videoar.PlaybackPolicyBenchmark
+ * The players apply a command after a fixed latency, like the media command thread does.
+ */
+public class PlaybackPolicyBenchmark {
+
+    private static final long FRAME_MILLIS = 16;
+    private static final long TRACE_MILLIS = 60 * 1000;
+    private static final long PLAYER_LATENCY_MILLIS = 40;
+
+    public static void main(String[] args) {
+        System.out.println("trace                  legacy play/pause/position   policy play/pause/position");
+        // Probability per frame to lose a tracked target, and to find a lost one again
+        run("steady", 0.0005, 0.2);
+        run("jittery", 0.05, 0.5);
+        run("very jittery", 0.2, 0.5);
+        run("mostly lost", 0.1, 0.02);
+    }
+
+    private static void run(String name, double lossRate, double findRate) {
+        boolean[] trace = trace(new Random(42), lossRate, findRate);
+
+        FakeClock clock = new FakeClock();
+        LatentPlayer legacyPlayer = new LatentPlayer(clock);
+        long lostSince = -1;
+        for (boolean tracking : trace) {
+            clock.now += FRAME_MILLIS;
+            legacyPlayer.tick();
+            // The logic removed from VideoRenderer.onDrawFrame()
+            if (tracking) {
+                lostSince = -1;
+                if (legacyPlayer.state != MediaState.PLAYING)
+                    legacyPlayer.play(0, MediaPlayerHelper.CURRENT_POSITION);
+            } else if (lostSince < 0) {
+                lostSince = clock.now;
+            } else if (clock.now - lostSince > 20) {
+                legacyPlayer.pause(0);
+                legacyPlayer.currentPosition(0);
+            }
+        }
+
+        clock = new FakeClock();
+        LatentPlayer policyPlayer = new LatentPlayer(clock);
+        PlaybackPolicy policy = new PlaybackPolicy(1, clock, policyPlayer);
+        for (boolean tracking : trace) {
+            clock.now += FRAME_MILLIS;
+            policyPlayer.tick();
+            policy.update(0, tracking, policyPlayer.state);
+        }
+
+        System.out.println(String.format("%-22s %8d %6d %8d   %8d %6d %8d", name,
+                legacyPlayer.plays, legacyPlayer.pauses, legacyPlayer.positionReads,
+                policyPlayer.plays, policyPlayer.pauses, policyPlayer.positionReads));
+    }
+
+    private static boolean[] trace(Random random, double lossRate, double findRate) {
+        boolean[] trace = new boolean[(int) (TRACE_MILLIS / FRAME_MILLIS)];
+        boolean tracking = true;
+        for (int i = 0; i < trace.length; i++) {
+            if (tracking && random.nextDouble() < lossRate)
+                tracking = false;
+            else if (!tracking && random.nextDouble() < findRate)
+                tracking = true;
+            trace[i] = tracking;
+        }
+        return trace;
+    }
+
+    private static class FakeClock implements Clock {
+        long now = 0;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    }
+
+    private static class LatentPlayer implements PlaybackPolicy.Commands {
+        final FakeClock clock;
+        MediaState state = MediaState.READY;
+        MediaState pendingState = null;
+        long pendingAt;
+        int plays = 0;
+        int pauses = 0;
+        int positionReads = 0;
+
+        LatentPlayer(FakeClock clock) {
+            this.clock = clock;
+        }
+
+        void tick() {
+            if (pendingState != null && clock.now >= pendingAt) {
+                state = pendingState;
+                pendingState = null;
+            }
+        }
+
+        @Override
+        public void play(int target, int seekPosition) {
+            plays++;
+            pendingState = MediaState.PLAYING;
+            pendingAt = clock.now + PLAYER_LATENCY_MILLIS;
+        }
+
+        @Override
+        public void pause(int target) {
+            pauses++;
+            pendingState = MediaState.PAUSED;
+            pendingAt = clock.now + PLAYER_LATENCY_MILLIS;
+        }
+
+        @Override
+        public int currentPosition(int target) {
+            positionReads++;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.esp.videoar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaybackPolicyTest {
+
+    private static final int TARGET = 1;
+
+    private FakeClock clock;
+    private FakePlayers players;
+    private PlaybackPolicy policy;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new FakeClock();
+        players = new FakePlayers(2);
+        policy = new PlaybackPolicy(2, clock, players, 100, 500, 1000);
+        policy.reset(TARGET, 2500);
+        players.state[TARGET] = MediaState.READY;
+    }
+
+    @Test
+    public void play_waitsForTheDebouncePeriod() throws Exception {
+        frames(true, 90);
+        assertEquals(0, players.commands.size());
+
+        frames(true, 20);
+        assertEquals(1, players.commands.size());
+        assertEquals("play 1 @2500", players.commands.get(0));
+    }
+
+    @Test
+    public void flickeringTarget_neverStarts() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            frames(true, 60);
+            frames(false, 20);
+        }
+
+        assertEquals(0, players.commands.size());
+    }
+
+    @Test
+    public void shortLoss_doesNotPause() throws Exception {
+        frames(true, 200);
+        frames(false, 400);
+        frames(true, 200);
+
+        assertEquals(1, players.commands.size());
+        assertEquals(MediaState.PLAYING, players.state[TARGET]);
+    }
+
+    @Test
+    public void loss_pausesOnceAfterTheGracePeriodAndCapturesThePosition() throws Exception {
+        frames(true, 200);
+        players.position[TARGET] = 7000;
+        frames(false, 2000);
+
+        assertEquals(2, players.commands.size());
+        assertEquals("pause 1", players.commands.get(1));
+        assertEquals(1, players.positionReads);
+        assertEquals(7000, policy.getResumePosition(TARGET));
+    }
+
+    @Test
+    public void resume_usesTheCapturedPosition() throws Exception {
+        frames(true, 200);
+        players.position[TARGET] = 7000;
+        frames(false, 600);
+        frames(true, 200);
+
+        assertEquals(3, players.commands.size());
+        assertEquals("play 1 @7000", players.commands.get(2));
+    }
+
+    @Test
+    public void pendingPlay_isNotRepeatedUntilTheRetryPeriod() throws Exception {
+        players.async = true;
+        frames(true, 200);
+        assertEquals(1, players.commands.size());
+
+        frames(true, 1000);
+        assertEquals(2, players.commands.size());
+    }
+
+    @Test
+    public void reachedEnd_restartsWhileTracked() throws Exception {
+        frames(true, 200);
+        players.state[TARGET] = MediaState.REACHED_END;
+        frames(true, 20);
+
+        assertEquals(2, players.commands.size());
+        assertEquals("play 1 @-1", players.commands.get(1));
+    }
+
+    // Runs frames 10 ms apart for the given time, all with the same tracking state
+    private void frames(boolean tracking, long millis) {
+        for (long t = 0; t < millis; t += 10) {
+            clock.now += 10;
+            policy.update(TARGET, tracking, players.state[TARGET]);
+        }
+    }
+
+    private static class FakeClock implements Clock {
+        long now = 1000;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    }
+
+    // Players that switch state right away, or never when async
+    private static class FakePlayers implements PlaybackPolicy.Commands {
+        final List<String> commands = new ArrayList<>();
+        final MediaState[] state;
+        final int[] position;
+        boolean async = false;
+        int positionReads = 0;
+
+        FakePlayers(int count) {
+            state = new MediaState[count];
+            position = new int[count];
+        }
+
+        @Override
+        public void play(int target, int seekPosition) {
+            commands.add("play " + target + " @" + seekPosition);
+            if (!async)
+                state[target] = MediaState.PLAYING;
+        }
+
+        @Override
+        public void pause(int target) {
+            commands.add("pause " + target);
+            if (!async)
+                state[target] = MediaState.PAUSED;
+        }
+
+        @Override
+        public int currentPosition(int target) {
+            positionReads++;
+            return position[target];
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.esp.videoar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class PosterFrameCacheTest {
+
+    private static final File ASSETS = new File("src/main/assets/VideoPlayback");
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("posters").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void put_thenGetReturnsTheFrame() throws Exception {
+        PosterFrameCache cache = new PosterFrameCache(dir, 1000);
+        cache.put("a", frame(100, 1));
+
+        assertArrayEquals(frame(100, 1), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(100, cache.getSizeBytes());
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsed() throws Exception {
+        PosterFrameCache cache = new PosterFrameCache(dir, 300);
+        cache.put("a", frame(100, 1));
+        cache.put("b", frame(100, 2));
+        cache.put("c", frame(100, 3));
+        cache.get("a");
+        cache.put("d", frame(100, 4));
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertTrue(cache.contains("d"));
+        assertEquals(300, cache.getSizeBytes());
+        assertEquals(3, dir.listFiles().length);
+    }
+
+    @Test
+    public void put_ignoresFramesLargerThanTheCache() throws Exception {
+        PosterFrameCache cache = new PosterFrameCache(dir, 100);
+        cache.put("a", frame(50, 1));
+        cache.put("b", frame(200, 2));
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+    }
+
+    @Test
+    public void reopening_keepsTheFramesAndDropsLeftovers() throws Exception {
+        PosterFrameCache cache = new PosterFrameCache(dir, 1000);
+        cache.put("a", frame(100, 1));
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "b.tmp"))) {
+            out.write(frame(10, 2));
+        }
+
+        PosterFrameCache reopened = new PosterFrameCache(dir, 1000);
+        assertArrayEquals(frame(100, 1), reopened.get("a"));
+        assertEquals(100, reopened.getSizeBytes());
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void contentKey_dependsOnTheVideo() throws Exception {
+        String nike = key("nike.mp4");
+
+        assertEquals(nike, key("nike.mp4"));
+        assertNotEquals(nike, key("small.mp4"));
+        assertEquals(40, nike.length());
+    }
+
+    private static String key(String name) throws Exception {
+        File file = new File(ASSETS, name);
+        try (FileInputStream in = new FileInputStream(file)) {
+            return PosterFrameCache.contentKey(in.getChannel(), 0, file.length());
+        }
+    }
+
+    private static byte[] frame(int size, int value) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,108 @@
+package com.esp.videoar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrepareSchedulerTest {
+
+    private long now;
+    private List<Integer> prepared;
+    private PrepareScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        now = 100000;
+        prepared = new ArrayList<>();
+        scheduler = new PrepareScheduler(8, 2, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now;
+            }
+        }, new PrepareScheduler.Preparer() {
+            @Override
+            public void prepare(int target) {
+                prepared.add(target);
+            }
+        });
+    }
+
+    @Test
+    public void submit_runsAtMostTheLimit() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(i);
+        }
+
+        assertEquals(2, prepared.size());
+        assertEquals(2, scheduler.getPreparingCount());
+        assertTrue(scheduler.isQueued(4));
+    }
+
+    @Test
+    public void trackedTargets_goBeforeRecentAndOthers() throws Exception {
+        scheduler.submit(0);
+        scheduler.submit(1);
+        scheduler.onTracked(3);
+        now += PrepareScheduler.TRACKED_MILLIS + 1;
+        scheduler.onTracked(5);
+        scheduler.submit(2);
+        scheduler.submit(3);
+        scheduler.submit(5);
+
+        now += 10;
+        scheduler.onPrepared(0);
+        scheduler.onPrepared(1);
+        scheduler.onPrepared(5);
+
+        assertEquals(Integer.valueOf(5), prepared.get(2));
+        assertEquals(Integer.valueOf(3), prepared.get(3));
+        assertEquals(Integer.valueOf(2), prepared.get(4));
+    }
+
+    @Test
+    public void metrics_measureWaitAndPrepareTime() throws Exception {
+        scheduler.submit(0);
+        scheduler.submit(1);
+        scheduler.submit(2);
+        now += 300;
+        scheduler.onPrepared(0);
+        now += 100;
+        scheduler.onPrepared(2);
+
+        assertEquals(3, scheduler.getPrepareCount());
+        assertEquals(100, scheduler.getAverageWaitMillis());
+        assertEquals(300, scheduler.getMaxWaitMillis());
+        assertEquals(200, scheduler.getAveragePrepareMillis());
+        assertEquals(300, scheduler.getMaxPrepareMillis());
+    }
+
+    @Test
+    public void cancel_freesTheSlotOrDropsFromTheQueue() throws Exception {
+        scheduler.submit(0);
+        scheduler.submit(1);
+        scheduler.submit(2);
+        scheduler.submit(3);
+        scheduler.cancel(2);
+        scheduler.cancel(0);
+
+        assertEquals(Integer.valueOf(3), prepared.get(2));
+        assertFalse(scheduler.isQueued(2));
+        assertFalse(scheduler.isPreparing(0));
+    }
+
+    @Test
+    public void update_timesOutPreparesThatNeverReport() throws Exception {
+        scheduler.submit(0);
+        scheduler.submit(1);
+        scheduler.submit(2);
+        now += PrepareScheduler.PREPARE_TIMEOUT_MILLIS + 1;
+        scheduler.update();
+
+        assertEquals(2, scheduler.getTimeoutCount());
+        assertTrue(scheduler.isPreparing(2));
+    }
+}
@@ -0,0 +1,190 @@
+package com.esp.videoar;
+
+import android.opengl.GLES20;
+
+import com.esp.videoar.SampleApplication.utils.GLBackend;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the quad draws of VideoRenderer.renderFrame() against a recording GL backend.
+ */
+public class QuadGeometryTest {
+
+    private static final int VERTEX = 0;
+    private static final int NORMAL = 1;
+    private static final int TEX_COORD = 2;
+
+    @Test
+    public void upload_createsBufferObjectsOnce() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        QuadGeometry quad = new QuadGeometry();
+
+        quad.upload(gl);
+
+        // One vertex buffer and one index buffer, shared by all the targets
+        assertEquals(2, gl.generatedBuffers);
+        assertEquals(2, gl.count("glBufferData"));
+        assertEquals(0, gl.arrayBuffer);
+        assertEquals(0, gl.elementBuffer);
+    }
+
+    @Test
+    public void steadyStateDraws_onlyReferenceBufferObjects() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        QuadGeometry quad = new QuadGeometry();
+        quad.upload(gl);
+        gl.calls.clear();
+
+        for (int frame = 0; frame < 10; frame++) {
+            for (int target = 0; target < MainActivity.NUM_TARGETS; target++) {
+                quad.bind(gl, VERTEX, NORMAL, TEX_COORD);
+                quad.draw(gl);
+                quad.unbind(gl, VERTEX, NORMAL, TEX_COORD);
+
+                quad.bind(gl, VERTEX, -1, TEX_COORD);
+                quad.draw(gl);
+                quad.unbind(gl, VERTEX, -1, TEX_COORD);
+            }
+        }
+
+        assertEquals(0, gl.count("glBufferData"));
+        assertEquals(0, gl.count("glGenBuffers"));
+        assertEquals(10 * 2 * MainActivity.NUM_TARGETS, gl.count("glDrawElements"));
+        assertEquals(0, gl.arrayBuffer);
+        assertEquals(0, gl.elementBuffer);
+    }
+
+    // Records the calls and fails as soon as a draw would source client memory
+    private static class RecordingBackend implements GLBackend {
+        final List<String> calls = new ArrayList<>();
+        int generatedBuffers = 0;
+        int arrayBuffer = 0;
+        int elementBuffer = 0;
+
+        int count(String name) {
+            int n = 0;
+            for (String call : calls) {
+                if (call.equals(name))
+                    n++;
+            }
+            return n;
+        }
+
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset) {
+            calls.add("glGenBuffers");
+            for (int i = 0; i < n; i++) {
+                buffers[offset + i] = ++generatedBuffers;
+            }
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset) {
+            calls.add("glDeleteBuffers");
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer) {
+            calls.add("glBindBuffer");
+            if (target == GLES20.GL_ARRAY_BUFFER)
+                arrayBuffer = buffer;
+            else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+                elementBuffer = buffer;
+            else
+                fail("unexpected buffer target " + target);
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            calls.add("glBufferData");
+            assertTrue("no buffer bound for upload",
+                    (target == GLES20.GL_ARRAY_BUFFER ? arrayBuffer : elementBuffer) != 0);
+            assertEquals(size, data.capacity());
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                          int stride, int offset) {
+            calls.add("glVertexAttribPointer");
+            assertTrue("attribute " + index + " sources client memory", arrayBuffer != 0);
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index) {
+            calls.add("glEnableVertexAttribArray");
+            assertTrue(index >= 0);
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index) {
+            calls.add("glDisableVertexAttribArray");
+            assertTrue(index >= 0);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset) {
+            calls.add("glDrawElements");
+            assertTrue("indices source client memory", elementBuffer != 0);
+            assertEquals(QuadGeometry.NUM_QUAD_INDEX, count);
+            assertEquals(0, offset);
+        }
+
+        @Override
+        public void glUseProgram(int program) {
+            calls.add("glUseProgram");
+        }
+
+        @Override
+        public void glEnable(int cap) {
+            calls.add("glEnable");
+        }
+
+        @Override
+        public void glDisable(int cap) {
+            calls.add("glDisable");
+        }
+
+        @Override
+        public void glBlendFunc(int sfactor, int dfactor) {
+            calls.add("glBlendFunc");
+        }
+
+        @Override
+        public void glDepthFunc(int func) {
+            calls.add("glDepthFunc");
+        }
+
+        @Override
+        public void glActiveTexture(int texture) {
+            calls.add("glActiveTexture");
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture) {
+            calls.add("glBindTexture");
+        }
+
+        @Override
+        public void glUniform1i(int location, int x) {
+            calls.add("glUniform1i");
+        }
+
+        @Override
+        public void glUniform4f(int location, float x, float y, float z, float w) {
+            calls.add("glUniform4f");
+        }
+
+        @Override
+        public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                       float[] value, int offset) {
+            calls.add("glUniformMatrix4fv");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.esp.videoar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the per-target matrices of VideoRenderer.renderFrame() against plain matrix math.
+ */
+public class QuadScratchTest {
+
+    private static final int NUM_TARGETS = MainActivity.NUM_TARGETS;
+
+    private static final float[] PROJECTION = {
+            1.8f, 0.0f, 0.0f, 0.0f,
+            0.0f, 3.2f, 0.0f, 0.0f,
+            0.1f, -0.2f, -1.0f, -1.0f,
+            0.0f, 0.0f, -4.0f, 0.0f};
+
+    private static final float[] POSE = {
+            0.9f, 0.1f, -0.2f, 0.0f,
+            -0.1f, 0.95f, 0.05f, 0.0f,
+            0.2f, -0.05f, 0.97f, 0.0f,
+            12.0f, -7.0f, 300.0f, 1.0f};
+
+    @Test
+    public void keyframeMVP_matchesScaledPoseTimesProjection() throws Exception {
+        QuadScratch scratch = new QuadScratch(NUM_TARGETS);
+        scratch.setProjection(PROJECTION);
+        scratch.setPose(3, POSE);
+
+        float[] expectedModelView = POSE.clone();
+        for (int i = 0; i < 4; i++) {
+            expectedModelView[i] *= 50.0f;
+            expectedModelView[4 + i] *= 50.0f * 0.75f;
+            expectedModelView[8 + i] *= 50.0f;
+        }
+
+        assertArrayEquals(multiply(PROJECTION, expectedModelView),
+                scratch.keyframeMVP(3, 50.0f, 0.75f), 1e-4f);
+    }
+
+    @Test
+    public void buttonMVP_translatesBeforeScaling() throws Exception {
+        QuadScratch scratch = new QuadScratch(NUM_TARGETS);
+        scratch.setProjection(PROJECTION);
+        scratch.setPose(0, POSE);
+
+        float halfHeight = 40.0f;
+        float[] expectedModelView = multiply(POSE, multiply(
+                translation(0.0f, 0.0f, halfHeight / 10.98f),
+                scaling(halfHeight / 2.0f)));
+
+        assertArrayEquals(multiply(PROJECTION, expectedModelView),
+                scratch.buttonMVP(0, halfHeight), 1e-3f);
+    }
+
+    @Test
+    public void pose34_isTransposedIntoAColumnMajorMatrix() throws Exception {
+        QuadScratch scratch = new QuadScratch(NUM_TARGETS);
+        // Row-major 3x4, as Vuforia's Matrix34F.getData() delivers it
+        float[] pose34 = new float[12];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 4; col++) {
+                pose34[row * 4 + col] = POSE[col * 4 + row];
+            }
+        }
+
+        scratch.setPose34(2, pose34);
+
+        assertArrayEquals(POSE, scratch.getPose(2), 0.0f);
+    }
+
+    private static float[] multiply(float[] lhs, float[] rhs) {
+        float[] result = new float[16];
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0.0f;
+                for (int k = 0; k < 4; k++) {
+                    sum += lhs[k * 4 + row] * rhs[col * 4 + k];
+                }
+                result[col * 4 + row] = sum;
+            }
+        }
+        return result;
+    }
+
+    private static float[] translation(float x, float y, float z) {
+        float[] m = scaling(1.0f);
+        m[12] = x;
+        m[13] = y;
+        m[14] = z;
+        return m;
+    }
+
+    private static float[] scaling(float s) {
+        float[] m = new float[16];
+        m[0] = s;
+        m[5] = s;
+        m[10] = s;
+        m[15] = 1.0f;
+        return m;
+    }
+}
@@ -0,0 +1,79 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AtlasPackerTest {
+
+    @Test
+    public void equalSquares_fillTheAtlas() throws Exception {
+        AtlasPacker.Result result = AtlasPacker.pack(new int[]{64, 64, 64, 64},
+                new int[]{64, 64, 64, 64}, 0, 2048);
+
+        assertEquals(128 * 128, result.mWidth * result.mHeight);
+        assertEquals(1.0f, result.getEfficiency(), 0.0f);
+        assertNoOverlaps(new int[]{64, 64, 64, 64}, new int[]{64, 64, 64, 64}, 0, result);
+    }
+
+    @Test
+    public void previewAndIcons_packTightly() throws Exception {
+        int[] widths = {629, 256, 256, 256};
+        int[] heights = {352, 256, 256, 256};
+        AtlasPacker.Result result = AtlasPacker.pack(widths, heights, 2, 2048);
+
+        assertNoOverlaps(widths, heights, 2, result);
+        assertTrue("efficiency " + result.getEfficiency(), result.getEfficiency() > 0.85f);
+    }
+
+    @Test
+    public void manyRectangles_packEfficiently() throws Exception {
+        Random random = new Random(42);
+        int[] widths = new int[40];
+        int[] heights = new int[40];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = 16 + random.nextInt(112);
+            heights[i] = 16 + random.nextInt(112);
+        }
+        AtlasPacker.Result result = AtlasPacker.pack(widths, heights, 1, 2048);
+
+        assertNoOverlaps(widths, heights, 1, result);
+        assertTrue("efficiency " + result.getEfficiency(), result.getEfficiency() > 0.75f);
+    }
+
+    @Test
+    public void padding_keepsNeighboursApart() throws Exception {
+        int[] sizes = {10, 10, 10};
+        AtlasPacker.Result result = AtlasPacker.pack(sizes, sizes, 3, 2048);
+
+        assertNoOverlaps(sizes, sizes, 3, result);
+        assertEquals(16 * 16 * 3, result.mWidth * result.mHeight);
+    }
+
+    @Test
+    public void tooLarge_returnsNull() throws Exception {
+        assertNull(AtlasPacker.pack(new int[]{300}, new int[]{10}, 0, 256));
+        assertNull(AtlasPacker.pack(new int[]{200, 200, 200}, new int[]{200, 200, 200}, 0, 256));
+        assertNull(AtlasPacker.pack(new int[0], new int[0], 0, 256));
+    }
+
+    // Every padded rectangle inside the atlas and apart from the others
+    private static void assertNoOverlaps(int[] widths, int[] heights, int padding,
+                                         AtlasPacker.Result result) {
+        for (int i = 0; i < widths.length; i++) {
+            assertTrue(result.mX[i] - padding >= 0);
+            assertTrue(result.mY[i] - padding >= 0);
+            assertTrue(result.mX[i] + widths[i] + padding <= result.mWidth);
+            assertTrue(result.mY[i] + heights[i] + padding <= result.mHeight);
+            for (int j = 0; j < i; j++) {
+                boolean apart = result.mX[i] + widths[i] + padding <= result.mX[j] - padding
+                        || result.mX[j] + widths[j] + padding <= result.mX[i] - padding
+                        || result.mY[i] + heights[i] + padding <= result.mY[j] - padding
+                        || result.mY[j] + heights[j] + padding <= result.mY[i] - padding;
+                assertTrue("rectangles " + j + " and " + i + " overlap", apart);
+            }
+        }
+    }
+}
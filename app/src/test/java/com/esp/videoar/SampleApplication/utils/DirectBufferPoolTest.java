@@ -0,0 +1,58 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void acquire_reusesAReleasedBuffer() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(1 << 20);
+        ByteBuffer first = pool.acquire(1000);
+        pool.release(first);
+        ByteBuffer second = pool.acquire(900);
+
+        assertSame(first, second);
+        assertEquals(900, second.limit());
+        assertEquals(0, second.position());
+        assertEquals(ByteOrder.nativeOrder(), second.order());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void acquire_skipsBuffersMoreThanTwiceTheSize() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(1 << 20);
+        ByteBuffer large = pool.acquire(4000);
+        pool.release(large);
+
+        assertNotSame(large, pool.acquire(1000));
+        assertNotSame(large, pool.acquire(5000));
+        assertSame(large, pool.acquire(3000));
+    }
+
+    @Test
+    public void release_keepsAtMostTheLimit() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(1500);
+        ByteBuffer first = pool.acquire(1000);
+        ByteBuffer second = pool.acquire(1000);
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1000, pool.getPooledBytes());
+    }
+
+    @Test
+    public void release_ignoresHeapBuffers() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(1 << 20);
+        pool.release(ByteBuffer.allocate(100));
+        pool.release(null);
+
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,158 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class EtcTextureTest {
+
+    @Test
+    public void pkm_etc1WithOddSize() throws Exception {
+        // 629x352 like preview_alpha.png, 158x88 blocks
+        ByteBuffer file = pkm('1', 0, 629, 352, 158 * 88 * 8);
+        Texture texture = EtcTexture.parse(file);
+
+        assertEquals(EtcTexture.ETC1_RGB8, texture.mCompressedFormat);
+        assertEquals(629, texture.mWidth);
+        assertEquals(352, texture.mHeight);
+        assertEquals(3, texture.mChannels);
+        assertEquals(158 * 88 * 8, texture.mData.remaining());
+        assertEquals(payloadByte(0), texture.mData.get(0));
+        assertEquals(payloadByte(158 * 88 * 8 - 1), texture.mData.get(158 * 88 * 8 - 1));
+        assertTrue(texture.mData.isDirect());
+    }
+
+    @Test
+    public void pkm_etc2Rgba() throws Exception {
+        Texture texture = EtcTexture.parse(pkm('2', 3, 8, 8, 4 * 16));
+
+        assertEquals(EtcTexture.ETC2_RGBA8_EAC, texture.mCompressedFormat);
+        assertEquals(4, texture.mChannels);
+        assertTrue(EtcTexture.isEtc2(texture.mCompressedFormat));
+        assertTrue(EtcTexture.hasAlpha(texture.mCompressedFormat));
+    }
+
+    @Test(expected = IOException.class)
+    public void pkm_unknownTypeIsRejected() throws Exception {
+        EtcTexture.parse(pkm('2', 5, 8, 8, 4 * 8));
+    }
+
+    @Test(expected = IOException.class)
+    public void pkm_truncatedDataIsRejected() throws Exception {
+        EtcTexture.parse(pkm('1', 0, 8, 8, 4 * 8 - 1));
+    }
+
+    @Test
+    public void ktx_inBothByteOrders() throws Exception {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            Texture texture = EtcTexture.parse(ktx(order, EtcTexture.ETC2_RGB8, 16, 12, 5,
+                    EtcTexture.dataSize(EtcTexture.ETC2_RGB8, 16, 12)));
+
+            assertEquals(EtcTexture.ETC2_RGB8, texture.mCompressedFormat);
+            assertEquals(16, texture.mWidth);
+            assertEquals(12, texture.mHeight);
+            assertEquals(12 * 8, texture.mData.remaining());
+            assertEquals(payloadByte(0), texture.mData.get(0));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void ktx_uncompressedIsRejected() throws Exception {
+        EtcTexture.parse(ktx(ByteOrder.LITTLE_ENDIAN, 0x8058, 4, 4, 0, 64));
+    }
+
+    @Test(expected = IOException.class)
+    public void ktx_wrongImageSizeIsRejected() throws Exception {
+        EtcTexture.parse(ktx(ByteOrder.LITTLE_ENDIAN, EtcTexture.ETC1_RGB8, 8, 8, 0, 4 * 8 + 4));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws Exception {
+        EtcTexture.read(new ByteArrayInputStream(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+    }
+
+    @Test
+    public void compressedTexture_isAQuarterOfItsRgbaSize() throws Exception {
+        Texture rgb = EtcTexture.parse(pkm('1', 0, 64, 64, 16 * 16 * 8));
+        rgb.mAlpha = EtcTexture.parse(pkm('1', 0, 64, 64, 16 * 16 * 8));
+        Texture rgba = EtcTexture.parse(pkm('2', 3, 64, 64, 16 * 16 * 16));
+
+        // A quarter of RGBA bytes, ETC1 with its alpha split off as well as ETC2
+        assertEquals(64 * 64 * 4 / 4, rgb.getByteSize());
+        assertEquals(64 * 64 * 4 / 4, rgba.getByteSize());
+        rgb.setUploaded(true);
+        assertEquals(64 * 64 * 4 / 4, rgb.getGpuBytes());
+    }
+
+    @Test
+    public void splitAlpha_isReleasedAndReloadedWithItsTexture() throws Exception {
+        Texture texture = EtcTexture.parse(pkm('1', 0, 8, 8, 4 * 8));
+        texture.mAlpha = EtcTexture.parse(pkm('1', 0, 8, 8, 4 * 8));
+        texture.mSource = new Texture.Source() {
+            @Override
+            public Texture load() {
+                try {
+                    Texture reloaded = EtcTexture.parse(pkm('1', 0, 8, 8, 4 * 8));
+                    reloaded.mAlpha = EtcTexture.parse(pkm('1', 0, 8, 8, 4 * 8));
+                    return reloaded;
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        };
+
+        assertTrue(texture.releaseDataIfReloadable());
+        assertNull(texture.mAlpha.mData);
+        assertEquals(0, texture.getCpuBytes());
+
+        assertTrue(texture.reloadData());
+        assertNotNull(texture.mAlpha.mData);
+        // Pooled buffers may be larger than asked for
+        assertTrue(texture.getCpuBytes() >= 2 * 4 * 8);
+    }
+
+    private static ByteBuffer pkm(char version, int type, int width, int height, int dataSize) {
+        ByteBuffer file = ByteBuffer.allocate(16 + dataSize).order(ByteOrder.BIG_ENDIAN);
+        file.put((byte) 'P').put((byte) 'K').put((byte) 'M').put((byte) ' ');
+        file.put((byte) version).put((byte) '0');
+        file.putShort((short) type);
+        file.putShort((short) ((width + 3) / 4 * 4)).putShort((short) ((height + 3) / 4 * 4));
+        file.putShort((short) width).putShort((short) height);
+        putPayload(file, dataSize);
+        file.flip();
+        return file;
+    }
+
+    private static ByteBuffer ktx(ByteOrder order, int format, int width, int height,
+                                  int keyValueBytes, int imageSize) {
+        ByteBuffer file = ByteBuffer.allocate(64 + keyValueBytes + 4 + imageSize).order(order);
+        file.put(new byte[]{(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB,
+                '\r', '\n', 0x1A, '\n'});
+        file.putInt(0x04030201);
+        file.putInt(0).putInt(1).putInt(0);     // glType, glTypeSize, glFormat
+        file.putInt(format).putInt(0x1907);     // glInternalFormat, glBaseInternalFormat
+        file.putInt(width).putInt(height).putInt(0);
+        file.putInt(0).putInt(1).putInt(1);     // array elements, faces, mipmap levels
+        file.putInt(keyValueBytes);
+        file.put(new byte[keyValueBytes]);
+        file.putInt(imageSize);
+        putPayload(file, imageSize);
+        file.flip();
+        return file;
+    }
+
+    private static void putPayload(ByteBuffer file, int size) {
+        for (int i = 0; i < size; i++) {
+            file.put(payloadByte(i));
+        }
+    }
+
+    private static byte payloadByte(int i) {
+        return (byte) (i * 31 + 7);
+    }
+}
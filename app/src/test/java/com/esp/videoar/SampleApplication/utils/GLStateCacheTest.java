@@ -0,0 +1,235 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GLStateCacheTest {
+
+    @Test
+    public void redundantCalls_areDroppedAndCounted() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        GLStateCache cache = new GLStateCache(gl);
+
+        for (int i = 0; i < 3; i++) {
+            cache.glUseProgram(5);
+            cache.glEnable(GLES20.GL_BLEND);
+            cache.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+            cache.glDepthFunc(GLES20.GL_LEQUAL);
+        }
+
+        assertEquals(4, gl.calls.size());
+        assertEquals(4, cache.getIssuedCount());
+        assertEquals(8, cache.getSuppressedCount());
+
+        cache.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        cache.glDisable(GLES20.GL_BLEND);
+        assertEquals("glBlendFunc", gl.calls.get(4));
+        assertEquals("glDisable", gl.calls.get(5));
+
+        cache.resetCounters();
+        assertEquals(0, cache.getIssuedCount());
+        assertEquals(0, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void invalidate_passesTheNextCallOn() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        GLStateCache cache = new GLStateCache(gl);
+
+        cache.glUseProgram(5);
+        cache.glEnable(GLES20.GL_DEPTH_TEST);
+        cache.invalidate();
+        cache.glUseProgram(5);
+        cache.glEnable(GLES20.GL_DEPTH_TEST);
+
+        assertEquals(4, gl.calls.size());
+        assertEquals(0, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void textures_areTrackedPerUnitAndTarget() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        GLStateCache cache = new GLStateCache(gl);
+
+        cache.glActiveTexture(GLES20.GL_TEXTURE0);
+        cache.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        cache.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 7);
+        cache.glActiveTexture(GLES20.GL_TEXTURE1);
+        cache.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        assertEquals(5, gl.calls.size());
+
+        cache.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        cache.glActiveTexture(GLES20.GL_TEXTURE0);
+        cache.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        cache.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 7);
+        assertEquals(6, gl.calls.size());
+        assertEquals(3, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void untrackedState_isAlwaysPassedOn() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        GLStateCache cache = new GLStateCache(gl);
+
+        // The active unit is unknown until it is set
+        cache.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        cache.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        cache.glEnable(GLES20.GL_DITHER);
+        cache.glEnable(GLES20.GL_DITHER);
+
+        assertEquals(4, gl.calls.size());
+        assertEquals(4, cache.getIssuedCount());
+        assertEquals(0, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void deletingABoundBuffer_unbindsIt() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        GLStateCache cache = new GLStateCache(gl);
+
+        cache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 3);
+        cache.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 4);
+        cache.glDeleteBuffers(1, new int[]{3}, 0);
+        // Nothing is bound in its place
+        cache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        cache.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 4);
+        assertEquals(2, gl.count("glBindBuffer"));
+
+        // A new buffer may get the deleted name
+        cache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 3);
+        assertEquals(3, gl.count("glBindBuffer"));
+        assertEquals(2, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void disableVertexAttribArrays_disablesOnlyEnabledOnes() throws Exception {
+        RecordingBackend gl = new RecordingBackend();
+        GLStateCache cache = new GLStateCache(gl);
+
+        cache.glEnableVertexAttribArray(0);
+        cache.glEnableVertexAttribArray(2);
+        cache.glDisableVertexAttribArray(2);
+        cache.glEnableVertexAttribArray(3);
+        gl.calls.clear();
+
+        cache.disableVertexAttribArrays();
+        assertEquals(2, gl.count("glDisableVertexAttribArray"));
+        assertEquals(2, gl.calls.size());
+
+        cache.disableVertexAttribArrays();
+        assertEquals(2, gl.calls.size());
+    }
+
+    private static class RecordingBackend implements GLBackend {
+        final List<String> calls = new ArrayList<>();
+
+        int count(String name) {
+            int n = 0;
+            for (String call : calls) {
+                if (call.equals(name))
+                    n++;
+            }
+            return n;
+        }
+
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset) {
+            calls.add("glGenBuffers");
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset) {
+            calls.add("glDeleteBuffers");
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer) {
+            calls.add("glBindBuffer");
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            calls.add("glBufferData");
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                          int stride, int offset) {
+            calls.add("glVertexAttribPointer");
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index) {
+            calls.add("glEnableVertexAttribArray");
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index) {
+            calls.add("glDisableVertexAttribArray");
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset) {
+            calls.add("glDrawElements");
+        }
+
+        @Override
+        public void glUseProgram(int program) {
+            calls.add("glUseProgram");
+        }
+
+        @Override
+        public void glEnable(int cap) {
+            calls.add("glEnable");
+        }
+
+        @Override
+        public void glDisable(int cap) {
+            calls.add("glDisable");
+        }
+
+        @Override
+        public void glBlendFunc(int sfactor, int dfactor) {
+            calls.add("glBlendFunc");
+        }
+
+        @Override
+        public void glDepthFunc(int func) {
+            calls.add("glDepthFunc");
+        }
+
+        @Override
+        public void glActiveTexture(int texture) {
+            calls.add("glActiveTexture");
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture) {
+            calls.add("glBindTexture");
+        }
+
+        @Override
+        public void glUniform1i(int location, int x) {
+            calls.add("glUniform1i");
+        }
+
+        @Override
+        public void glUniform4f(int location, float x, float y, float z, float w) {
+            calls.add("glUniform4f");
+        }
+
+        @Override
+        public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                       float[] value, int offset) {
+            calls.add("glUniformMatrix4fv");
+        }
+    }
+}
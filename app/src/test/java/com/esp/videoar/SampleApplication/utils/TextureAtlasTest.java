@@ -0,0 +1,81 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class TextureAtlasTest {
+
+    @Test
+    public void regions_shareTheAtlasTexture() throws Exception {
+        TextureAtlas atlas = TextureAtlas.build(new String[]{"a", "b"},
+                new Texture[]{texture(4, 2, 1), texture(2, 2, 2)}, 1, 2048);
+        Texture a = atlas.getRegion("a");
+        Texture b = atlas.getRegion("b");
+        Texture texture = atlas.getTexture();
+
+        assertSame(texture, a.mAtlas);
+        assertSame(texture.mTextureID, a.mTextureID);
+        assertSame(texture.mTextureID, b.mTextureID);
+        assertEquals(4, a.mWidth);
+        assertEquals(2, a.mHeight);
+        assertNull(atlas.getRegion("c"));
+
+        // The region covers exactly the image
+        assertEquals(4.0f / texture.mWidth, a.mRegion[2], 0.0f);
+        assertEquals(2.0f / texture.mHeight, a.mRegion[3], 0.0f);
+        int x = Math.round(a.mRegion[0] * texture.mWidth);
+        int y = Math.round(a.mRegion[1] * texture.mHeight);
+        assertEquals(pixel(1, 0, 0), pixel(texture, x, y));
+        assertEquals(pixel(1, 3, 1), pixel(texture, x + 3, y + 1));
+    }
+
+    @Test
+    public void padding_repeatsTheEdgePixels() throws Exception {
+        TextureAtlas atlas = TextureAtlas.build(new String[]{"a"},
+                new Texture[]{texture(3, 3, 5)}, 2, 2048);
+        Texture texture = atlas.getTexture();
+        Texture a = atlas.getRegion("a");
+        int x = Math.round(a.mRegion[0] * texture.mWidth);
+        int y = Math.round(a.mRegion[1] * texture.mHeight);
+
+        assertEquals(7, texture.mWidth);
+        assertEquals(pixel(5, 0, 0), pixel(texture, x - 2, y - 2));
+        assertEquals(pixel(5, 2, 1), pixel(texture, x + 4, y + 1));
+        assertEquals(pixel(5, 1, 2), pixel(texture, x + 1, y + 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compressedImages_areRejected() throws Exception {
+        Texture compressed = texture(4, 4, 1);
+        compressed.mCompressedFormat = EtcTexture.ETC1_RGB8;
+        TextureAtlas.build(new String[]{"a"}, new Texture[]{compressed}, 0, 2048);
+    }
+
+    // Every pixel tells its image, column and row apart
+    private static Texture texture(int width, int height, int image) {
+        Texture texture = new Texture();
+        texture.mWidth = width;
+        texture.mHeight = height;
+        texture.mChannels = 4;
+        texture.mData = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                texture.mData.putInt((y * width + x) * 4, pixel(image, x, y));
+            }
+        }
+        texture.mSuccess = true;
+        return texture;
+    }
+
+    private static int pixel(int image, int x, int y) {
+        return image << 24 | x << 16 | y << 8 | 0xff;
+    }
+
+    private static int pixel(Texture texture, int x, int y) {
+        return texture.mData.getInt((y * texture.mWidth + x) * 4);
+    }
+}
@@ -0,0 +1,195 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TextureCacheTest {
+
+    // 4x4 RGBA, 64 bytes each
+    private static final int BYTES = 64;
+
+    private final Map<String, Integer> pixels = new HashMap<>();
+    private int loads;
+    private TextureCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        pixels.put("a.png", 1);
+        pixels.put("b.png", 2);
+        pixels.put("c.png", 3);
+        pixels.put("copy_of_a.png", 1);
+        loads = 0;
+        cache = newCache(3 * BYTES);
+    }
+
+    @Test
+    public void acquire_decodesEachPathOnce() throws Exception {
+        Texture first = cache.acquire("a.png");
+        Texture second = cache.acquire("a.png");
+
+        assertSame(first, second);
+        assertEquals(1, loads);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(BYTES, cache.getResidentBytes());
+    }
+
+    @Test
+    public void acquire_sharesIdenticalPixelsUnderAnotherPath() throws Exception {
+        Texture a = cache.acquire("a.png");
+        Texture copy = cache.acquire("copy_of_a.png");
+
+        assertSame(a, copy);
+        assertEquals(1, cache.getDuplicateCount());
+        assertEquals(1, cache.size());
+        assertEquals(BYTES, cache.getResidentBytes());
+    }
+
+    @Test
+    public void acquire_returnsNullForMissingAssets() throws Exception {
+        assertNull(cache.acquire("missing.png"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void released_textureStaysUntilTheBudgetIsExceeded() throws Exception {
+        Texture a = cache.acquire("a.png");
+        assertTrue(cache.release(a));
+
+        assertSame(a, cache.acquire("a.png"));
+        assertEquals(1, loads);
+        assertTrue(drainEvicted().isEmpty());
+    }
+
+    @Test
+    public void overBudget_evictsTheLeastRecentlyReleased() throws Exception {
+        cache = newCache(2 * BYTES);
+        Texture a = cache.acquire("a.png");
+        Texture b = cache.acquire("b.png");
+        cache.release(a);
+        cache.release(b);
+        cache.acquire("c.png");
+
+        List<Texture> evicted = drainEvicted();
+        assertEquals(1, evicted.size());
+        assertSame(a, evicted.get(0));
+        assertEquals(2 * BYTES, cache.getResidentBytes());
+        assertTrue(drainEvicted().isEmpty());
+
+        // Decoded again
+        cache.acquire("a.png");
+        assertEquals(4, loads);
+    }
+
+    @Test
+    public void referencedTextures_areNeverEvicted() throws Exception {
+        cache = newCache(BYTES);
+        Texture a = cache.acquire("a.png");
+        cache.acquire("b.png");
+
+        assertTrue(drainEvicted().isEmpty());
+        assertEquals(2 * BYTES, cache.getResidentBytes());
+
+        // Until the last reference goes
+        cache.acquire("a.png");
+        cache.release(a);
+        assertTrue(drainEvicted().isEmpty());
+        cache.release(a);
+        assertSame(a, drainEvicted().get(0));
+    }
+
+    @Test
+    public void release_ignoresOtherTextures() throws Exception {
+        assertFalse(cache.release(texture(9)));
+    }
+
+    @Test
+    public void acquire_decodesOutsideTheLock() throws Exception {
+        // Each decode waits until the other one started
+        final CountDownLatch decoding = new CountDownLatch(2);
+        cache = new TextureCache(3 * BYTES, new TextureCache.Loader() {
+            @Override
+            public Texture load(String path) {
+                decoding.countDown();
+                try {
+                    assertTrue(decoding.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return texture(pixels.get(path));
+            }
+        });
+        final Texture[] acquired = new Texture[4];
+        Thread[] threads = new Thread[4];
+        final String[] paths = {"a.png", "b.png", "a.png", "copy_of_a.png"};
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    acquired[index] = cache.acquire(paths[index]);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        // Racing decodes of the same pixels end up with one texture
+        assertNotNull(acquired[0]);
+        assertSame(acquired[0], acquired[2]);
+        assertSame(acquired[0], acquired[3]);
+        assertNotSame(acquired[0], acquired[1]);
+        assertEquals(2, cache.size());
+        assertEquals(2 * BYTES, cache.getResidentBytes());
+
+        // Every reference counts
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.release(acquired[0]));
+        }
+        assertFalse(cache.release(acquired[0]));
+    }
+
+    private List<Texture> drainEvicted() {
+        List<Texture> evicted = new ArrayList<>();
+        assertEquals(cache.drainEvicted(evicted), evicted.size());
+        return evicted;
+    }
+
+    private TextureCache newCache(long budget) {
+        return new TextureCache(budget, new TextureCache.Loader() {
+            @Override
+            public Texture load(String path) {
+                Integer value = pixels.get(path);
+                if (value == null)
+                    return null;
+                loads++;
+                return texture(value);
+            }
+        });
+    }
+
+    private static Texture texture(int value) {
+        Texture texture = new Texture();
+        texture.mWidth = 4;
+        texture.mHeight = 4;
+        texture.mChannels = 4;
+        texture.mData = ByteBuffer.allocateDirect(BYTES);
+        for (int i = 0; i < BYTES; i++) {
+            texture.mData.put(i, (byte) value);
+        }
+        texture.mSuccess = true;
+        return texture;
+    }
+}
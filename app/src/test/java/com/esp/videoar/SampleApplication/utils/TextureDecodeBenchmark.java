@@ -0,0 +1,94 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the former texture decode path, Bitmap.getPixels() into an int[], a per pixel
+ * shuffle into a byte[] and a row by row copy into a new direct buffer, with the current one,
+ * Bitmap.copyPixelsToBuffer() into a pooled direct buffer and an in place row flip.
+ *
+ * There is no Bitmap on the JVM: getPixels() is stood in for by copying an int[] and
+ * copyPixelsToBuffer() by a bulk put of a byte[], which is what both amount to. Reports the
+ * time per decode and the Java heap allocated per decode, the peak is roughly that plus the
+ * image. Direct buffers are not on the heap, the new path takes them from the pool.
+ *
+ * Not a unit test, run it from the IDE or with
+ * java -Xmx1g -cp &lt;test classes&gt;:&lt;classes&gt; com.esp.videoar.SampleApplication.utils.TextureDecodeBenchmark
+ */
+public class TextureDecodeBenchmark {
+
+    private static final int[] EDGES = {512, 1024, 2048, 4096};
+    // Pixels decoded per size, so that the larger sizes do not take minutes
+    private static final long PIXELS_PER_SIZE = 256L * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        for (int edge : EDGES) {
+            int pixels = edge * edge;
+            int iterations = (int) Math.max(3, PIXELS_PER_SIZE / pixels);
+
+            // The bitmap, as ARGB ints and as the RGBA bytes it holds
+            int[] argb = new int[pixels];
+            byte[] rgba = new byte[pixels * 4];
+            for (int i = 0; i < pixels; i++) {
+                argb[i] = i * 0x9e3779b1;
+                rgba[i * 4] = (byte) (argb[i] >>> 16);
+                rgba[i * 4 + 1] = (byte) (argb[i] >>> 8);
+                rgba[i * 4 + 2] = (byte) argb[i];
+                rgba[i * 4 + 3] = (byte) (argb[i] >>> 24);
+            }
+
+            // Warm up both
+            oldPath(argb, edge);
+            newPath(rgba, edge);
+
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                oldPath(argb, edge);
+            }
+            long oldNanos = System.nanoTime() - start;
+            long oldAllocated = allocatedBytes() - allocated;
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                newPath(rgba, edge);
+            }
+            long newNanos = System.nanoTime() - start;
+            long newAllocated = allocatedBytes() - allocated;
+
+            System.out.println(String.format(
+                    "%4d x %-4d old %8.2f ms %8.1f MB heap, new %8.2f ms %8.3f MB heap",
+                    edge, edge,
+                    oldNanos / 1e6 / iterations, oldAllocated / 1048576.0 / iterations,
+                    newNanos / 1e6 / iterations, newAllocated / 1048576.0 / iterations));
+        }
+    }
+
+    private static Texture oldPath(int[] bitmap, int edge) {
+        int[] data = new int[edge * edge];
+        System.arraycopy(bitmap, 0, data, 0, data.length);
+        return Texture.loadTextureFromIntBuffer(data, edge, edge);
+    }
+
+    private static Texture newPath(byte[] bitmap, int edge) {
+        Texture texture = new Texture();
+        texture.mWidth = edge;
+        texture.mHeight = edge;
+        texture.mChannels = 4;
+        texture.mData = Texture.BUFFER_POOL.acquire(bitmap.length);
+        texture.mData.put(bitmap);
+        texture.mData.rewind();
+        Texture.flipRows(texture.mData, edge * 4, edge);
+        // Uploaded and deleted, see VideoRenderer.uploadPosterFrames()
+        ByteBuffer data = texture.mData;
+        texture.releaseData();
+        return data != null ? texture : null;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,173 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TextureLoaderTest {
+
+    private TextureLoader loader;
+    private final List<Integer> uploadedSlots = new ArrayList<>();
+    private final List<String> uploadThreads = new ArrayList<>();
+    private final List<Texture> reloadedPixels = new ArrayList<>();
+    private final TextureLoader.Uploader uploader = new TextureLoader.Uploader() {
+        @Override
+        public void upload(int slot, Texture texture) {
+            uploadedSlots.add(slot);
+            uploadThreads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void reloaded(Texture texture, Texture pixels) {
+            assertTrue(texture.adoptData(pixels));
+            reloadedPixels.add(pixels);
+            uploadThreads.add(Thread.currentThread().getName());
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        loader = new TextureLoader(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loader.shutdown();
+    }
+
+    @Test
+    public void decodesInTheBackgroundAndUploadsOnTheCaller() throws Exception {
+        final List<String> decodeThreads = new ArrayList<>();
+        loader.load(3, new TextureLoader.Decoder() {
+            @Override
+            public Texture decode() {
+                synchronized (decodeThreads) {
+                    decodeThreads.add(Thread.currentThread().getName());
+                }
+                return new Texture();
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loader.uploadPending(uploader, Long.MAX_VALUE) == 0) {
+            assertTrue("decoding timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        assertEquals(1, uploadedSlots.size());
+        assertEquals(3, (int) uploadedSlots.get(0));
+        assertEquals(Thread.currentThread().getName(), uploadThreads.get(0));
+        assertNotEquals(Thread.currentThread().getName(), decodeThreads.get(0));
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    public void budget_limitsTheUploadsPerFrame() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            loader.deliver(i, new Texture());
+        }
+        TextureLoader.Uploader slowUploader = new TextureLoader.Uploader() {
+            @Override
+            public void upload(int slot, Texture texture) {
+                uploadedSlots.add(slot);
+                sleep(5);
+            }
+
+            @Override
+            public void reloaded(Texture texture, Texture pixels) {
+                fail("nothing to reload");
+            }
+        };
+
+        // Past the budget after the first, which is always uploaded
+        assertEquals(1, loader.uploadPending(slowUploader, 1000 * 1000));
+        assertEquals(2, loader.getPendingCount());
+        assertEquals(1, loader.uploadPending(slowUploader, 0));
+        assertEquals(1, loader.uploadPending(slowUploader, Long.MAX_VALUE));
+        assertEquals(0, loader.uploadPending(slowUploader, Long.MAX_VALUE));
+        assertEquals("[0, 1, 2]", uploadedSlots.toString());
+    }
+
+    @Test
+    public void failedDecodes_areNotUploaded() throws Exception {
+        loader.load(0, new TextureLoader.Decoder() {
+            @Override
+            public Texture decode() {
+                return null;
+            }
+        });
+        loader.load(1, new TextureLoader.Decoder() {
+            @Override
+            public Texture decode() {
+                throw new IllegalStateException("corrupt image");
+            }
+        });
+        loader.load(2, new TextureLoader.Decoder() {
+            @Override
+            public Texture decode() {
+                throw new OutOfMemoryError("bitmap too large");
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loader.getPendingCount() > 0) {
+            assertTrue("decoding timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        assertEquals(0, loader.uploadPending(uploader, Long.MAX_VALUE));
+        assertTrue(uploadedSlots.isEmpty());
+    }
+
+    @Test
+    public void reload_loadsTheSourceInTheBackground() throws Exception {
+        final List<String> loadThreads = new ArrayList<>();
+        Texture texture = rgba(2, 2);
+        texture.mSource = new Texture.Source() {
+            @Override
+            public Texture load() {
+                synchronized (loadThreads) {
+                    loadThreads.add(Thread.currentThread().getName());
+                }
+                return rgba(2, 2);
+            }
+        };
+        texture.releaseData();
+
+        loader.reload(texture);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loader.uploadPending(uploader, Long.MAX_VALUE) == 0) {
+            assertTrue("reloading timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        assertTrue(uploadedSlots.isEmpty());
+        assertEquals(1, reloadedPixels.size());
+        assertNotNull(texture.mData);
+        assertEquals(Thread.currentThread().getName(), uploadThreads.get(0));
+        assertNotEquals(Thread.currentThread().getName(), loadThreads.get(0));
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    private static Texture rgba(int width, int height) {
+        Texture texture = new Texture();
+        texture.mWidth = width;
+        texture.mHeight = height;
+        texture.mChannels = 4;
+        texture.mData = ByteBuffer.allocateDirect(width * height * 4);
+        texture.mSuccess = true;
+        return texture;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
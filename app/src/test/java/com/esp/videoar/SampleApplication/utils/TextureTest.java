@@ -0,0 +1,129 @@
+package com.esp.videoar.SampleApplication.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TextureTest {
+
+    @Test
+    public void flipRows_swapsTopAndBottom() throws Exception {
+        ByteBuffer data = rows(3, 2);
+        Texture.flipRows(data, 2, 3);
+
+        assertArrayEquals(new byte[]{2, 2, 1, 1, 0, 0}, bytes(data));
+        assertEquals(0, data.position());
+    }
+
+    @Test
+    public void flipRows_matchesTheIntBufferPath() throws Exception {
+        // 2x2 ARGB: red, green on top, blue, white with half alpha below
+        int[] argb = {0xffff0000, 0xff00ff00, 0xff0000ff, 0x80ffffff};
+        Texture reference = Texture.loadTextureFromIntBuffer(argb, 2, 2);
+
+        ByteBuffer rgba = ByteBuffer.allocateDirect(16);
+        for (int pixel : argb) {
+            rgba.put((byte) (pixel >>> 16)).put((byte) (pixel >>> 8)).put((byte) pixel)
+                    .put((byte) (pixel >>> 24));
+        }
+        rgba.rewind();
+        Texture.flipRows(rgba, 8, 2);
+
+        assertArrayEquals(bytes(reference.mData), bytes(rgba));
+    }
+
+    @Test
+    public void sampleSize_bringsTheLongerEdgeDown() throws Exception {
+        assertEquals(1, Texture.sampleSizeFor(512, 256, 512));
+        assertEquals(2, Texture.sampleSizeFor(1024, 256, 512));
+        assertEquals(4, Texture.sampleSizeFor(300, 4096, 1024));
+        assertEquals(8, Texture.sampleSizeFor(4097, 100, 1024));
+    }
+
+    @Test
+    public void uploadedTexture_releasesAndReloadsItsPixels() throws Exception {
+        final Texture original = texture(7);
+        final int[] loads = {0};
+        original.mSource = new Texture.Source() {
+            @Override
+            public Texture load() {
+                loads[0]++;
+                return texture(7);
+            }
+        };
+        original.setUploaded(true);
+
+        assertTrue(original.releaseDataIfReloadable());
+        assertNull(original.mData);
+        assertEquals(0, original.getCpuBytes());
+        assertEquals(64, original.getGpuBytes());
+
+        // The context is lost
+        original.setUploaded(false);
+        assertTrue(original.reloadData());
+        assertEquals(1, loads[0]);
+        assertEquals(64, original.getCpuBytes());
+        assertEquals(0, original.getGpuBytes());
+        assertEquals(7, original.mData.get(63));
+
+        // Already there
+        assertTrue(original.reloadData());
+        assertEquals(1, loads[0]);
+    }
+
+    @Test
+    public void textureWithoutSource_keepsItsPixels() throws Exception {
+        Texture texture = texture(1);
+
+        assertFalse(texture.releaseDataIfReloadable());
+        assertNotNull(texture.mData);
+        assertEquals(64, texture.getCpuBytes());
+    }
+
+    @Test
+    public void reload_failsWhenTheSourceChangedSize() throws Exception {
+        Texture texture = texture(1);
+        texture.mSource = new Texture.Source() {
+            @Override
+            public Texture load() {
+                Texture larger = texture(1);
+                larger.mWidth = 8;
+                return larger;
+            }
+        };
+        texture.releaseDataIfReloadable();
+
+        assertFalse(texture.reloadData());
+        assertNull(texture.mData);
+    }
+
+    // 4x4 RGBA
+    private static Texture texture(int value) {
+        Texture texture = new Texture();
+        texture.mWidth = 4;
+        texture.mHeight = 4;
+        texture.mChannels = 4;
+        texture.mData = ByteBuffer.allocateDirect(64);
+        for (int i = 0; i < 64; i++) {
+            texture.mData.put(i, (byte) value);
+        }
+        texture.mSuccess = true;
+        return texture;
+    }
+
+    private static ByteBuffer rows(int rows, int rowSize) {
+        ByteBuffer data = ByteBuffer.allocateDirect(rows * rowSize);
+        for (int i = 0; i < rows * rowSize; i++) {
+            data.put(i, (byte) (i / rowSize));
+        }
+        return data;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,299 @@
+package com.esp.videoar;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import com.esp.videoar.SampleApplication.utils.GLBackend;
+import com.esp.videoar.SampleApplication.utils.GLStateCache;
+import com.esp.videoar.SampleApplication.utils.Texture;
+import com.esp.videoar.SampleApplication.utils.TextureCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the per-target draws of VideoRenderer.renderFrame() against a counting GL backend.
+ */
+public class TargetDrawerTest {
+
+    private static final int NUM_TARGETS = MainActivity.NUM_TARGETS;
+
+    private static final float[] PROJECTION = {
+            1.8f, 0.0f, 0.0f, 0.0f,
+            0.0f, 3.2f, 0.0f, 0.0f,
+            0.1f, -0.2f, -1.0f, -1.0f,
+            0.0f, 0.0f, -4.0f, 0.0f};
+
+    // Row-major 3x4, as Vuforia delivers it
+    private static final float[] POSE = {
+            0.9f, -0.1f, 0.2f, 12.0f,
+            0.1f, 0.95f, -0.05f, -7.0f,
+            -0.2f, 0.05f, 0.97f, 300.0f};
+
+    // The texture names: keyframes from 100, icons from 200, videos from 300
+    private static final int MISSING = 99;
+
+    private final CountingBackend gl = new CountingBackend();
+    private final QuadScratch scratch = new QuadScratch(NUM_TARGETS);
+    private final float[] keyframeAspectRatio = new float[NUM_TARGETS];
+    private final float[] videoAspectRatio = new float[NUM_TARGETS];
+    private final int[] videoTextureIDs = new int[NUM_TARGETS];
+    private final float[][] texCoordTransforms = new float[NUM_TARGETS][16];
+    private final List<Texture> textures = new ArrayList<>();
+    private TargetDrawer drawer;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < NUM_TARGETS; i++) {
+            textures.add(texture(100 + i));
+            keyframeAspectRatio[i] = 0.75f;
+            videoAspectRatio[i] = 0.5625f;
+            videoTextureIDs[i] = 300 + i;
+        }
+        // The first keyframe keeps its alpha in a second texture
+        textures.get(0).mAlpha = texture(150);
+        textures.get(0).setUploaded(true);
+        for (int i = 0; i < 3; i++) {
+            textures.add(texture(200 + i));
+        }
+
+        QuadGeometry quad = new QuadGeometry();
+        GLStateCache cache = new GLStateCache(gl);
+        quad.upload(cache);
+        drawer = new TargetDrawer(cache, quad, scratch, keyframeAspectRatio, videoAspectRatio,
+                videoTextureIDs, texCoordTransforms);
+        drawer.setTextures(textures);
+        drawer.setMissingTexture(texture(MISSING));
+    }
+
+    @Test
+    public void keyframeAndIcon_areDrawnUntilTheVideoPlays() throws Exception {
+        assertEquals(2, drawOne(3, MediaState.READY));
+        assertEquals(VideoRenderer.PLAY_ICON + 200 - NUM_TARGETS, gl.bound2D);
+
+        assertEquals(2, drawOne(3, MediaState.NOT_READY));
+        assertEquals(VideoRenderer.BUSY_ICON + 200 - NUM_TARGETS, gl.bound2D);
+
+        assertEquals(2, drawOne(3, MediaState.ERROR));
+        assertEquals(VideoRenderer.ERROR_ICON + 200 - NUM_TARGETS, gl.bound2D);
+
+        // The video alone while it plays, with the play icon while paused
+        gl.bound2D = 0;
+        assertEquals(1, drawOne(3, MediaState.PLAYING));
+        assertEquals(303, gl.boundExternal);
+        assertEquals(0, gl.bound2D);
+        assertEquals(2, drawOne(3, MediaState.PAUSED));
+        assertEquals(VideoRenderer.PLAY_ICON + 200 - NUM_TARGETS, gl.bound2D);
+    }
+
+    @Test
+    public void splitAlphaKeyframes_bindTheirAlphaTexture() throws Exception {
+        drawer.beginFrame(PROJECTION);
+        scratch.setPose34(0, POSE);
+        drawer.drawTarget(0, MediaState.PLAYING, 50.0f, 30.0f);
+        assertEquals(0, gl.bound2D);
+
+        drawer.drawTarget(0, MediaState.REACHED_END, 50.0f, 30.0f);
+        assertTrue(gl.bound2DHistory.contains(150));
+        assertTrue(gl.bound2DHistory.contains(100));
+    }
+
+    @Test
+    public void textureNotUploadedYet_drawsTheMissingTexture() throws Exception {
+        textures.get(2).setUploaded(false);
+
+        drawer.beginFrame(PROJECTION);
+        scratch.setPose34(2, POSE);
+        drawer.drawTarget(2, MediaState.READY, 50.0f, 30.0f);
+
+        assertTrue(gl.bound2DHistory.contains(MISSING));
+        assertFalse(gl.bound2DHistory.contains(102));
+    }
+
+    @Test
+    public void steadyStateFrame_doesNotAllocate() throws Exception {
+        TextureCache cache = new TextureCache(1024, new TextureCache.Loader() {
+            @Override
+            public Texture load(String path) {
+                return null;
+            }
+        });
+        MediaState[] states = MediaState.values();
+        gl.recordHistory = false;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so that class loading and compilation are out of the way
+        for (int frame = 0; frame < 20000; frame++) {
+            renderFrame(cache, states, frame);
+        }
+
+        // The accounting call itself may allocate, measure it on its own first
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < 1000; frame++) {
+            renderFrame(cache, states, frame);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("steady state frames allocated " + (allocated - overhead) + " bytes",
+                allocated <= overhead);
+        assertTrue(gl.draws > 0);
+    }
+
+    // What renderFrame() does with the drawer once Vuforia delivered the poses
+    private void renderFrame(TextureCache cache, MediaState[] states, int frame) {
+        List<Texture> evicted = drawer.drainEvicted(cache);
+        for (int i = 0; i < evicted.size(); i++) {
+            fail("nothing is evicted");
+        }
+        drawer.beginFrame(PROJECTION);
+        for (int target = 0; target < NUM_TARGETS; target++) {
+            scratch.setPose34(target, POSE);
+            drawer.drawTarget(target, states[(frame + target) % states.length], 50.0f, 30.0f);
+        }
+        drawer.endFrame();
+    }
+
+    private int drawOne(int target, MediaState state) {
+        int draws = gl.draws;
+        drawer.beginFrame(PROJECTION);
+        scratch.setPose34(target, POSE);
+        drawer.drawTarget(target, state, 50.0f, 30.0f);
+        drawer.endFrame();
+        return gl.draws - draws;
+    }
+
+    private static Texture texture(int name) {
+        Texture texture = new Texture();
+        texture.mWidth = 4;
+        texture.mHeight = 4;
+        texture.mChannels = 4;
+        texture.mTextureID[0] = name;
+        texture.mSuccess = true;
+        texture.setUploaded(true);
+        return texture;
+    }
+
+    // Counts in fields only, so that it allocates nothing itself
+    private static class CountingBackend implements GLBackend {
+        int calls;
+        int draws;
+        int bound2D;
+        int boundExternal;
+        boolean recordHistory = true;
+        final List<Integer> bound2DHistory = new ArrayList<>();
+
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset) {
+            for (int i = 0; i < n; i++) {
+                buffers[offset + i] = ++calls;
+            }
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset) {
+            calls++;
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer) {
+            calls++;
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            calls++;
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                          int stride, int offset) {
+            calls++;
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index) {
+            calls++;
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index) {
+            calls++;
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset) {
+            calls++;
+            draws++;
+        }
+
+        @Override
+        public void glUseProgram(int program) {
+            calls++;
+        }
+
+        @Override
+        public void glEnable(int cap) {
+            calls++;
+        }
+
+        @Override
+        public void glDisable(int cap) {
+            calls++;
+        }
+
+        @Override
+        public void glBlendFunc(int sfactor, int dfactor) {
+            calls++;
+        }
+
+        @Override
+        public void glDepthFunc(int func) {
+            calls++;
+        }
+
+        @Override
+        public void glActiveTexture(int texture) {
+            calls++;
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture) {
+            calls++;
+            if (target == GLES20.GL_TEXTURE_2D) {
+                bound2D = texture;
+                if (recordHistory)
+                    bound2DHistory.add(texture);
+            } else if (target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES) {
+                boundExternal = texture;
+            }
+        }
+
+        @Override
+        public void glUniform1i(int location, int x) {
+            calls++;
+        }
+
+        @Override
+        public void glUniform4f(int location, float x, float y, float z, float w) {
+            calls++;
+        }
+
+        @Override
+        public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                       float[] value, int offset) {
+            calls++;
+        }
+    }
+}
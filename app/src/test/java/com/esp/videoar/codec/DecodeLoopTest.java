@@ -0,0 +1,264 @@
+package com.esp.videoar.codec;
+
+import com.esp.videoar.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DecodeLoopTest {
+
+    // 2 s at 25 fps, a sync sample every 10 frames
+    private static final long FRAME_US = 40000;
+    private static final int FRAMES = 50;
+    private static final int GOP = 10;
+
+    private long now;
+    private FakeCodec codec;
+    private FakeSource source;
+    private int endOfStreams;
+    private DecodeLoop loop;
+
+    @Before
+    public void setUp() throws Exception {
+        now = 1000;
+        codec = new FakeCodec();
+        source = new FakeSource();
+        endOfStreams = 0;
+        loop = newLoop(3);
+    }
+
+    @Test
+    public void firstFrame_isShownBeforePlaying() throws Exception {
+        steps(10);
+
+        assertEquals(1, codec.rendered.size());
+        assertEquals(Long.valueOf(0), codec.rendered.get(0));
+        assertFalse(loop.isPlaying());
+    }
+
+    @Test
+    public void outputDepth_limitsTheFramesWaiting() throws Exception {
+        steps(10);
+
+        assertEquals(3, loop.getPendingFrameCount());
+        assertTrue(codec.outstanding <= 3);
+    }
+
+    @Test
+    public void playing_rendersEveryFrameOnTime() throws Exception {
+        loop.start();
+        for (int i = 0; i < FRAMES + 10; i++) {
+            steps(3);
+            now += FRAME_US / 1000;
+        }
+
+        assertEquals(FRAMES, codec.rendered.size());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(Long.valueOf(i * FRAME_US), codec.rendered.get(i));
+        }
+        assertEquals(0, loop.getLateFrameCount());
+        assertEquals(1, endOfStreams);
+        assertFalse(loop.isPlaying());
+    }
+
+    @Test
+    public void lateFrames_areDroppedWhenNewerOnesWait() throws Exception {
+        loop.start();
+        steps(3);
+        now += 400;
+        steps(20);
+
+        assertTrue(loop.getLateFrameCount() > 0);
+        long last = codec.rendered.get(codec.rendered.size() - 1);
+        assertTrue(last >= 400000 - DecodeLoop.LATE_US);
+    }
+
+    @Test
+    public void seek_showsTheFirstFrameAtTheTarget() throws Exception {
+        steps(10);
+        loop.seekTo(1500000);
+        steps(20);
+
+        assertEquals(1, codec.flushes);
+        // From the sync sample at 1.2 s, 8 frames decoded only to get there
+        assertEquals(8, loop.getSeekDroppedFrameCount());
+        assertEquals(Long.valueOf(1520000), codec.rendered.get(codec.rendered.size() - 1));
+        assertEquals(1500000, loop.getPositionUs());
+    }
+
+    @Test
+    public void previousSyncSeek_showsTheKeyframeWithoutDropping() throws Exception {
+        steps(10);
+        loop.seekTo(1500000, true);
+        steps(20);
+
+        assertEquals(1, codec.flushes);
+        assertEquals(0, loop.getSeekDroppedFrameCount());
+        assertEquals(Long.valueOf(1200000), codec.rendered.get(codec.rendered.size() - 1));
+        assertEquals(1200000, loop.getPositionUs());
+    }
+
+    @Test
+    public void shortForwardSeek_decodesOnWithoutFlushing() throws Exception {
+        steps(10);
+        loop.seekTo(200000);
+        steps(20);
+
+        assertEquals(0, codec.flushes);
+        assertEquals(Long.valueOf(200000), codec.rendered.get(codec.rendered.size() - 1));
+    }
+
+    @Test
+    public void start_afterTheEndPlaysFromTheStart() throws Exception {
+        loop.start();
+        for (int i = 0; i < FRAMES + 10; i++) {
+            steps(3);
+            now += FRAME_US / 1000;
+        }
+        codec.rendered.clear();
+        loop.start();
+        steps(3);
+
+        assertEquals(Long.valueOf(0), codec.rendered.get(0));
+    }
+
+    private void steps(int count) {
+        for (int i = 0; i < count; i++) {
+            loop.step();
+        }
+    }
+
+    private DecodeLoop newLoop(int outputDepth) {
+        MediaClock clock = new MediaClock(new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now;
+            }
+        });
+        return new DecodeLoop(codec, source, clock, outputDepth, new DecodeLoop.Listener() {
+            @Override
+            public void onEndOfStream() {
+                endOfStreams++;
+            }
+        });
+    }
+
+    private static class FakeSource implements SampleSource {
+        int sample = 0;
+
+        @Override
+        public long getSampleTime() {
+            return sample < FRAMES ? sample * FRAME_US : -1;
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer) {
+            return 0;
+        }
+
+        @Override
+        public boolean advance() {
+            sample++;
+            return sample < FRAMES;
+        }
+
+        @Override
+        public void seekTo(long timeUs) {
+            sample = (int) (timeUs / FRAME_US) / GOP * GOP;
+        }
+    }
+
+    // Decodes the samples in the order they are queued, hands out at most 4
+    // input and 4 output buffers at a time
+    private static class FakeCodec implements Codec {
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        final ArrayDeque<Long> decoded = new ArrayDeque<>();
+        final List<Long> rendered = new ArrayList<>();
+        final long[] outputTimes = new long[4];
+        int freeInputs = 4;
+        int outstanding = 0;
+        boolean endQueued = false;
+        int flushes = 0;
+
+        FakeCodec() {
+            Arrays.fill(outputTimes, -1);
+        }
+
+        @Override
+        public int dequeueInputBuffer() {
+            if (freeInputs == 0)
+                return NO_BUFFER;
+            freeInputs--;
+            return freeInputs;
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return buffer;
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int size, long presentationTimeUs) {
+            decoded.add(presentationTimeUs);
+        }
+
+        @Override
+        public void queueEndOfStream(int index) {
+            endQueued = true;
+        }
+
+        @Override
+        public int dequeueOutputBuffer(OutputInfo info) {
+            if (outstanding == outputTimes.length)
+                return NO_BUFFER;
+            if (decoded.isEmpty() && !endQueued)
+                return NO_BUFFER;
+
+            int index = freeOutput();
+            info.endOfStream = decoded.isEmpty();
+            info.presentationTimeUs = info.endOfStream ? 0 : decoded.poll();
+            if (info.endOfStream)
+                endQueued = false;
+            // The input buffer is free again once its frame is decoded
+            freeInputs++;
+            outputTimes[index] = info.presentationTimeUs;
+            outstanding++;
+            return index;
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index, boolean render) {
+            assertTrue(outputTimes[index] >= 0);
+            if (render)
+                rendered.add(outputTimes[index]);
+            outputTimes[index] = -1;
+            outstanding--;
+        }
+
+        @Override
+        public void flush() {
+            decoded.clear();
+            endQueued = false;
+            freeInputs = 4;
+            outstanding = 0;
+            Arrays.fill(outputTimes, -1);
+            flushes++;
+        }
+
+        private int freeOutput() {
+            for (int i = 0; i < outputTimes.length; i++) {
+                if (outputTimes[i] < 0)
+                    return i;
+            }
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.esp.videoar.codec;
+
+import com.esp.videoar.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MediaClockTest {
+
+    private long now;
+    private MediaClock clock;
+
+    @Before
+    public void setUp() throws Exception {
+        now = 5000;
+        clock = new MediaClock(new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void mediaTime_advancesOnlyWhileRunning() throws Exception {
+        now += 100;
+        assertEquals(0, clock.getMediaTimeUs());
+
+        clock.start();
+        now += 100;
+        clock.pause();
+        now += 100;
+
+        assertEquals(100000, clock.getMediaTimeUs());
+    }
+
+    @Test
+    public void setMediaTime_keepsRunning() throws Exception {
+        clock.start();
+        now += 100;
+        clock.setMediaTimeUs(2000000);
+        now += 50;
+
+        assertTrue(clock.isRunning());
+        assertEquals(2050000, clock.getMediaTimeUs());
+    }
+}
@@ -0,0 +1,38 @@
+package com.esp.videoar.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SeekPlannerTest {
+
+    @Test
+    public void plan_flushesOnlyForBackwardAndFarSeeks() throws Exception {
+        SeekPlanner planner = new SeekPlanner();
+
+        assertFalse(planner.plan(1500000, 1000000));
+        assertTrue(planner.plan(500000, 1000000));
+        assertTrue(planner.plan(1000000 + SeekPlanner.MAX_DECODE_AHEAD_US + 1, 1000000));
+        assertTrue(planner.plan(1500000, -1));
+    }
+
+    @Test
+    public void shouldDrop_dropsTheFramesBeforeTheTarget() throws Exception {
+        SeekPlanner planner = new SeekPlanner();
+        planner.plan(100000, -1);
+
+        assertTrue(planner.shouldDrop(60000));
+        assertFalse(planner.shouldDrop(100000));
+        assertEquals(1, planner.getDroppedFrameCount());
+    }
+
+    @Test
+    public void complete_endsTheSeek() throws Exception {
+        SeekPlanner planner = new SeekPlanner();
+        planner.plan(100000, -1);
+        planner.complete();
+
+        assertFalse(planner.isSeeking());
+        assertFalse(planner.shouldDrop(0));
+    }
+}
@@ -0,0 +1,150 @@
+package com.esp.videoar.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import static com.esp.videoar.mp4.Mp4ParserTest.ASSETS;
+import static org.junit.Assert.*;
+
+public class FaststartTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("faststart").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void bundledVideos_areFaststart() throws Exception {
+        for (String name : new String[]{"nike.mp4", "small.mp4", "green_flag.mp4"}) {
+            assertTrue(name, Faststart.isFaststart(new File(ASSETS, name)));
+        }
+    }
+
+    @Test
+    public void check_findsTheMoovAtTheEnd() throws Exception {
+        File file = moovAtTheEnd(dir, "small.mp4");
+
+        assertFalse(Faststart.isFaststart(file));
+        assertTrue(Mp4Parser.parse(file).getMoovOffset() > Mp4Parser.parse(file).getMdatOffset());
+    }
+
+    @Test
+    public void remux_small_keepsTheChunksInPlace() throws Exception {
+        assertRemuxed("small.mp4");
+    }
+
+    @Test
+    public void remux_greenFlag_keepsTheChunksInPlace() throws Exception {
+        assertRemuxed("green_flag.mp4");
+    }
+
+    @Test
+    public void process_rewritesOnlyOnce() throws Exception {
+        File file = moovAtTheEnd(dir, "green_flag.mp4");
+
+        assertTrue(Faststart.process(file));
+        assertTrue(Faststart.isFaststart(file));
+        assertFalse(Faststart.process(file));
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void remux_readsARangeOfALargerFile() throws Exception {
+        File source = moovAtTheEnd(dir, "small.mp4");
+        File padded = new File(dir, "padded.bin");
+        try (FileOutputStream out = new FileOutputStream(padded)) {
+            out.write(new byte[1000]);
+            out.write(Files.readAllBytes(source.toPath()));
+        }
+        File remuxed = new File(dir, "remuxed.mp4");
+        try (FileInputStream in = new FileInputStream(padded);
+             FileOutputStream out = new FileOutputStream(remuxed)) {
+            Faststart.remux(in.getChannel(), 1000, source.length(), out.getChannel());
+        }
+
+        assertTrue(Faststart.isFaststart(remuxed));
+        assertEquals(source.length(), remuxed.length());
+    }
+
+    private void assertRemuxed(String name) throws IOException {
+        File source = moovAtTheEnd(dir, name);
+        File remuxed = new File(dir, "remuxed-" + name);
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(remuxed)) {
+            Faststart.remux(in.getChannel(), 0, source.length(), out.getChannel());
+        }
+
+        assertFalse(Faststart.isFaststart(source));
+        assertTrue(Faststart.isFaststart(remuxed));
+        assertEquals(source.length(), remuxed.length());
+
+        Mp4Info before = Mp4Parser.parse(source);
+        Mp4Info after = Mp4Parser.parse(remuxed);
+        assertEquals(before.getDurationUs(), after.getDurationUs());
+        assertEquals(before.getSampleCount(), after.getSampleCount());
+        assertEquals(before.getSyncSamples().size(), after.getSyncSamples().size());
+        assertTrue(after.getMoovOffset() < after.getMdatOffset());
+
+        // Every chunk offset has to point at the same bytes as before
+        long[] oldOffsets = Faststart.readChunkOffsets(readMoov(source, before));
+        long[] newOffsets = Faststart.readChunkOffsets(readMoov(remuxed, after));
+        assertEquals(oldOffsets.length, newOffsets.length);
+        assertTrue(oldOffsets.length > 0);
+        try (RandomAccessFile oldFile = new RandomAccessFile(source, "r");
+             RandomAccessFile newFile = new RandomAccessFile(remuxed, "r")) {
+            byte[] oldBytes = new byte[16];
+            byte[] newBytes = new byte[16];
+            for (int i = 0; i < oldOffsets.length; i++) {
+                oldFile.seek(oldOffsets[i]);
+                oldFile.readFully(oldBytes);
+                newFile.seek(newOffsets[i]);
+                newFile.readFully(newBytes);
+                assertArrayEquals("chunk " + i, oldBytes, newBytes);
+            }
+        }
+    }
+
+    private static ByteBuffer readMoov(File file, Mp4Info info) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, info.getMoovOffset());
+            ByteBuffer moov = ByteBuffer.allocate(header.getInt(0));
+            channel.read(moov, info.getMoovOffset());
+            moov.flip();
+            return moov;
+        }
+    }
+
+    // A copy of the bundled video in dir with the movie box at the end, as
+    // the encoders write it
+    static File moovAtTheEnd(File dir, String name) throws IOException {
+        File source = new File(ASSETS, name);
+        File file = new File(dir, name);
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(file)) {
+            Faststart.moveMoovToEnd(in.getChannel(), 0, source.length(), out.getChannel());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,62 @@
+package com.esp.videoar.mp4;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Counts the frames the decoder has to get through before it shows the first frame after a
+ * resume, for random resume positions in the bundled videos, from their real keyframe index:
+ * seeking exactly, snapping to the previous keyframe within the tolerance the renderer uses,
+ * and letting the player seek to the previous keyframe, which the renderer only allows when no
+ * keyframe gap is longer than the tolerance. The resume latencies themselves depend on the
+ * decoder, VideoRenderer logs them on the device with its media statistics.
+ *
+ * Not a unit test, run it from the module directory, from the IDE or with
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; com.esp.videoar.mp4.KeyframeSeekBenchmark
+ */
+public class KeyframeSeekBenchmark {
+
+    private static final int RESUMES = 10000;
+    // Same as VideoRenderer.FAST_SEEK_TOLERANCE_MILLIS
+    private static final long TOLERANCE_US = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        for (String name : new String[]{"nike.mp4", "small.mp4", "green_flag.mp4"}) {
+            Mp4Info info = Mp4Parser.parse(new File(Mp4ParserTest.ASSETS, name));
+            SyncSampleIndex sync = info.getSyncSamples();
+            long frameUs = info.getDurationUs() / Math.max(1, info.getSampleCount());
+
+            Random random = new Random(42);
+            long exactFrames = 0;
+            long snappedFrames = 0;
+            int snapped = 0;
+            long shiftUs = 0;
+            for (int i = 0; i < RESUMES; i++) {
+                long positionUs = (long) (random.nextDouble() * info.getDurationUs());
+                long keyframeUs = sync.previousSyncUs(positionUs);
+                long targetUs = sync.snapToPreviousSync(positionUs, TOLERANCE_US);
+
+                // The decoder always starts at the keyframe and shows the
+                // first frame at or after the target
+                exactFrames += framesBetween(keyframeUs, positionUs, frameUs);
+                snappedFrames += framesBetween(keyframeUs, targetUs, frameUs);
+                if (targetUs != positionUs) {
+                    snapped++;
+                    shiftUs += positionUs - targetUs;
+                }
+            }
+
+            long maxGapUs = sync.maxGapUs(info.getDurationUs());
+            System.out.println(String.format(
+                    "%-16s exact %6.1f frames, snapped %5.1f frames (%5.1f%% snapped by %5.0f ms"
+                            + " on average), previous sync %s (longest gap %5.0f ms)",
+                    name, (double) exactFrames / RESUMES, (double) snappedFrames / RESUMES,
+                    100.0 * snapped / RESUMES, snapped > 0 ? shiftUs / 1000.0 / snapped : 0,
+                    maxGapUs <= TOLERANCE_US ? "1 frame" : "not allowed", maxGapUs / 1000.0));
+        }
+    }
+
+    private static long framesBetween(long keyframeUs, long targetUs, long frameUs) {
+        return (targetUs - keyframeUs + frameUs - 1) / frameUs + 1;
+    }
+}
@@ -0,0 +1,41 @@
+package com.esp.videoar.mp4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Measures how long {@link Mp4Parser} takes on the bundled videos, with the file already open
+ * and in the page cache, i.e. the cost of the parse itself.
+ *
+ * Not a unit test, run it from the module directory, from the IDE or with
+ * java -cp &lt;test classes&gt;:&lt;classes&gt; com.esp.videoar.mp4.Mp4ParserBenchmark
+ */
+public class Mp4ParserBenchmark {
+
+    private static final int WARM_UP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        for (String name : new String[]{"nike.mp4", "small.mp4", "green_flag.mp4"}) {
+            File file = new File(Mp4ParserTest.ASSETS, name);
+            try (FileInputStream in = new FileInputStream(file)) {
+                FileChannel channel = in.getChannel();
+                long length = file.length();
+
+                long sink = 0;
+                for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                    sink += Mp4Parser.parse(channel, 0, length).getSyncSamples().size();
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    sink += Mp4Parser.parse(channel, 0, length).getSyncSamples().size();
+                }
+                long nanos = System.nanoTime() - start;
+
+                System.out.println(String.format("%-16s %8.1f us per parse (%d)", name,
+                        nanos / 1000.0 / ITERATIONS, sink));
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.esp.videoar.mp4;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class Mp4ParserTest {
+
+    // Relative to the module directory, where the unit tests run
+    static final File ASSETS = new File("src/main/assets/VideoPlayback");
+
+    @Test
+    public void nike_isFaststartWithAKeyframeIndex() throws Exception {
+        Mp4Info info = Mp4Parser.parse(new File(ASSETS, "nike.mp4"));
+
+        assertEquals(640, info.getWidth());
+        assertEquals(360, info.getHeight());
+        assertEquals("avc1", info.getCodec());
+        assertEquals(32040000, info.getDurationUs());
+        assertTrue(info.hasAudio());
+        assertTrue(info.getMoovOffset() < info.getMdatOffset());
+
+        SyncSampleIndex sync = info.getSyncSamples();
+        assertEquals(25, sync.size());
+        assertEquals(0, sync.getTimeUs(0));
+        assertEquals(30, sync.getSampleNumber(1));
+        assertEquals(1160000, sync.getTimeUs(1));
+        assertEquals(30000000, sync.getTimeUs(24));
+    }
+
+    @Test
+    public void small_hasASingleKeyframe() throws Exception {
+        Mp4Info info = Mp4Parser.parse(new File(ASSETS, "small.mp4"));
+
+        assertEquals(560, info.getWidth());
+        assertEquals(320, info.getHeight());
+        assertEquals(5533333, info.getDurationUs());
+        assertTrue(info.getSampleCount() > 1);
+        assertEquals(1, info.getSyncSamples().size());
+    }
+
+    @Test
+    public void parse_findsTheMoovAtTheEnd() throws Exception {
+        File dir = Files.createTempDirectory("mp4").toFile();
+        File file = FaststartTest.moovAtTheEnd(dir, "small.mp4");
+        try {
+            Mp4Info before = Mp4Parser.parse(new File(ASSETS, "small.mp4"));
+            Mp4Info info = Mp4Parser.parse(file);
+
+            assertTrue(info.getMoovOffset() > info.getMdatOffset());
+            assertEquals(before.getDurationUs(), info.getDurationUs());
+            assertEquals(before.getSampleCount(), info.getSampleCount());
+            assertEquals(before.getSyncSamples().size(), info.getSyncSamples().size());
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void greenFlag_appliesCompositionOffsetsAndEditList() throws Exception {
+        Mp4Info info = Mp4Parser.parse(new File(ASSETS, "green_flag.mp4"));
+
+        assertEquals(854, info.getWidth());
+        assertEquals(480, info.getHeight());
+        assertEquals(19280000, info.getDurationUs());
+
+        SyncSampleIndex sync = info.getSyncSamples();
+        assertEquals(17, sync.size());
+        // The ctts offset of one frame is taken back by the edit list
+        assertEquals(0, sync.getTimeUs(0));
+        assertEquals(1200000, sync.getTimeUs(1));
+        assertEquals(19200000, sync.getTimeUs(16));
+    }
+
+    @Test
+    public void syncIndex_findsTheSurroundingKeyframes() throws Exception {
+        SyncSampleIndex sync = Mp4Parser.parse(new File(ASSETS, "green_flag.mp4")).getSyncSamples();
+
+        assertEquals(1200000, sync.previousSyncUs(2000000));
+        assertEquals(1200000, sync.previousSyncUs(1200000));
+        assertEquals(2400000, sync.nextSyncUs(2000000));
+        assertEquals(19200000, sync.previousSyncUs(60000000));
+        assertEquals(-1, sync.nextSyncUs(19200001));
+    }
+
+    @Test
+    public void syncIndex_snapsOnlyWithinTheTolerance() throws Exception {
+        SyncSampleIndex sync = Mp4Parser.parse(new File(ASSETS, "green_flag.mp4")).getSyncSamples();
+
+        assertEquals(1200000, sync.snapToPreviousSync(2000000, 1000000));
+        assertEquals(2000000, sync.snapToPreviousSync(2000000, 500000));
+        assertEquals(2400000, sync.snapToPreviousSync(2400000, 0));
+
+        SyncSampleIndex single = Mp4Parser.parse(new File(ASSETS, "small.mp4")).getSyncSamples();
+        assertEquals(0, single.snapToPreviousSync(700000, 1000000));
+        assertEquals(3000000, single.snapToPreviousSync(3000000, 1000000));
+    }
+
+    @Test
+    public void syncIndex_measuresTheLongestGap() throws Exception {
+        Mp4Info greenFlag = Mp4Parser.parse(new File(ASSETS, "green_flag.mp4"));
+        assertEquals(1200000, greenFlag.getSyncSamples().maxGapUs(greenFlag.getDurationUs()));
+
+        // One keyframe at the start, a seek to it may go back the whole video
+        Mp4Info small = Mp4Parser.parse(new File(ASSETS, "small.mp4"));
+        assertEquals(small.getDurationUs(), small.getSyncSamples().maxGapUs(small.getDurationUs()));
+    }
+
+    @Test
+    public void parse_readsARangeOfALargerFile() throws Exception {
+        // Like an asset inside the APK: the file starts 1000 bytes in
+        File original = new File(ASSETS, "small.mp4");
+        File packed = File.createTempFile("packed", ".bin");
+        packed.deleteOnExit();
+        byte[] data = new byte[(int) original.length()];
+        try (FileInputStream in = new FileInputStream(original)) {
+            int read = 0;
+            while (read < data.length)
+                read += in.read(data, read, data.length - read);
+        }
+        try (RandomAccessFile out = new RandomAccessFile(packed, "rw")) {
+            out.write(new byte[1000]);
+            out.write(data);
+            out.write(new byte[500]);
+        }
+
+        try (FileInputStream in = new FileInputStream(packed)) {
+            Mp4Info info = Mp4Parser.parse(in.getChannel(), 1000, data.length);
+            assertEquals(560, info.getWidth());
+            assertEquals(5533333, info.getDurationUs());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsOtherFiles() throws Exception {
+        Mp4Parser.parse(new File(ASSETS, "busy.png"));
+    }
+}